@@ -66,6 +66,21 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
         return transform(p.getX(), p.getY());
     }
 
+    @Override public void transform(double[] xs, double[] ys, int n) {
+        double m00 = getScaleX();
+        double m01 = getShearX();
+        double m02 = getTranslateX();
+        double m10 = getShearY();
+        double m11 = getScaleY();
+        double m12 = getTranslateY();
+        for (int i = 0; i < n; ++i) {
+            double x = xs[i];
+            double y = ys[i];
+            xs[i] = x * m00 + y * m01 + m02;
+            ys[i] = x * m10 + y * m11 + m12;
+        }
+    }
+
     @Override public Point2D.Double apply(Point2D p) {
         return transform(p.getX(), p.getY());
     }
@@ -37,6 +37,16 @@ public class AffineXY extends AffineXYCommon implements Transform2D {
         }
     }
 
+    @Override
+	public void transform(double[] xs, double[] ys, int n) {
+        for (int i = 0; i < n; ++i) {
+            double x = xs[i];
+            double y = ys[i];
+            xs[i] = xk + x * (xkx + y * xkxy) + y * xky;
+            ys[i] = yk + x * (ykx + y * ykxy) + y * yky;
+        }
+    }
+
     @Override
 	public AffineXYCommon createInverse() {
         AffineXYInverse inv = new AffineXYInverse();
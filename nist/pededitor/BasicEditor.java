@@ -14,6 +14,7 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
@@ -40,10 +41,14 @@ import java.awt.image.BufferedImage;
 import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
@@ -62,6 +67,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.function.DoubleUnaryOperator;
 import java.util.prefs.Preferences;
 
@@ -216,18 +228,29 @@ public class BasicEditor extends Diagram
             (file.getParent().toString(), '#' + file.getFileName().toString());
     }
 
+    static final Metrics.Timer AUTOSAVE_TIMER = Metrics.timer("editor.autosave");
+    static final Metrics.Counter AUTOSAVE_FAILURES
+        = Metrics.counter("editor.autosaveFailures");
+    static final Metrics.Timer UNDO_SNAPSHOT_TIMER
+        = Metrics.timer("editor.undoSnapshot");
+    static final Metrics.Histogram UNDO_SNAPSHOT_SIZE
+        = Metrics.histogram("editor.undoSnapshotSize", "chars");
+
     class FileSaver extends TimerTask {
         @Override public void run() {
             int hash = diagramHashCode();
             if (hash != lastSaveHashCode && hash != autoSaveHashCode) {
                 Path file = getAutosave();
+                long start = Metrics.start();
                 try {
                     saveAsPED(file, false);
-                    System.out.println("Saved '" + file + "'");
                     autosaveFile = file;
                     autoSaveHashCode = hash;
                 } catch (IOException x) {
+                    AUTOSAVE_FAILURES.increment();
                     System.err.println("Could not save '" + file + "': " + x);
+                } finally {
+                    AUTOSAVE_TIMER.stop(start);
                 }
             }
         }
@@ -348,9 +371,9 @@ public class BasicEditor extends Diagram
     protected double mouseDragDistance = MOUSE_DRAG_DISTANCE;
     static protected Image crosshairs = null;
 
-    protected CropFrame cropFrame = new CropFrame();
-    protected EditFrame editFrame = new EditFrame(this);
-    protected BasicRightClickMenu mnRightClick = new RightClickMenu(this);
+    protected CropFrame cropFrame = null;
+    protected EditFrame editFrame = new EditFrame(this, isViewerOnly());
+    protected BasicRightClickMenu mnRightClick = createRightClickMenu();
     protected ImageZoomFrame zoomFrame = null;
     protected MathWindow mathWindow = new MathWindow(this);
     protected LabelDialog labelDialog = null;
@@ -369,8 +392,17 @@ public class BasicEditor extends Diagram
         return selection;
     }
 
-    void setRightClickMenu(BasicRightClickMenu menu) {
-        mnRightClick = menu;
+    /** @return true if this editor only displays diagrams, so its
+        frame and right-click menu can leave out the editing commands.
+        This is called during construction, before subclass fields are
+        initialized, so overrides must return a constant. */
+    boolean isViewerOnly() {
+        return false;
+    }
+
+    BasicRightClickMenu createRightClickMenu() {
+        return isViewerOnly() ? new ViewerRightClickMenu(this)
+            : new RightClickMenu(this);
     }
 
     BasicRightClickMenu getRightClickMenu() {
@@ -420,6 +452,8 @@ public class BasicEditor extends Diagram
     protected transient boolean alwaysConvertLabels = true;
     // Number of times paintEditPane() has been called.
     protected transient int paintCnt = 0;
+    /** Non-null while the paint profiler overlay is shown. */
+    protected transient PaintProfiler paintProfiler = null;
     protected transient boolean removeDegenerateDecorations = true;
     protected transient boolean updateMathWindow = true;
     protected transient WatchNewFiles watchNewFiles = null;
@@ -485,15 +519,23 @@ public class BasicEditor extends Diagram
       + "right away if the tie lines converge)."
       + "</p></div></html>" };
 
-    StepDialog tieLineDialog = new StepDialog
-        (editFrame, "Select Tie Line Display Region",
-         new BasicEditor.Action("Item selected") {
-             private static final long serialVersionUID = -6676297149495177006L;
+    StepDialog tieLineDialog = null;
+
+    StepDialog getTieLineDialog() {
+        if (tieLineDialog == null) {
+            tieLineDialog = new StepDialog
+                (editFrame, "Select Tie Line Display Region",
+                 new BasicEditor.Action("Item selected") {
+                     private static final long serialVersionUID = -6676297149495177006L;
 
-             @Override public void actionPerformed(ActionEvent e) {
-                 tieLineCornerSelected();
-             }
-         });
+                     @Override public void actionPerformed(ActionEvent e) {
+                         tieLineCornerSelected();
+                     }
+                 });
+            tieLineDialog.setFocusableWindowState(false);
+        }
+        return tieLineDialog;
+    }
 
     // When the user selects the "Add tie line" menu item,
     // tieLineCorners temporarily holds the corner locations until all
@@ -590,7 +632,6 @@ public class BasicEditor extends Diagram
         setEditable(true);
         setExitOnClose(false);
         init();
-        tieLineDialog.setFocusableWindowState(false);
         mathWindow.setDefaultCloseOperation
             (WindowConstants.HIDE_ON_CLOSE);
         mathWindow.addWindowListener(new MathWindowCloseListener());
@@ -599,9 +640,18 @@ public class BasicEditor extends Diagram
         editFrame.addWindowListener(new CloseListener());
         getEditPane().addMouseListener(this);
         getEditPane().addMouseMotionListener(this);
-        cropFrame.setDefaultCloseOperation
-            (WindowConstants.HIDE_ON_CLOSE);
-        cropFrame.addCropEventListener(this);
+    }
+
+    /** The crop frame is needed only for digitizing, so create it on
+        first use. */
+    CropFrame getCropFrame() {
+        if (cropFrame == null) {
+            cropFrame = new CropFrame();
+            cropFrame.setDefaultCloseOperation
+                (WindowConstants.HIDE_ON_CLOSE);
+            cropFrame.addCropEventListener(this);
+        }
+        return cropFrame;
     }
 
     public void initializeZoomFrame() {
@@ -628,7 +678,9 @@ public class BasicEditor extends Diagram
         rightClick = null;
         principalFocus = null;
         paintSuppressionRequestCnt = 0;
-        tieLineDialog.setVisible(false);
+        if (tieLineDialog != null) {
+            tieLineDialog.setVisible(false);
+        }
         tieLineCorners = new ArrayList<>();
         lastSaveHashCode = autoSaveHashCode = 0;
 
@@ -698,6 +750,9 @@ public class BasicEditor extends Diagram
     */
     public void close() {
         if (!isClosed()) {
+            for (SourceImage image: images()) {
+                image.cancelDecoding();
+            }
             if (cropFrame != null) {
                 cropFrame.dispose();
                 cropFrame = null;
@@ -1599,6 +1654,7 @@ public class BasicEditor extends Diagram
         here. */
     public void paintEditPane(Graphics g) {
         if (++paintCnt == 1) {
+            StartupTimer.mark("first paint");
             closeWaitDialog();
         }
         updateMousePosition();
@@ -1616,7 +1672,29 @@ public class BasicEditor extends Diagram
                 }
             }
         }
+        PaintProfiler prof = paintProfiler;
+        if (prof != null) {
+            prof.beginFrame();
+        }
         paintDiagramWithSelection((Graphics2D) g, scale);
+        if (prof != null) {
+            prof.endFrame();
+            prof.paint((Graphics2D) g, getEditPane().getVisibleRect());
+        }
+    }
+
+    public boolean isPaintProfilerShown() {
+        return paintProfiler != null;
+    }
+
+    /** Show or hide the overlay that reports how long painting the
+        diagram takes. */
+    public void setPaintProfilerShown(boolean b) {
+        if (b != isPaintProfilerShown()) {
+            paintProfiler = b ? new PaintProfiler() : null;
+        }
+        editFrame.setPaintProfilerShown(b);
+        redraw();
     }
 
     static Color toColor(AutoPositionType ap) {
@@ -1850,10 +1928,17 @@ public class BasicEditor extends Diagram
 
         Interp2DHandle curveHandle = (selection instanceof Interp2DHandle) ? getInterp2DHandle()
             : null;
+        PaintProfiler prof = paintProfiler;
         for (int dn = 0; dn < decorations.size(); ++dn) {
             Decoration decoration = decorations.get(dn);
             g.setColor(thisOrBlack(decoration.getColor()));
-            draw(g, decoration, scale);
+            if (prof == null) {
+                draw(g, decoration, scale);
+            } else {
+                long start = System.nanoTime();
+                draw(g, decoration, scale);
+                prof.record(decoration, System.nanoTime() - start);
+            }
         }
 
         if (curveHandle != null) {
@@ -2265,8 +2350,14 @@ public class BasicEditor extends Diagram
         is at maxSize already, or create and select a new curve if no
         curve is currently selected. */
     public void click(Point2D.Double point) {
+        click(point, ++changesSinceStateSaved >= 3);
+    }
+
+    /** Act as if the user clicked on the given point, saving the
+        undo state first if saveState is true. */
+    void click(Point2D.Double point, boolean saveState) {
         Undoable command = clickCommand(point);
-        if (++changesSinceStateSaved >= 3) {
+        if (saveState) {
             saveState();
         }
         if (command instanceof AddVertex) {
@@ -2328,7 +2419,7 @@ public class BasicEditor extends Diagram
 
     private void tieLineStep() {
         int stepNo = tieLineCorners.size();
-        tieLineDialog.getButton().setText("Select corner " + (stepNo+1) + " / 4"
+        getTieLineDialog().getButton().setText("Select corner " + (stepNo+1) + " / 4"
                     + " (Shift+T)");
     }
 
@@ -2370,16 +2461,16 @@ public class BasicEditor extends Diagram
         tieLineCorners.add(pat);
 
         if (oldCnt < 3) {
-            tieLineDialog.getLabel().setText(tieLineStepStrings[oldCnt + 1]);
+            getTieLineDialog().getLabel().setText(tieLineStepStrings[oldCnt + 1]);
             tieLineStep();
             return;
         }
 
-        tieLineDialog.setVisible(false);
+        getTieLineDialog().setVisible(false);
         int lineCnt = askNumberOfTieLines(10);
 
         if (lineCnt <= 0 || lineCnt > 100) {
-            tieLineDialog.setVisible(false);
+            getTieLineDialog().setVisible(false);
             tieLineCorners = new ArrayList<>();
             return;
         }
@@ -3119,11 +3210,44 @@ public class BasicEditor extends Diagram
         if (dig == null) {
             return;
         }
-        exportString(allCoordinatesToString
-                     (dig.getVariable(0, axes), dig.getFunction(0),
-                      dig.getVariable(1, axes), dig.getFunction(1),
-                      dig.isCommented(), dig.getSigFigs()),
-                     dig);
+        CoordinateWriter coords = allCoordinates
+            (dig.getVariable(0, axes), dig.getFunction(0),
+             dig.getVariable(1, axes), dig.getFunction(1),
+             dig.isCommented());
+        int sigFigs = dig.getSigFigs();
+        if (dig.getSourceType() != DigitizeDialog.SourceType.FILE) {
+            setClipboardString(coords.toString(sigFigs), false);
+            return;
+        }
+
+        File of = getExportFile();
+        if (of == null) {
+            return;
+        }
+        // Write the file in the background so that large data sets
+        // do not freeze the editor, and let the user cancel.
+        new CoordinateWorker<Void>(editFrame, "Saving '" + of + "'...",
+                                   coords.getPointCount()) {
+            @Override Void compute(CoordinateProgress progress) throws IOException {
+                try (Writer w = new OutputStreamWriter
+                     (new FileOutputStream(of), StandardCharsets.UTF_8)) {
+                        coords.write(w, sigFigs, progress);
+                } catch (CancellationException x) {
+                    of.delete();
+                    throw x;
+                }
+                return null;
+            }
+
+            @Override void succeeded(Void result) {
+                JOptionPane.showMessageDialog
+                    (editFrame, "Saved '" + of + "'.");
+            }
+
+            @Override void failed(Throwable x) {
+                showError(x.toString(), "Write Failed");
+            }
+        }.execute();
     }
 
     void nothingToExportError() {
@@ -3154,15 +3278,46 @@ public class BasicEditor extends Diagram
             return;
         }
 
-        String str = (dig.getSourceType() == DigitizeDialog.SourceType.FILE)
-            ? importStringFromFile() : Stuff.getClipboardString();
-        if (str == null) {
+        LinearAxis v1 = dig.getVariable(0, axes);
+        DoubleUnaryOperator f1 = dig.getFunction(0);
+        LinearAxis v2 = dig.getVariable(1, axes);
+        DoubleUnaryOperator f2 = dig.getFunction(1);
+
+        if (dig.getSourceType() != DigitizeDialog.SourceType.FILE) {
+            String str = Stuff.getClipboardString();
+            if (str != null) {
+                copyCoordinatesFromString(str, v1, f1, v2, f2);
+            }
+            return;
+        }
+
+        File file = getImportFile();
+        if (file == null) {
             return;
         }
+        // Parse the file in the background, then add the points.
+        new CoordinateWorker<Point2D.Double[][]>
+            (editFrame, "Reading '" + file + "'...", file.length()) {
+            @Override Point2D.Double[][] compute(CoordinateProgress progress)
+                throws IOException {
+                try (Reader r = new InputStreamReader
+                     (new FileInputStream(file), StandardCharsets.UTF_8)) {
+                        return CoordinateReader.readCurves(r, progress);
+                    }
+            }
+
+            @Override void succeeded(Point2D.Double[][] curves) {
+                copyCoordinatesFromCurves(curves, v1, f1, v2, f2);
+            }
 
-        copyCoordinatesFromString(str,
-                dig.getVariable(0, axes), dig.getFunction(0),
-                dig.getVariable(1, axes), dig.getFunction(1));
+            @Override void failed(Throwable x) {
+                if (x instanceof NumberFormatException) {
+                    showError(x.toString());
+                } else {
+                    showError("Could not read file '" + file + "' : " + x);
+                }
+            }
+        }.execute();
     }
 
     /** Convert a String that is a list of lists of x,y coordinate
@@ -3179,46 +3334,26 @@ public class BasicEditor extends Diagram
     */
     public static Point2D.Double[][] stringToCurves(String pointsStr)
         throws NumberFormatException {
-        String[] lines = pointsStr.split("\r?\n");
-        ArrayList<ArrayList<Point2D.Double>> res = new ArrayList<>();
-        ArrayList<Point2D.Double> curve = new ArrayList<>();
-        for (int i = 0; i < lines.length; ++i) {
-            String line = lines[i].trim();
-            int sharp = line.indexOf('#');
-            if (sharp >= 0) {
-                line = line.substring(0, sharp).trim();
-            }
-            if (line.equals("")) {
-                if (curve.size() > 0) {
-                    res.add(curve);
-                    curve = new ArrayList<>();
-                }
-                continue;
-            }
-            String[] xAndYStr = line.split(",");
-            if (xAndYStr.length != 2) {
-                throw new NumberFormatException
-                    ("Line '" + line + "' does not have format 'x,y'");
-            }
-            double[] xAndY = {0.0, 0.0};
-            for (int j = 0; j < 2; ++j) {
-                String s = xAndYStr[j];
-                xAndY[j] = ContinuedFraction.parseDouble(s);
-            }
-            curve.add(new Point2D.Double(xAndY[0], xAndY[1]));
-        }
-        if (curve.size() > 0) {
-            res.add(curve);
-        }
+        return CoordinateReader.readCurves(pointsStr);
+    }
 
-        Point2D.Double[][] res2 = new Point2D.Double[res.size()][];
-        for (int i = 0; i < res.size(); ++i) {
-            res2[i] = res.get(i).toArray(new Point2D.Double[0]);
+    public void copyCoordinatesFromString(String lines,
+            LinearAxis v1, DoubleUnaryOperator f1,
+            LinearAxis v2, DoubleUnaryOperator f2) {
+        Point2D.Double[][] curves;
+        try {
+            curves = stringToCurves(lines);
+        } catch (NumberFormatException x) {
+            showError(x.toString());
+            return;
         }
-        return res2;
+        copyCoordinatesFromCurves(curves, v1, f1, v2, f2);
     }
 
-    public void copyCoordinatesFromString(String lines,
+    /** Add the given points, expressed in terms of f1(v1) and f2(v2),
+        as if the user had clicked on each of them in turn. The points
+        of curves are transformed in place. */
+    public void copyCoordinatesFromCurves(Point2D.Double[][] curves,
             LinearAxis v1, DoubleUnaryOperator f1,
             LinearAxis v2, DoubleUnaryOperator f2) {
 
@@ -3245,51 +3380,50 @@ public class BasicEditor extends Diagram
         boolean haveLabel = getSelectedLabel() != null;
         boolean haveCurve = (selection instanceof CuspDecoration);
 
-        try {
-            Point2D.Double[][] curves = stringToCurves(lines);
-
-            Rectangle2D.Double bounds = null;
-            for (Point2D.Double[] curve: curves) {
-                for (Point2D.Double point: curve) {
-                    point.setLocation(xformi.transform(transform(point, f1, f2)));
-                    Point2D.Double page = principalToStandardPage.transform(point);
-                    if (bounds == null) {
-                        bounds = new Rectangle2D.Double(page.x, page.y, 0, 0);
-                    } else {
-                        bounds.add(page);
-                    }
-                }
-            }
-
-            boolean expand = false;
-            if (bounds != null && !pageBounds.contains(bounds)) {
-                if (JOptionPane.showConfirmDialog
-                    (editFrame,
-                     "Expand diagram so these points can fit?",
-                     "Import data",
-                     JOptionPane.OK_CANCEL_OPTION)
-                        == JOptionPane.YES_OPTION) {
-                    expand = true;
+        Rectangle2D.Double bounds = null;
+        Point2D.Double page = new Point2D.Double();
+        for (Point2D.Double[] curve: curves) {
+            for (Point2D.Double point: curve) {
+                point.setLocation(f1.applyAsDouble(point.x), f2.applyAsDouble(point.y));
+                xformi.transform(point, point);
+                principalToStandardPage.transform(point, page);
+                if (bounds == null) {
+                    bounds = new Rectangle2D.Double(page.x, page.y, 0, 0);
                 } else {
-                    return;
+                    bounds.add(page);
                 }
             }
+        }
 
-            for (Point2D.Double[] curve: curves) {
-                if (!haveLabel && !haveCurve) {
-                    clearSelection();
-                }
-                for (Point2D.Double point: curve) {
-                    click(point);
-                }
+        boolean expand = false;
+        if (bounds != null && !pageBounds.contains(bounds)) {
+            if (JOptionPane.showConfirmDialog
+                (editFrame,
+                 "Expand diagram so these points can fit?",
+                 "Import data",
+                 JOptionPane.OK_CANCEL_OPTION)
+                    == JOptionPane.YES_OPTION) {
+                expand = true;
+            } else {
+                return;
             }
+        }
 
-            if (expand) {
-                computeMargins(true);
+        // Save the state once so the whole import can be undone in
+        // one step, instead of saving it every few points, which
+        // takes time proportional to the diagram's size.
+        saveState();
+        for (Point2D.Double[] curve: curves) {
+            if (!haveLabel && !haveCurve) {
+                clearSelection();
             }
-        } catch (NumberFormatException x) {
-            showError(x.toString());
-            return;
+            for (Point2D.Double point: curve) {
+                click(point, false);
+            }
+        }
+
+        if (expand) {
+            computeMargins(true);
         }
     }
 
@@ -3339,34 +3473,6 @@ public class BasicEditor extends Diagram
        }
     }
 
-    /** Ask the user the name of a UTF-8 file to import data from, and
-        return the contents of that file. Return null if they abort
-        the process. */
-    String importStringFromFile() {
-        File file = getImportFile();
-        if (file == null) {
-            return null;
-        }
-
-        try {
-            return importStringFromFile(file);
-        } catch (IOException e) {
-            showError("Could not read file '" + file + "' : " + e);
-            return null;
-        }
-    }
-
-    /** Read the given UTF-8 file and return the contents as a string. */
-    static String importStringFromFile(File file) throws IOException {
-        StringBuilder res = new StringBuilder();
-        for (String line: Files.readAllLines(file.toPath(),
-                                             StandardCharsets.UTF_8)) {
-            res.append(line);
-            res.append('\n');
-        }
-        return res.toString();
-    }
-
     private void initializeDigitizeDialog() {
         if (digitizeDialog == null) {
             digitizeDialog = new DigitizeDialog();
@@ -3425,7 +3531,7 @@ public class BasicEditor extends Diagram
         Label label = getSelectedLabel();
         StringBuilder res = new StringBuilder();
         if (label != null) {
-            res.append(HtmlToText.htmlToText(label.getText()));
+            res.append(label.getPlainText());
         } else {
             for (String s: getAllText()) {
                 res.append(s);
@@ -3445,15 +3551,15 @@ public class BasicEditor extends Diagram
     }
 
     public void addTieLine() {
-        if (tieLineDialog.isVisible()) {
+        if (getTieLineDialog().isVisible()) {
             tieLineCornerSelected();
         } else {
             tieLineCorners.clear();
-            tieLineDialog.getLabel().setText(tieLineStepStrings[0]);
+            getTieLineDialog().getLabel().setText(tieLineStepStrings[0]);
             tieLineStep();
-            tieLineDialog.pack();
-            tieLineDialog.setVisible(true);
-            tieLineDialog.toFront();
+            getTieLineDialog().pack();
+            getTieLineDialog().setVisible(true);
+            getTieLineDialog().toFront();
         }
     }
 
@@ -3843,6 +3949,7 @@ public class BasicEditor extends Diagram
         label.setY(y);
         label.setColor(color);
         decorations.add(label);
+        labelIndex = null;
         setSelection(new LabelHandle(label, LabelHandle.Type.ANCHOR));
         moveMouse(new Point2D.Double(x,y));
         setMouseStuck(true);
@@ -4248,19 +4355,102 @@ public class BasicEditor extends Diagram
 
     public static String PROGRAM_TITLE = "PED Editor";
 
+    /** The diagram named on the command line, keyed by absolute path,
+        that is being parsed in the background while the GUI is
+        constructed. Cleared by clearPreloadedDiagrams() once startup
+        is over. */
+    static final Map<File, Future<Diagram>> preloadedDiagrams
+        = new ConcurrentHashMap<>();
+
+    /** Start a background thread that loads the default font and
+        parses the first file named in args, if it is a diagram, so
+        that work overlaps with the construction of the GUI. Only the
+        first file is opened at startup; the rest wait for the user
+        to select File/Next File, so parsing them now would just hold
+        memory.
+
+        @param pedExts The file extensions that the program treats as
+        diagrams rather than images. */
+    static void preload(String[] args, String[] pedExts) {
+        FutureTask<Diagram> task = null;
+        for (String arg: args) {
+            if (arg.startsWith("-")) {
+                continue;
+            }
+            File file = new File(arg).getAbsoluteFile();
+            String ext = getExtension(file.getName());
+            if (file.isFile() && Arrays.stream(pedExts)
+                .anyMatch(e -> e.equalsIgnoreCase(ext))) {
+                task = new FutureTask<>(() -> {
+                        Diagram d = Diagram.loadFrom(file);
+                        StartupTimer.mark("diagram parsed");
+                        return d;
+                    });
+                preloadedDiagrams.put(file, task);
+            }
+            break;
+        }
+        FutureTask<Diagram> diagramTask = task;
+        Thread t = new Thread(() -> {
+                try {
+                    Diagram.preloadDefaultFont();
+                    StartupTimer.mark("font loaded");
+                } catch (RuntimeException x) {
+                    // The error will be reported when the font is
+                    // actually needed.
+                }
+                if (diagramTask != null) {
+                    diagramTask.run();
+                }
+            }, "Preload");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** @return the diagram that preload() parsed from the given
+        file, or null if the file was not preloaded or could not be
+        parsed, in which case the caller should load it normally (and
+        report any error that results). */
+    static Diagram takePreloadedDiagram(File file) {
+        Future<Diagram> f = preloadedDiagrams.remove(file.getAbsoluteFile());
+        if (f == null) {
+            return null;
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException x) {
+            return null;
+        }
+    }
+
+    /** Discard any preloaded diagram that startup did not use, such
+        as one that the user chose not to open after all. */
+    static void clearPreloadedDiagrams() {
+        for (Future<Diagram> f: preloadedDiagrams.values()) {
+            f.cancel(false);
+        }
+        preloadedDiagrams.clear();
+    }
+
     public static void main(BasicEditorCreator ec, String[] args) {
+        StartupTimer.mark("main");
         String programTitle = ec.getProgramTitle();
         if (args.length == 1 && "-help".equals(args[0])) {
             printHelp();
             System.exit(2);
         }
 
+        preload(args, ec.pedFileExtensions());
         BasicEditorArgsRunnable bear = new BasicEditorArgsRunnable(ec, args);
         if (waitDialog == null) {
             waitDialog = new WaitDialog(bear, "Loading " + programTitle + "...");
             waitDialog.setTitle(programTitle);
             waitDialog.pack();
             waitDialog.setVisible(true);
+            StartupTimer.mark("wait dialog shown");
         } else {
             bear.run();
         }
@@ -5125,7 +5315,19 @@ public class BasicEditor extends Diagram
     }
 
     @Override public void openDiagram(File file) throws IOException {
-        super.openDiagram(file);
+        Diagram d = takePreloadedDiagram(file);
+        if (d == null) {
+            d = DiagramCache.take(file);
+        }
+        if (d != null) {
+            copyFrom(d);
+        } else {
+            super.openDiagram(file);
+        }
+        // Whether or not that was a hit, the cache no longer holds a
+        // copy, so parse another in the background for the next open.
+        DiagramCache.refill(file);
+        StartupTimer.mark("diagram opened");
         markAsSaved();
         startFileSaver();
         initializeGUI();
@@ -5206,13 +5408,42 @@ public class BasicEditor extends Diagram
         }
     }
 
+    /** Called when a background image decode that
+        revalidateZoomFrame() started produces a preview or
+        finishes. */
+    void imageDecoded() {
+        if (isClosed()) {
+            return;
+        }
+        revalidateZoomFrame();
+        redraw();
+    }
+
+    /** While the first image is still being decoded in the
+        background, assume it will succeed rather than waiting to find
+        out. */
+    @Override protected boolean tracingImage() {
+        SourceImage image = firstImage();
+        return (image != null && image.isDecoding()) || super.tracingImage();
+    }
+
     /** If the zoom frame is not needed, then then make sure it's null
         or invisible. Otherwise, make sure the zoom frame is non-null,
         initialized, visible, and shows the correct image. */
     void revalidateZoomFrame() {
+        for (SourceImage other: images()) {
+            other.getImageInBackground(this::imageDecoded);
+        }
         SourceImage image = firstImage();
-        if (image != null && image.getImage() != null) {
-            BufferedImage bi = image.getImage();
+        BufferedImage bi = (image == null) ? null
+            : image.getImageInBackground(this::imageDecoded);
+        if (image != null && image.isDecoding()) {
+            // imageDecoded() will call this again once the image is
+            // ready.
+            editFrame.setBackgroundTypeEnabled(true);
+            initializeZoomFrame();
+            editFrame.mnBackgroundImage.setEnabled(true);
+        } else if (bi != null) {
             editFrame.setBackgroundTypeEnabled(true);
             initializeZoomFrame();
             zoomFrame.setImage(bi);
@@ -5250,9 +5481,12 @@ public class BasicEditor extends Diagram
         return result;
     }
 
+    /** File extensions that BasicEditor opens as diagrams. */
+    static final String[] PED_FILE_EXTENSIONS = {"ped"};
+
     /** Return all PED type file extensions this program can open. */
     public String[] pedFileExtensions() {
-        return new String[] {"ped"};
+        return PED_FILE_EXTENSIONS.clone();
     }
 
     /** Return all PED type file extensions this program should take ownership of. */
@@ -5413,8 +5647,7 @@ public class BasicEditor extends Diagram
                 setCurrentDirectory(dirFile.toString());
                 String[] exts = pedFileExtensions();
                 watchNewFiles = new WatchNewFiles
-                    (dirFile.toPath(), exts,
-                     path -> showOpenDialog(getEditFrame(), path.toFile()));
+                    (dirFile.toPath(), exts, path -> ingest(path.toFile()));
                 try {
                     watchNewFiles.start();
                     JOptionPane.showMessageDialog
@@ -5434,6 +5667,63 @@ public class BasicEditor extends Diagram
         }
     }
 
+    /** Threads that load diagrams found by monitor(). */
+    static ExecutorService ingestPool = null;
+
+    static synchronized ExecutorService getIngestPool() {
+        if (ingestPool == null) {
+            ingestPool = Executors.newFixedThreadPool
+                (Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())),
+                 r -> {
+                    Thread t = new Thread(r, "Ingest");
+                    t.setDaemon(true);
+                    return t;
+                });
+        }
+        return ingestPool;
+    }
+
+    /** Parse the given PED file and decode its images on a background
+        thread, and then display it on the event dispatch thread. May
+        be called from any thread. */
+    void ingest(File file) {
+        getIngestPool().execute(() -> {
+                Diagram d;
+                try {
+                    d = Diagram.loadFrom(file);
+                    d.preloadImages();
+                } catch (IOException x) {
+                    EventQueue.invokeLater(() -> Stuff.showError
+                                           (editFrame, "Could not load file: " + x,
+                                            "File load error"));
+                    return;
+                }
+                EventQueue.invokeLater(() -> openLoadedDiagram(d));
+            });
+    }
+
+    /** Display the given diagram, which was loaded from a file, in
+        this editor if it is empty or in a new editor otherwise. */
+    void openLoadedDiagram(Diagram d) {
+        if (haveDiagram()) {
+            BasicEditor e = createNew();
+            e.initializeGUI();
+            e.openLoadedDiagram(d);
+            return;
+        }
+        try {
+            copyFrom(d);
+        } catch (IOException x) {
+            showError("Could not load file: " + x, "File load error");
+            closeIfNotUsed();
+            return;
+        }
+        markAsSaved();
+        startFileSaver();
+        initializeGUI();
+        saveState();
+    }
+
     private static boolean fileNotFound(File[] files, Component parent) {
         if (files != null && files.length == 1 && Files.notExists(files[0].toPath())) {
             Stuff.showError(parent,
@@ -5529,16 +5819,16 @@ public class BasicEditor extends Diagram
         try {
             if (isEditable() && !ped) {
                 // This had better be an image file.
-                cropFrame.setFilename(file.getAbsolutePath());
-                if (cropFrame.getDiagramType() == null) {
+                getCropFrame().setFilename(file.getAbsolutePath());
+                if (getCropFrame().getDiagramType() == null) {
                     closeIfNotUsed();
                     return;
                 }
-                cropFrame.pack();
+                getCropFrame().pack();
                 editFrame.setStatus("");
                 clear();
-                cropFrame.refresh();
-                cropFrame.setVisible(true);
+                getCropFrame().refresh();
+                getCropFrame().setVisible(true);
             } else {
                 if (ped) {
                     openDiagram(file);
@@ -5580,17 +5870,17 @@ public class BasicEditor extends Diagram
         editFrame.setTitle(title);
 
         if (filename == null) {
-            cropFrame.showOpenDialog();
+            getCropFrame().showOpenDialog();
         } else {
             try {
-                cropFrame.setFilename(filename);
+                getCropFrame().setFilename(filename);
             } catch (IOException e) {
                 showError("Could not load file '" + filename + "': " + e);
             }
         }
 
-        cropFrame.pack();
-        cropFrame.setVisible(true);
+        getCropFrame().pack();
+        getCropFrame().setVisible(true);
     }
 
     /** @return A File corresponding to getFilename() but with the
@@ -6169,6 +6459,19 @@ public class BasicEditor extends Diagram
     }
 
     @Override public void mousePressed(MouseEvent e) {
+        if (paintProfiler != null && e.getButton() == MouseEvent.BUTTON1) {
+            Decoration d = paintProfiler.decorationAt(e.getPoint());
+            if (d != null) {
+                // Select the decoration that was clicked in the
+                // profiler's list of slow decorations.
+                mousePress = null;
+                DecorationHandle[] hands = d.getHandles(DecorationHandle.Type.SELECTION);
+                if (hands.length > 0) {
+                    setSelection(hands[0]);
+                }
+                return;
+            }
+        }
         if (e.isPopupTrigger() || e.getButton() != MouseEvent.BUTTON1) {
            if (e.isShiftDown()) {
               mprin = getAutoPosition();
@@ -6299,7 +6602,7 @@ public class BasicEditor extends Diagram
 
         if (mprin != null) {
             SourceImage image = selectedOrFirstImage();
-            if (image != null && image.getImage() != null) {
+            if (image != null && image.getImageInBackground(this::imageDecoded) != null) {
                 try {
                     // Update image zoom frame.
 
@@ -6894,8 +7197,10 @@ public class BasicEditor extends Diagram
             return;
         }
 
+        long start = Metrics.start();
         try {
             EditorState.StringAndTransientState state = EditorState.toStringAndTransientState(this);
+            UNDO_SNAPSHOT_SIZE.record(state.str.length());
 
             if (undoStackOffset > 0 &&
                     state.str.equals(undoStack.get(undoStackOffset - 1).str)) {
@@ -6921,6 +7226,8 @@ public class BasicEditor extends Diagram
             ++ undoStackOffset;
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            UNDO_SNAPSHOT_TIMER.stop(start);
         }
     }
 
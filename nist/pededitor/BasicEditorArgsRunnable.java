@@ -20,6 +20,12 @@ public class BasicEditorArgsRunnable implements Runnable {
     }
 
     @Override public void run() {
-        ec.run().run(args);
+        BasicEditor e = ec.run();
+        StartupTimer.mark("editor constructed");
+        try {
+            e.run(args);
+        } finally {
+            BasicEditor.clearPreloadedDiagrams();
+        }
     }
 };
@@ -11,4 +11,10 @@ class BasicEditorCreator {
     public String getProgramTitle() {
         return BasicEditor.PROGRAM_TITLE;
     }
+
+    /** @return the pedFileExtensions() of the editors that run()
+        creates. */
+    public String[] pedFileExtensions() {
+        return BasicEditor.PED_FILE_EXTENSIONS.clone();
+    }
 }
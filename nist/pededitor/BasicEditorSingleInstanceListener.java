@@ -47,5 +47,9 @@ class BasicEditorSingleInstanceListener implements SingleInstanceListener {
         @Override public String getProgramTitle() {
             return ec.getProgramTitle();
         }
+
+        @Override public String[] pedFileExtensions() {
+            return ec.pedFileExtensions();
+        }
     }
 }
@@ -0,0 +1,526 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Curve/curve intersection by Bezier clipping (Sederberg and Nishita)
+ * for curves whose pieces are Bezier curves of degree 3 or less --
+ * that is, CubicParam2D, QuadParam2D, SegmentParam2D, and subsets of
+ * them. Other curve types fall back on {@link
+ * BoundedParam2Ds#intersections}.
+ *
+ * Each step clips both curves against the other's fat line (the
+ * narrowest band parallel to the chord that contains the curve).
+ * Transverse intersections converge quadratically. If clipping does
+ * not shrink either curve by at least 20%, the larger curve is
+ * bisected instead, so near-tangent and overlapping curves degrade to
+ * subdivision rather than failing outright. Once both pieces are
+ * flat to within maxError, they are treated as line segments and an
+ * intersection is reported if those segments approach within
+ * maxError of each other, which is the same guarantee that
+ * BoundedParam2Ds.intersections() provides.
+ *
+ * The step count is capped, so the methods always terminate; pairs
+ * that hit the cap are reported through the return value instead of
+ * through an exception. */
+public class BezierIntersections {
+    /** Clipping must shrink a curve's t range to this fraction or
+        less to count as progress. */
+    static final double MIN_CLIP_RATIO = 0.8;
+
+    /** A Bezier curve of degree 0-3 represented by its control
+        points, together with the t range of the original curve that
+        it covers. */
+    static class Piece {
+        final double[] xs;
+        final double[] ys;
+        final double t0;
+        final double t1;
+
+        Piece(double[] xs, double[] ys, double t0, double t1) {
+            this.xs = xs;
+            this.ys = ys;
+            this.t0 = t0;
+            this.t1 = t1;
+        }
+
+        /** Return the portion of this piece corresponding to local
+            parameter values [u0, u1] (with [0, 1] being the whole
+            piece). */
+        Piece subset(double u0, double u1) {
+            double dt = t1 - t0;
+            return new Piece(subCurve(xs, u0, u1), subCurve(ys, u0, u1),
+                             t0 + u0 * dt, t0 + u1 * dt);
+        }
+
+        double minX() { return min(xs); }
+        double maxX() { return max(xs); }
+        double minY() { return min(ys); }
+        double maxY() { return max(ys); }
+    }
+
+    /** The band { p : dmin <= a p.x + b p.y + c <= dmax } that
+        contains a piece, where a^2 + b^2 = 1 and <-b, a> is the
+        direction of the chord. */
+    static class FatLine {
+        double a, b, c, dmin, dmax;
+
+        FatLine(Piece p) {
+            double[] xs = p.xs;
+            double[] ys = p.ys;
+            int n = xs.length - 1;
+            double dx = xs[n] - xs[0];
+            double dy = ys[n] - ys[0];
+            if (dx == 0 && dy == 0) {
+                // Closed or degenerate piece: use the direction to
+                // the farthest control point instead.
+                double maxDistSq = 0;
+                for (int i = 1; i < n; ++i) {
+                    double ex = xs[i] - xs[0];
+                    double ey = ys[i] - ys[0];
+                    double distSq = ex * ex + ey * ey;
+                    if (distSq > maxDistSq) {
+                        maxDistSq = distSq;
+                        dx = ex;
+                        dy = ey;
+                    }
+                }
+                if (maxDistSq == 0) {
+                    dx = 1;
+                }
+            }
+            double len = Math.hypot(dx, dy);
+            a = -dy / len;
+            b = dx / len;
+            c = -(a * xs[0] + b * ys[0]);
+
+            if (n == 3 && (xs[3] != xs[0] || ys[3] != ys[0])) {
+                // Tighter bounds for cubics whose chord is well
+                // defined.
+                double d1 = distance(xs[1], ys[1]);
+                double d2 = distance(xs[2], ys[2]);
+                double k = (d1 * d2 > 0) ? 0.75 : 4.0 / 9;
+                dmin = k * Math.min(0, Math.min(d1, d2));
+                dmax = k * Math.max(0, Math.max(d1, d2));
+            } else if (n == 2 && (xs[2] != xs[0] || ys[2] != ys[0])) {
+                double d1 = distance(xs[1], ys[1]) / 2;
+                dmin = Math.min(0, d1);
+                dmax = Math.max(0, d1);
+            } else {
+                dmin = dmax = 0;
+                for (int i = 0; i <= n; ++i) {
+                    double d = distance(xs[i], ys[i]);
+                    dmin = Math.min(dmin, d);
+                    dmax = Math.max(dmax, d);
+                }
+            }
+        }
+
+        double distance(double x, double y) {
+            return a * x + b * y + c;
+        }
+
+        double width() {
+            return dmax - dmin;
+        }
+
+        /** Return the segment that lies in the middle of this band
+            and that spans the projection of p's control points onto
+            the chord direction. Every point of p lies within width()/2
+            of the result. */
+        Line2D.Double centerSegment(Piece p) {
+            double lx = b;
+            double ly = -a;
+            double lmin = Double.POSITIVE_INFINITY;
+            double lmax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < p.xs.length; ++i) {
+                double l = lx * p.xs[i] + ly * p.ys[i];
+                lmin = Math.min(lmin, l);
+                lmax = Math.max(lmax, l);
+            }
+            // The center line is { p : a p.x + b p.y = cw }.
+            double cw = (dmin + dmax) / 2 - c;
+            return new Line2D.Double
+                (lx * lmin + a * cw, ly * lmin + b * cw,
+                 lx * lmax + a * cw, ly * lmax + b * cw);
+        }
+
+        /** Return the local parameter range [u0, u1] of q outside of
+            which q cannot lie within this band (expanded by margin
+            on either side), or null if q cannot intersect the band
+            at all. Since q lies inside the convex hull of the points
+            (i/n, distance(q_i)), the range of that hull inside the
+            band is computed by clipping every segment between two
+            such points to the band. */
+        double[] clip(Piece q, double margin) {
+            double lo = dmin - margin;
+            double hi = dmax + margin;
+            int n = q.xs.length - 1;
+            double[] ds = new double[n + 1];
+            for (int i = 0; i <= n; ++i) {
+                ds[i] = distance(q.xs[i], q.ys[i]);
+            }
+            if (n == 0) {
+                return (ds[0] >= lo && ds[0] <= hi)
+                    ? new double[] {0, 1} : null;
+            }
+            double umin = Double.POSITIVE_INFINITY;
+            double umax = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i <= n; ++i) {
+                for (int j = i + 1; j <= n; ++j) {
+                    double di = ds[i];
+                    double dd = ds[j] - di;
+                    double s0, s1;
+                    if (dd == 0) {
+                        if (di < lo || di > hi) {
+                            continue;
+                        }
+                        s0 = 0;
+                        s1 = 1;
+                    } else {
+                        double sa = (lo - di) / dd;
+                        double sb = (hi - di) / dd;
+                        s0 = Math.max(0, Math.min(sa, sb));
+                        s1 = Math.min(1, Math.max(sa, sb));
+                        if (s0 > s1) {
+                            continue;
+                        }
+                    }
+                    double ti = (double) i / n;
+                    double tj = (double) j / n;
+                    umin = Math.min(umin, ti + s0 * (tj - ti));
+                    umax = Math.max(umax, ti + s1 * (tj - ti));
+                }
+            }
+            return (umin <= umax) ? new double[] {umin, umax} : null;
+        }
+    }
+
+    /** Return the control points of the 1-D Bezier curve c restricted
+        to the parameter range [u0, u1], using de Casteljau's
+        algorithm. */
+    static double[] subCurve(double[] c, double u0, double u1) {
+        int len = c.length;
+        double[] res = Arrays.copyOf(c, len);
+        if (u0 == 0 && u1 == 1) {
+            return res;
+        }
+        // Keep the [0, u1] half of a split at u1.
+        for (int k = 1; k < len; ++k) {
+            for (int i = len - 1; i >= k; --i) {
+                res[i] = res[i-1] + (res[i] - res[i-1]) * u1;
+            }
+        }
+        if (u0 == 0) {
+            return res;
+        }
+        // Keep the [u0/u1, 1] half of a split of the result.
+        double s = u0 / u1;
+        for (int k = 1; k < len; ++k) {
+            for (int i = 0; i < len - k; ++i) {
+                res[i] = res[i] + (res[i+1] - res[i]) * s;
+            }
+        }
+        return res;
+    }
+
+    static double min(double[] vs) {
+        double res = vs[0];
+        for (double v: vs) {
+            res = Math.min(res, v);
+        }
+        return res;
+    }
+
+    static double max(double[] vs) {
+        double res = vs[0];
+        for (double v: vs) {
+            res = Math.max(res, v);
+        }
+        return res;
+    }
+
+    /** @return c in Bezier control point form, or null if c is not
+        a BezierParam2D, SegmentParam2D, or a subset of either. */
+    static Piece toPiece(BoundedParam2D c) {
+        Param2D base = c;
+        if (c instanceof Param2DBounder) {
+            base = ((Param2DBounder) c).getUnboundedCurve();
+        }
+        Point2D.Double[] points;
+        if (base instanceof BezierParam2D) {
+            points = ((BezierParam2D) base).points;
+        } else if (base instanceof SegmentParam2D) {
+            SegmentParam2D s = (SegmentParam2D) base;
+            points = new Point2D.Double[] { s.p0, s.pEnd };
+        } else {
+            return null;
+        }
+        int len = points.length;
+        if (len == 0 || len > 4) {
+            return null;
+        }
+        double[] xs = new double[len];
+        double[] ys = new double[len];
+        for (int i = 0; i < len; ++i) {
+            xs[i] = points[i].x;
+            ys[i] = points[i].y;
+        }
+        double t0 = c.getMinT();
+        double t1 = c.getMaxT();
+        return new Piece(subCurve(xs, t0, t1), subCurve(ys, t0, t1), t0, t1);
+    }
+
+    /** Append the intersections of a and b to "is" and return the
+        number of steps used. If the return value is greater than
+        maxSteps, then some intersections may be missing. The error
+        guarantee is the same as for {@link
+        BoundedParam2Ds#intersections(BoundedParam2D, BoundedParam2D,
+        double, int)}. */
+    public static int intersections(ArrayList<Point2D.Double> is,
+            BoundedParam2D a, BoundedParam2D b,
+            double maxError, int maxSteps) {
+        Piece pa = toPiece(a);
+        Piece pb = (pa == null) ? null : toPiece(b);
+        if (pb == null) {
+            return BoundedParam2Ds.intersections(is, a, b, maxError, maxSteps);
+        }
+        return intersections(is, pa, pb, maxError, maxSteps);
+    }
+
+    /** Like {@link #intersections(ArrayList, BoundedParam2D,
+        BoundedParam2D, double, int)}, but throws an exception instead
+        of returning the step count. */
+    public static ArrayList<Point2D.Double> intersections(
+            BoundedParam2D a, BoundedParam2D b,
+            double maxError, int maxSteps)
+        throws FailedToConvergeException {
+        ArrayList<Point2D.Double> res = new ArrayList<>();
+        int steps = intersections(res, a, b, maxError, maxSteps);
+        if (steps > maxSteps) {
+            throw new FailedToConvergeException
+                ("Could not compute intersections to within " + maxError
+                 + " accuracy within " + maxSteps + " steps for "
+                 + a + " and " + b);
+        }
+        return res;
+    }
+
+    static int intersections(ArrayList<Point2D.Double> is,
+            Piece a, Piece b, double maxError, int maxSteps) {
+        int oldSize = is.size();
+        double margin = maxError / 16;
+        ArrayDeque<Piece[]> todo = new ArrayDeque<>();
+        todo.push(new Piece[] { a, b });
+        int stepCnt = 0;
+
+        while (!todo.isEmpty()) {
+            if (++stepCnt > maxSteps) {
+                break;
+            }
+            Piece[] pair = todo.pop();
+            a = pair[0];
+            b = pair[1];
+
+            if (a.minX() > b.maxX() + maxError || b.minX() > a.maxX() + maxError
+                || a.minY() > b.maxY() + maxError
+                || b.minY() > a.maxY() + maxError) {
+                continue;
+            }
+
+            FatLine fa = new FatLine(a);
+            FatLine fb = new FatLine(b);
+            boolean atLimit = a.t1 - a.t0 <= Math.ulp(a.t1) * 4
+                && b.t1 - b.t0 <= Math.ulp(b.t1) * 4;
+            if (atLimit
+                || (fa.width() <= maxError && fb.width() <= maxError)) {
+                addSegmentIntersection(is, oldSize, fa.centerSegment(a),
+                                       fb.centerSegment(b), maxError);
+                continue;
+            }
+
+            double[] ub = fa.clip(b, margin);
+            if (ub == null) {
+                continue;
+            }
+            Piece b2 = b.subset(ub[0], ub[1]);
+            FatLine fb2 = new FatLine(b2);
+            double[] ua = fb2.clip(a, margin);
+            if (ua == null) {
+                continue;
+            }
+            Piece a2 = a.subset(ua[0], ua[1]);
+
+            if (ua[1] - ua[0] <= MIN_CLIP_RATIO
+                || ub[1] - ub[0] <= MIN_CLIP_RATIO) {
+                todo.push(new Piece[] { a2, b2 });
+                continue;
+            }
+
+            // Clipping stalled, so bisect whichever piece is larger.
+            double aSize = (a2.maxX() - a2.minX()) + (a2.maxY() - a2.minY());
+            double bSize = (b2.maxX() - b2.minX()) + (b2.maxY() - b2.minY());
+            if (aSize >= bSize) {
+                todo.push(new Piece[] { a2.subset(0.5, 1), b2 });
+                todo.push(new Piece[] { a2.subset(0, 0.5), b2 });
+            } else {
+                todo.push(new Piece[] { a2, b2.subset(0.5, 1) });
+                todo.push(new Piece[] { a2, b2.subset(0, 0.5) });
+            }
+        }
+        return stepCnt;
+    }
+
+    /** If segments sa and sb approach each other to within maxError,
+        then append their intersection (or the midpoint of their
+        closest approach) to is, unless that point lies within
+        maxError of a point already appended to is at index
+        firstIndex or later. */
+    static void addSegmentIntersection
+        (ArrayList<Point2D.Double> is, int firstIndex,
+         Line2D.Double sa, Line2D.Double sb, double maxError) {
+        Point2D.Double p = Geom.segmentIntersection
+            (sa.getP1(), sa.getP2(), sb.getP1(), sb.getP2());
+        if (p == null || Double.isNaN(p.x) || Double.isNaN(p.y)) {
+            // If the segments do not cross, then their closest
+            // approach involves at least one endpoint.
+            double minDist = Double.POSITIVE_INFINITY;
+            Point2D[][] candidates = {
+                { sa.getP1(), sb.getP1(), sb.getP2() },
+                { sa.getP2(), sb.getP1(), sb.getP2() },
+                { sb.getP1(), sa.getP1(), sa.getP2() },
+                { sb.getP2(), sa.getP1(), sa.getP2() } };
+            for (Point2D[] c: candidates) {
+                Point2D.Double q = Geom.nearestPointOnSegment(c[0], c[1], c[2]);
+                double dist = q.distance(c[0]);
+                if (dist < minDist) {
+                    minDist = dist;
+                    p = Geom.midpoint(q, c[0]);
+                }
+            }
+            if (minDist > maxError) {
+                return;
+            }
+        }
+        for (int i = firstIndex; i < is.size(); ++i) {
+            if (is.get(i).distance(p) <= maxError) {
+                return;
+            }
+        }
+        is.add(p);
+    }
+
+    /** Append all intersections between every pair of distinct
+        curves in cs to "is". Pairs whose bounding boxes do not overlap
+        are pruned with a sweep over the x axis, and the remaining
+        pairs are solved in parallel. The output order does not depend
+        on the number of threads.
+
+        @return the number of pairs of curves for which maxSteps was
+        not enough to identify all intersections to within maxError.
+    */
+    public static int intersections(ArrayList<Point2D.Double> is,
+            List<? extends BoundedParam2D> cs, double maxError, int maxSteps) {
+        int cnt = cs.size();
+        Piece[] pieces = new Piece[cnt];
+        Rectangle2D.Double[] boxes = new Rectangle2D.Double[cnt];
+        Integer[] order = new Integer[cnt];
+        for (int i = 0; i < cnt; ++i) {
+            BoundedParam2D c = cs.get(i);
+            Piece p = pieces[i] = toPiece(c);
+            boxes[i] = (p != null)
+                ? new Rectangle2D.Double(p.minX(), p.minY(),
+                        p.maxX() - p.minX(), p.maxY() - p.minY())
+                : c.getBounds();
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Double.compare(boxes[i].x, boxes[j].x));
+
+        ArrayList<int[]> pairs = new ArrayList<>();
+        for (int oi = 0; oi < cnt; ++oi) {
+            int i = order[oi];
+            Rectangle2D.Double bi = boxes[i];
+            double maxX = bi.x + bi.width + maxError;
+            for (int oj = oi + 1; oj < cnt; ++oj) {
+                int j = order[oj];
+                Rectangle2D.Double bj = boxes[j];
+                if (bj.x > maxX) {
+                    break;
+                }
+                if (bj.y > bi.y + bi.height + maxError
+                    || bi.y > bj.y + bj.height + maxError) {
+                    continue;
+                }
+                pairs.add((i < j) ? new int[] {i, j} : new int[] {j, i});
+            }
+        }
+        pairs.sort((p, q) -> (p[0] != q[0]) ? Integer.compare(p[0], q[0])
+                   : Integer.compare(p[1], q[1]));
+
+        int pairCnt = pairs.size();
+        // Each parallel task sets only its own element, which is safe
+        // because set() does not change the list's structure.
+        List<List<Point2D.Double>> results
+            = new ArrayList<>(Collections.nCopies(pairCnt, null));
+        int failures = (int) IntStream.range(0, pairCnt).parallel()
+            .filter(k -> {
+                    int i = pairs.get(k)[0];
+                    int j = pairs.get(k)[1];
+                    ArrayList<Point2D.Double> res = new ArrayList<>();
+                    results.set(k, res);
+                    int steps = (pieces[i] != null && pieces[j] != null)
+                        ? intersections(res, pieces[i], pieces[j], maxError, maxSteps)
+                        : BoundedParam2Ds.intersections
+                        (res, cs.get(i), cs.get(j), maxError, maxSteps);
+                    return steps > maxSteps;
+                })
+            .count();
+        for (List<Point2D.Double> res: results) {
+            is.addAll(res);
+        }
+        return failures;
+    }
+
+    public static void main(String[] args) {
+        BoundedParam2D q1 = BezierParam2D.create
+            (new Point2D.Double(0, 1),
+             new Point2D.Double(0.5, -1),
+             new Point2D.Double(1, 1));
+        BoundedParam2D q2 = BezierParam2D.create
+            (new Point2D.Double(0, 0),
+             new Point2D.Double(0.5, 2),
+             new Point2D.Double(1, 0));
+        // c1 is tangent to y = 0.25 at (0.5, 0.25).
+        BoundedParam2D c1 = BezierParam2D.create
+            (new Point2D.Double(0, 0),
+             new Point2D.Double(0.25, 1.0/3),
+             new Point2D.Double(0.75, 1.0/3),
+             new Point2D.Double(1, 0));
+        BoundedParam2D c2 = BezierParam2D.create
+            (new Point2D.Double(0, 0.25),
+             new Point2D.Double(0.3, 0.25),
+             new Point2D.Double(0.7, 0.25),
+             new Point2D.Double(1, 0.25));
+        BoundedParam2D[][] tests = { { q1, q2 }, { c1, c2 }, { c1, q2 } };
+        for (BoundedParam2D[] test: tests) {
+            ArrayList<Point2D.Double> res = new ArrayList<>();
+            int steps = intersections(res, test[0], test[1], 1e-9, 200);
+            System.out.println(test[0] + " x " + test[1] + ": "
+                               + steps + " steps");
+            for (Point2D p: res) {
+                System.out.println("  " + Geom.toString(p));
+            }
+        }
+    }
+}
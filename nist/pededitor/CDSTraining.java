@@ -0,0 +1,63 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014.
+ *
+ * This file uses the iText library (http://itextpdf.com) and is
+ * subject to the GNU Affero General Public License
+ * (http://www.gnu.org/licenses/agpl-3.0.html). */
+
+package gov.nist.pededitor;
+
+import java.io.File;
+import java.io.IOException;
+
+/** Training run for generating an application class-data sharing
+    (AppCDS) archive. Every PED file in the given directory (default
+    "test") is loaded, serialized back to JSON, and converted to both
+    PNG and PDF, which exercises Jackson, iText, Java2D, the font
+    loader, and the HTML-to-text conversion used for labels: nearly
+    everything that the converters and the editor load at startup.
+    Output goes to temporary files that are deleted afterwards.
+
+    To generate the archive (JDK 13 or later):
+
+        java -XX:ArchiveClassesAtExit=pededitor.jsa -cp <classpath> \
+            gov.nist.pededitor.CDSTraining [<directory>]
+
+    and then start any entry point with
+    -XX:SharedArchiveFile=pededitor.jsa, as the cds.sh launcher does.
+    StartupBenchmark measures the difference this makes. */
+public class CDSTraining {
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        File dir = new File((args.length > 0) ? args[0] : "test");
+        File[] files = dir.listFiles
+            ((File d, String name) -> "ped".equalsIgnoreCase(Stuff.getExtension(name)));
+        if (files == null || files.length == 0) {
+            System.err.println("No PED files found in '" + dir + "'");
+            System.exit(1);
+        }
+
+        File png = File.createTempFile("cds", ".png");
+        File pdf = File.createTempFile("cds", ".pdf");
+        try {
+            for (File file: files) {
+                try {
+                    Diagram d = Diagram.loadFrom(file);
+                    d.toJsonString();
+                    for (Label label: d.labels()) {
+                        HtmlToText.htmlToText(label.getText());
+                    }
+                    d.saveAsImage(png, "png", 400, 300);
+                    DiagramPDF.saveAsPDF(d, pdf);
+                } catch (IOException | RuntimeException x) {
+                    System.err.println(file + ": " + x);
+                }
+            }
+        } finally {
+            png.delete();
+            pdf.delete();
+        }
+        System.out.println("Processed " + files.length + " files.");
+    }
+}
@@ -367,11 +367,17 @@ public class ChemicalString {
         letters are ignored. This is because of text such as
         "&alpha;Fe". */
     public static Match[] embeddedFormulas(CharSequence s) {
+        return FormulaScanner.embeddedFormulas(s);
+    }
+
+    /** Regular expression-based equivalent of embeddedFormulas(),
+        retained as a reference for FormulaScanner. */
+    static Match[] regexEmbeddedFormulas(CharSequence s) {
         ArrayList<Match> res = new ArrayList<>();
         for (int i = 0; i < s.length(); ++i) {
             char ch = s.charAt(i);
             if (Character.isLetterOrDigit(ch) && ch <= 'z') {
-                Match m = composition(s.subSequence(i, s.length()));
+                Match m = regexComposition(s.subSequence(i, s.length()));
                 if (m == null) {
                     for (; i < s.length()
                              && Character.isLetterOrDigit(s.charAt(i));
@@ -528,6 +534,12 @@ public class ChemicalString {
 
         Otherwise this behaves like simpleComposition. */
     public static Match composition(CharSequence s) {
+        return FormulaScanner.composition(s);
+    }
+
+    /** Regular expression-based equivalent of composition(),
+        retained as a reference for FormulaScanner. */
+    static Match regexComposition(CharSequence s) {
         Match res = new Match();
         res.composition = new HashMap<String,Double>();
 
@@ -564,7 +576,7 @@ public class ChemicalString {
                 break;
             }
             
-            Match simple = simpleComposition(scan.getSequence());
+            Match simple = regexSimpleComposition(scan.getSequence());
             if (simple == null) {
                 break;
             }
@@ -578,11 +590,11 @@ public class ChemicalString {
         return (res.endIndex > 0) ? res : null;
     }
 
-    /** Sub-function of composition() for parsing the element names,
+    /** Sub-function of regexComposition() for parsing the element names,
         parentheses, and subscripts in chemical formulas. So
         "Ca(NO3)2.5" would be understood, but anything more
         complicated would not be. */
-    static Match simpleComposition(CharSequence s) {
+    static Match regexSimpleComposition(CharSequence s) {
         Match res = new Match();
         HashMap<String,Double> compo = new HashMap<>();
         res.composition = compo;
@@ -601,7 +613,7 @@ public class ChemicalString {
             if (delimiterNo >= 0) {
                 char rightDelimiter = rightDelimiters.charAt(delimiterNo);
                 s = s.subSequence(1, s.length());
-                Match submatch = composition(s);
+                Match submatch = regexComposition(s);
                 if (submatch == null) {
                     break;
                 }
@@ -3,11 +3,17 @@
 
 package gov.nist.pededitor;
 
-import java.util.regex.Pattern;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
 
 /** @author Eric Boesch */
 
 public class ContinuedFraction {
+    /** Powers of ten that are exactly representable as doubles. */
+    static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
     public long numerator;
     public long denominator;
 
@@ -133,10 +139,53 @@ public class ContinuedFraction {
             return null;
         }
 
-        for (int steps = 0; ; ++steps) {
-            // Starting from scratch each time is inefficient but easy to follow.
+        // Compute successive convergents p/q of the continued
+        // fraction with the usual recurrence, which gives the same
+        // results as createBySteps(x, steps) for each value of steps
+        // in time proportional to steps instead of steps squared.
+        double y = x;
+        long p1 = 1, p2 = 0, q1 = 0, q2 = 1;
+        double frac = 0;
+        boolean terminated = false;
+        boolean overflowed = false;
 
-            Extra f = createBySteps(x, steps);
+        for (int steps = 0; ; ++steps) {
+            Extra f;
+            if (overflowed) {
+                f = createBySteps(x, steps);
+            } else if (terminated) {
+                f = new Extra(p1, q1, 0);
+            } else {
+                double di = (y < 0) ? Math.ceil(y) : Math.floor(y);
+                if (di < Long.MIN_VALUE || di > Long.MAX_VALUE) {
+                    return null;
+                }
+                long i = (long) di;
+                frac = y - i;
+                try {
+                    long p = Math.addExact(Math.multiplyExact(i, p1), p2);
+                    long q = Math.addExact(Math.multiplyExact(i, q1), q2);
+                    p2 = p1;
+                    q2 = q1;
+                    p1 = p;
+                    q1 = q;
+                } catch (ArithmeticException e) {
+                    overflowed = true;
+                }
+                if (overflowed) {
+                    f = createBySteps(x, steps);
+                } else {
+                    f = (q1 < 0) ? new Extra(-p1, -q1, frac)
+                        : new Extra(p1, q1, frac);
+                }
+                if (frac == 0) {
+                    terminated = true;
+                    p1 = f.numerator;
+                    q1 = f.denominator;
+                } else {
+                    y = 1.0 / frac;
+                }
+            }
             if (f == null) {
                 return null;
             }
@@ -271,24 +320,54 @@ public class ContinuedFraction {
         handling. */
     public static double parseDouble(String s)
         throws NumberFormatException {
-        s = s.trim();
+        return parseDouble(s, 0, s.length());
+    }
+
+    /** Equivalent to parseDouble(s.subSequence(start,
+        end).toString()), but valid input is parsed in a single pass
+        without creating substrings or throwing and catching
+        exceptions. */
+    public static double parseDouble(CharSequence s, int start, int end)
+        throws NumberFormatException {
+        return parse(s, start, end, true);
+    }
+
+    /** Like parseDouble(s, start, end), but return NaN instead of
+        throwing a NumberFormatException for invalid input. */
+    public static double parseDoubleOrNaN(CharSequence s, int start, int end) {
+        return parse(s, start, end, false);
+    }
+
+    private static double parse(CharSequence s, int start, int end,
+                                boolean throwErrors) {
+        // Trim as String.trim() does.
+        while (start < end && s.charAt(start) <= ' ') {
+            ++start;
+        }
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            --end;
+        }
         double mul = 1.0;
-        if (s.length() > 0 && s.charAt(s.length() - 1) == '%') {
+        if (end > start && s.charAt(end - 1) == '%') {
             mul = 0.01;
-            s = s.substring(0, s.length() -1);
+            --end;
         }
 
-
-        try {
-            return mul * Double.parseDouble(s);
-        } catch (NumberFormatException e) {
-            // Test for fraction format.
+        double d = parseDecimal(s, start, end);
+        if (!Double.isNaN(d)) {
+            return mul * d;
         }
 
-        int p = s.indexOf('/');
-        if (p <= 0) {
-            if (s.length() == 1) {
-                switch (s.charAt(0)) {
+        int p = -1;
+        for (int i = start; i < end; ++i) {
+            if (s.charAt(i) == '/') {
+                p = i;
+                break;
+            }
+        }
+        if (p <= start) {
+            if (end - start == 1) {
+                switch (s.charAt(start)) {
                 case '\u00bd':
                     return 0.5;
                 case '\u00bc':
@@ -299,20 +378,164 @@ public class ContinuedFraction {
                     break;
                 }
             }
-            throw new NumberFormatException
-                ("Invalid number format '" + s + "'");
+            // Leave special cases such as "NaN", "1e5d", and
+            // hexadecimal to Double.parseDouble(). Double.parseDouble()
+            // never accepts a slash, so a fraction cannot get here.
+            String str = s.subSequence(start, end).toString();
+            try {
+                return mul * Double.parseDouble(str);
+            } catch (NumberFormatException e) {
+                if (!throwErrors) {
+                    return Double.NaN;
+                }
+                throw new NumberFormatException
+                    ("Invalid number format '" + str + "'");
+            }
         }
 
-        long num = Long.parseLong(s.substring(0, p));
-        long den = Long.parseLong(s.substring(p + 1));
+        long num = parseLong(s, start, p);
+        long den = parseLong(s, p + 1, end);
+        if (num == NOT_A_LONG || den == NOT_A_LONG) {
+            // Let Long.parseLong() decide, since it accepts non-ASCII
+            // digits, and produce the appropriate exception.
+            try {
+                num = Long.parseLong(s.subSequence(start, p).toString());
+                den = Long.parseLong(s.subSequence(p + 1, end).toString());
+            } catch (NumberFormatException e) {
+                if (!throwErrors) {
+                    return Double.NaN;
+                }
+                throw e;
+            }
+        }
 
         if (den == 0) {
+            if (!throwErrors) {
+                return Double.NaN;
+            }
             throw new NumberFormatException("Zero denominator");
         }
 
         return mul * num / den;
     }
 
+    /** Sentinel returned by parseLong(). */
+    private static final long NOT_A_LONG = Long.MIN_VALUE;
+
+    /** Return the value of s[start, end) if it consists of an
+        optional sign and 1-18 ASCII digits, or NOT_A_LONG otherwise. */
+    private static long parseLong(CharSequence s, int start, int end) {
+        boolean negative = false;
+        if (start < end && (s.charAt(start) == '-' || s.charAt(start) == '+')) {
+            negative = s.charAt(start) == '-';
+            ++start;
+        }
+        if (start == end || end - start > 18) {
+            return NOT_A_LONG;
+        }
+        long res = 0;
+        for (int i = start; i < end; ++i) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return NOT_A_LONG;
+            }
+            res = res * 10 + (ch - '0');
+        }
+        return negative ? -res : res;
+    }
+
+    /** Return Double.parseDouble(s.subSequence(start,
+        end).toString()) if s[start, end) is a number in plain
+        decimal or exponential notation that can be converted exactly
+        without that method's help, or NaN otherwise.
+
+        Numbers of at most 15 significant digits whose decimal
+        exponent is at most 22 in magnitude are converted by a single
+        correctly rounded multiplication or division, which yields
+        the same result as Double.parseDouble(). */
+    static double parseDecimal(CharSequence s, int start, int end) {
+        // Double.parseDouble() ignores surrounding white space.
+        int i = start;
+        while (i < end && s.charAt(i) <= ' ') {
+            ++i;
+        }
+        while (end > i && s.charAt(end - 1) <= ' ') {
+            --end;
+        }
+
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = (s.charAt(i) == '-');
+            ++i;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean sawDigit = false;
+        boolean sawPoint = false;
+        for (; i < end; ++i) {
+            char ch = s.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                sawDigit = true;
+                if (digits < 15) {
+                    mantissa = mantissa * 10 + (ch - '0');
+                    if (mantissa != 0) {
+                        ++digits;
+                    }
+                    if (sawPoint) {
+                        --exponent;
+                    }
+                } else if (ch != '0') {
+                    return Double.NaN; // Too many digits
+                } else if (!sawPoint) {
+                    ++exponent;
+                }
+            } else if (ch == '.' && !sawPoint) {
+                sawPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!sawDigit) {
+            return Double.NaN;
+        }
+
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            ++i;
+            boolean negativeExponent = false;
+            if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExponent = (s.charAt(i) == '-');
+                ++i;
+            }
+            int e = 0;
+            boolean sawExponentDigit = false;
+            for (; i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9'; ++i) {
+                sawExponentDigit = true;
+                if (e < 10000) {
+                    e = e * 10 + (s.charAt(i) - '0');
+                }
+            }
+            if (!sawExponentDigit) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if (i != end) {
+            return Double.NaN;
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (exponent < -22 || exponent > 22) {
+            return Double.NaN;
+        }
+        double res = (exponent >= 0) ? mantissa * POW10[exponent]
+            : mantissa / POW10[-exponent];
+        return negative ? -res : res;
+    }
+
     /** Return a string representation of x as a fraction if x
         resembles a fraction and looks good as one, or a decimal or
         exponential format otherwise.
@@ -324,13 +547,53 @@ public class ContinuedFraction {
         return toString(x, showPercentage, true);
     }
 
+    /** Cache entry for toString(double, boolean, boolean). */
+    private static final class CachedString {
+        final double x;
+        final int flags;
+        final Locale locale;
+        final String value;
+
+        CachedString(double x, int flags, Locale locale, String value) {
+            this.x = x;
+            this.flags = flags;
+            this.locale = locale;
+            this.value = value;
+        }
+    }
+
+    /** Direct-mapped cache of recent toString() results, which are
+        requested repeatedly for the same values by rulers and dialog
+        fields. Entries are immutable, so no locking is needed. */
+    private static final CachedString[] toStringCache = new CachedString[256];
+
     static String toString(double x, boolean showPercentage,
                            boolean allowFractions) {
+        int flags = (showPercentage ? 1 : 0) + (allowFractions ? 2 : 0);
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        long bits = Double.doubleToLongBits(x);
+        int h = (int) (bits ^ (bits >>> 32)) * 31 + flags;
+        int index = (h ^ (h >>> 16)) & (toStringCache.length - 1);
+        CachedString c = toStringCache[index];
+        if (c != null && Double.doubleToLongBits(c.x) == bits
+            && c.flags == flags && c.locale == locale) {
+            return c.value;
+        }
+        String res = toStringUncached(x, showPercentage, allowFractions);
+        toStringCache[index] = new CachedString(x, flags, locale, res);
+        return res;
+    }
+
+    static String toStringUncached(double x, boolean showPercentage,
+                                   boolean allowFractions) {
         String suffix = showPercentage ? "%" : "";
         double mult = showPercentage ? 100 : 1;
         double xp = x * mult;
 
         if (Math.abs(xp) >= 1e6) {
+            if (isPlainLocale()) {
+                return CoordinateWriter.format(xp, 6) + suffix;
+            }
             return String.format("%g", xp) + suffix;
         }
 
@@ -354,8 +617,7 @@ public class ContinuedFraction {
                 tens -= 2;
             }
 
-            return String.format("%." + (tens > 0 ? tens : 0) + "f", xp)
-                + suffix;
+            return formatFixed(xp, tens > 0 ? tens : 0) + suffix;
         }
 
         return toDecimalString(xp, 6) + suffix;
@@ -372,28 +634,123 @@ public class ContinuedFraction {
         if (vabs == 0) {
             return "0";
         }
-        String format;
         if (vabs < 1e-4 || vabs >= 1e6) {
-            format = "%." + Integer.toString(minSigFigs-1) + "e";
-        } else {
-            int precision = 
-                (vabs < 10) ? 3
-                : (vabs < 100) ? 2
-                : (vabs < 1000) ? 1
-                : (vabs < 1e4) ? 0
-                : (vabs < 1e5) ? -1
-                : -2;
-            precision = Math.max(0, minSigFigs + precision);
-            format = "%." + Integer.toString(precision) + "f";
-        }
-        return fixMinusZero(String.format(format, v));
+            return fixMinusZero
+                (String.format("%." + Integer.toString(minSigFigs-1) + "e", v));
+        }
+        int precision =
+            (vabs < 10) ? 3
+            : (vabs < 100) ? 2
+            : (vabs < 1000) ? 1
+            : (vabs < 1e4) ? 0
+            : (vabs < 1e5) ? -1
+            : -2;
+        precision = Math.max(0, minSigFigs + precision);
+        return fixMinusZero(formatFixed(v, precision));
     }
 
-    private static Pattern minusZeroPattern = Pattern.compile("-0+\\.?0*(E|\\z)");
+    /** Cache entry for isPlainLocale(). */
+    private static final class LocaleInfo {
+        final Locale locale;
+        final boolean plain;
+
+        LocaleInfo(Locale locale) {
+            this.locale = locale;
+            DecimalFormatSymbols syms = DecimalFormatSymbols.getInstance(locale);
+            plain = syms.getZeroDigit() == '0' && syms.getDecimalSeparator() == '.';
+        }
+    }
+
+    private static volatile LocaleInfo localeInfo = null;
+
+    /** Return true if String.format() in the default locale writes
+        numbers with ASCII digits and a period as the decimal point,
+        so that formatFixed() and CoordinateWriter.format() give the
+        same results as String.format(). */
+    static boolean isPlainLocale() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        LocaleInfo info = localeInfo;
+        if (info == null || info.locale != locale) {
+            info = new LocaleInfo(locale);
+            localeInfo = info;
+        }
+        return info.plain;
+    }
+
+    /** Return String.format("%." + fractionDigits + "f", x).
+
+        String.format() rounds the shortest decimal representation of
+        x half up. Scaling x by 10^fractionDigits and rounding the
+        result gives the same digits except when the scaled value lies
+        within rounding error of a tie, so in that rare case, and when
+        the scaled value is too large for this to be accurate, this
+        falls back to String.format(). */
+    public static String formatFixed(double x, int fractionDigits) {
+        if (fractionDigits >= 0 && fractionDigits <= 22 && !Double.isNaN(x) && !Double.isInfinite(x)
+            && isPlainLocale()) {
+            double scaled = Math.abs(x) * POW10[fractionDigits];
+            if (scaled < 1e13) {
+                double floor = Math.floor(scaled);
+                double frac = scaled - floor;
+                if (Math.abs(frac - 0.5) > scaled * 1e-14 + 1e-300) {
+                    long digits = (long) floor + ((frac > 0.5) ? 1 : 0);
+                    long pow = (long) POW10[Math.min(fractionDigits, 18)];
+                    StringBuilder sb = new StringBuilder(24);
+                    if (Double.doubleToRawLongBits(x) < 0) {
+                        sb.append('-');
+                    }
+                    if (fractionDigits > 18) {
+                        // digits < 1e13 < pow, so the integer part is 0.
+                        sb.append("0.");
+                        for (int i = 18; i < fractionDigits; ++i) {
+                            sb.append('0');
+                        }
+                        appendPadded(sb, digits, 18);
+                        return sb.toString();
+                    }
+                    sb.append(digits / pow);
+                    if (fractionDigits > 0) {
+                        sb.append('.');
+                        appendPadded(sb, digits % pow, fractionDigits);
+                    }
+                    return sb.toString();
+                }
+            }
+        }
+        return String.format("%." + fractionDigits + "f", x);
+    }
+
+    /** Append v, left-padded with zeros to the given width. */
+    private static void appendPadded(StringBuilder sb, long v, int width) {
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            ++digits;
+        }
+        for (int i = digits; i < width; ++i) {
+            sb.append('0');
+        }
+        sb.append(v);
+    }
 
     /** Remove the leading minus sign from minus zero ("-0") and its
         fixed-point variants. Leave other strings unchanged. */
     public static String fixMinusZero(String s) {
-        return minusZeroPattern.matcher(s).lookingAt() ? "0" : s;
+        // Equivalent to matching the regular expression
+        // "-0+\\.?0*(E|\\z)" at the start of s.
+        int len = s.length();
+        if (len < 2 || s.charAt(0) != '-' || s.charAt(1) != '0') {
+            return s;
+        }
+        int i = 2;
+        while (i < len && s.charAt(i) == '0') {
+            ++i;
+        }
+        if (i < len && s.charAt(i) == '.') {
+            ++i;
+        }
+        while (i < len && s.charAt(i) == '0') {
+            ++i;
+        }
+        return (i == len || s.charAt(i) == 'E') ? "0" : s;
     }
 }
@@ -0,0 +1,364 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/** Compare ContinuedFraction's parser and formatters against the
+    original exception- and regex-based versions, which are retained
+    here, for both correctness and speed.
+
+    Usage: ContinuedFractionBenchmark [<number of random values>]
+
+    Random decimal, exponential, fractional, percentage and invalid
+    strings are parsed both ways, and random values (including many
+    that resemble fractions, which is the case that toString() and
+    create() work hardest on) are formatted both ways. Any mismatch
+    is reported, and then each operation is timed. */
+public class ContinuedFractionBenchmark {
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        Random random = new Random(1);
+
+        ArrayList<String> strings = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            strings.add(randomString(random));
+        }
+        double[] values = new double[count];
+        for (int i = 0; i < count; ++i) {
+            values[i] = randomValue(random);
+        }
+
+        int mismatches = 0;
+        for (String s: strings) {
+            String a = parseResult(s, true);
+            String b = parseResult(s, false);
+            if (!a.equals(b)) {
+                ++mismatches;
+                System.err.println("parseDouble mismatch: '" + s + "': "
+                                   + a + " vs " + b);
+            }
+        }
+        for (double x: values) {
+            for (int flags = 0; flags < 4; ++flags) {
+                boolean pct = (flags & 1) != 0;
+                boolean fracs = (flags & 2) != 0;
+                String a = referenceToString(x, pct, fracs);
+                String b = ContinuedFraction.toString(x, pct, fracs);
+                if (!a.equals(b)) {
+                    ++mismatches;
+                    System.err.println("toString mismatch: " + x + " " + pct
+                                       + " " + fracs + ": " + a + " vs " + b);
+                }
+            }
+            for (int sigFigs = 1; sigFigs <= 8; ++sigFigs) {
+                String a = referenceToDecimalString(x, sigFigs);
+                String b = ContinuedFraction.toDecimalString(x, sigFigs);
+                if (!a.equals(b)) {
+                    ++mismatches;
+                    System.err.println("toDecimalString mismatch: " + x + " "
+                                       + sigFigs + ": " + a + " vs " + b);
+                }
+            }
+            ContinuedFraction a = referenceCreate(x, 0.000001, 0, 90);
+            ContinuedFraction b = ContinuedFraction.create(x, 0.000001, 0, 90);
+            if ((a == null) != (b == null)
+                || (a != null && (a.numerator != b.numerator
+                                  || a.denominator != b.denominator))) {
+                ++mismatches;
+                System.err.println("create mismatch: " + x + ": " + a + " vs " + b);
+            }
+        }
+        System.out.println(strings.size() + " strings and " + values.length
+                           + " values checked, " + mismatches + " mismatches");
+
+        for (int round = 0; round < 3; ++round) {
+            System.out.println("Round " + (round + 1) + ":");
+            long t0 = System.nanoTime();
+            double sum = 0;
+            for (String s: strings) {
+                try {
+                    sum += referenceParseDouble(s);
+                } catch (NumberFormatException x) {
+                    // Expected for invalid strings
+                }
+            }
+            long t1 = System.nanoTime();
+            for (String s: strings) {
+                try {
+                    sum += ContinuedFraction.parseDouble(s);
+                } catch (NumberFormatException x) {
+                    // Expected for invalid strings
+                }
+            }
+            long t2 = System.nanoTime();
+            report("parseDouble", t1 - t0, t2 - t1, strings.size());
+
+            int len = 0;
+            t0 = System.nanoTime();
+            for (double x: values) {
+                len += referenceToString(x, false, true).length();
+            }
+            t1 = System.nanoTime();
+            for (double x: values) {
+                len += ContinuedFraction.toStringUncached(x, false, true).length();
+            }
+            t2 = System.nanoTime();
+            report("toString", t1 - t0, t2 - t1, values.length);
+
+            t0 = System.nanoTime();
+            for (double x: values) {
+                len += referenceToDecimalString(x, 6).length();
+            }
+            t1 = System.nanoTime();
+            for (double x: values) {
+                len += ContinuedFraction.toDecimalString(x, 6).length();
+            }
+            t2 = System.nanoTime();
+            report("toDecimalString", t1 - t0, t2 - t1, values.length);
+
+            t0 = System.nanoTime();
+            for (double x: values) {
+                if (referenceCreate(x, 0.000001, 0, 90) != null) {
+                    ++len;
+                }
+            }
+            t1 = System.nanoTime();
+            for (double x: values) {
+                if (ContinuedFraction.create(x, 0.000001, 0, 90) != null) {
+                    ++len;
+                }
+            }
+            t2 = System.nanoTime();
+            report("create", t1 - t0, t2 - t1, values.length);
+            if (sum == 42 && len == 42) {
+                System.out.println(); // Defeat dead code elimination
+            }
+        }
+    }
+
+    static void report(String name, long reference, long current, int count) {
+        System.out.println(String.format
+                           ("  %-16s original %6.0f ns/op, current %6.0f ns/op",
+                            name, (double) reference / count,
+                            (double) current / count));
+    }
+
+    /** @return a string describing the result of parsing s. */
+    static String parseResult(String s, boolean reference) {
+        try {
+            double d = reference ? referenceParseDouble(s)
+                : ContinuedFraction.parseDouble(s);
+            return Long.toHexString(Double.doubleToLongBits(d));
+        } catch (NumberFormatException x) {
+            return x.toString();
+        }
+    }
+
+    static final String[] SPECIAL_STRINGS = {
+        "", " ", "%", "/", "1/", "/2", "1/0", "-3/-4", "+1/+2", "1 /2",
+        "\u00bd", "\u00bc", "\u2153", "\u00bd%", "NaN", "-Infinity",
+        "0x1p3", "1e5d", "2f", ".", "-.5", "5.", "1e", "e5", "1e-400",
+        "1e400", "-0", "0.000", "12345678901234567890", "9223372036854775807/1",
+        "9223372036854775808/1", "\u0661/\u0662", "1,5", "1.5.5" };
+
+    static String randomString(Random random) {
+        switch (random.nextInt(8)) {
+        case 0:
+            return SPECIAL_STRINGS[random.nextInt(SPECIAL_STRINGS.length)];
+        case 1:
+            return (random.nextInt(200) - 100) + "/" + random.nextInt(20);
+        case 2:
+            return Double.toString(randomValue(random));
+        case 3:
+            return String.format("%." + random.nextInt(10) + "f",
+                                 (random.nextDouble() - 0.5) * 1000);
+        case 4:
+            return String.format("%." + random.nextInt(10) + "g%%",
+                                 random.nextDouble() * 100);
+        case 5:
+            return " " + random.nextInt(100000) + " ";
+        case 6:
+            return String.format("%." + random.nextInt(17) + "e",
+                                 Math.pow(10, random.nextInt(60) - 30)
+                                 * random.nextDouble());
+        default:
+            StringBuilder sb = new StringBuilder();
+            String alphabet = "0123456789.-+eE/% ";
+            for (int i = random.nextInt(8); i >= 0; --i) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            return sb.toString();
+        }
+    }
+
+    static double randomValue(Random random) {
+        switch (random.nextInt(6)) {
+        case 0:
+            return (double) (random.nextInt(200) - 100) / (1 + random.nextInt(100));
+        case 1:
+            return random.nextInt(10000) / 1000.0;
+        case 2:
+            return (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16) - 8);
+        case 3:
+            return random.nextInt(2000) - 1000;
+        case 4:
+            return Double.longBitsToDouble(random.nextLong());
+        default:
+            return random.nextInt(200) / 8.0 + 1e-9 * random.nextGaussian();
+        }
+    }
+
+    // The original implementations follow.
+
+    static double referenceParseDouble(String s)
+        throws NumberFormatException {
+        s = s.trim();
+        double mul = 1.0;
+        if (s.length() > 0 && s.charAt(s.length() - 1) == '%') {
+            mul = 0.01;
+            s = s.substring(0, s.length() -1);
+        }
+
+        try {
+            return mul * Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            // Test for fraction format.
+        }
+
+        int p = s.indexOf('/');
+        if (p <= 0) {
+            if (s.length() == 1) {
+                switch (s.charAt(0)) {
+                case '\u00bd':
+                    return 0.5;
+                case '\u00bc':
+                    return 0.25;
+                case '\u2153':
+                    return 1.0/3;
+                default:
+                    break;
+                }
+            }
+            throw new NumberFormatException
+                ("Invalid number format '" + s + "'");
+        }
+
+        long num = Long.parseLong(s.substring(0, p));
+        long den = Long.parseLong(s.substring(p + 1));
+
+        if (den == 0) {
+            throw new NumberFormatException("Zero denominator");
+        }
+
+        return mul * num / den;
+    }
+
+    static ContinuedFraction referenceCreate
+        (double x, double maxStepError, int maxMinAtor,
+         long maxDenominator) {
+        double oldError = 0.0;
+
+        if (x == 0) {
+            return new ContinuedFraction(0, 1);
+        }
+
+        if (Double.isNaN(x) || Double.isInfinite(x)) {
+            return null;
+        }
+
+        for (int steps = 0; ; ++steps) {
+            ContinuedFraction.Extra f = ContinuedFraction.createBySteps(x, steps);
+            if (f == null) {
+                return null;
+            }
+
+            long minAtor = Math.min(Math.abs(f.numerator), f.denominator);
+
+            if ((maxMinAtor != 0 && minAtor > maxMinAtor)
+                || (maxDenominator != 0 && f.denominator > maxDenominator)) {
+                return null;
+            }
+
+            double error = Math.abs(((double) f.numerator) / f.denominator - x);
+
+            if (steps > 0 && error >= oldError) {
+                return null;
+            }
+            oldError = error;
+
+            if (f.numerator != 0
+                && Math.abs(f.lastFrac) * (steps+1) <= maxStepError) {
+                return new ContinuedFraction(f);
+            }
+        }
+    }
+
+    static String referenceToString(double x, boolean showPercentage,
+                                    boolean allowFractions) {
+        String suffix = showPercentage ? "%" : "";
+        double mult = showPercentage ? 100 : 1;
+        double xp = x * mult;
+
+        if (Math.abs(xp) >= 1e6) {
+            return String.format("%g", xp) + suffix;
+        }
+
+        if (xp == (int) xp) {
+            return ((int) xp) + suffix;
+        }
+
+        ContinuedFraction f = referenceCreate(x, 0.0000001, 1000, 0);
+        if (f != null && (allowFractions || f.isDecimal())) {
+            if (allowFractions && !f.looksLikeDecimal(showPercentage)) {
+                return f.toString();
+            }
+
+            int tens = 0;
+            long pow10 = 1;
+            while (pow10 % f.denominator != 0) {
+                ++tens;
+                pow10 *= 10;
+            }
+            if (showPercentage) {
+                tens -= 2;
+            }
+
+            return String.format("%." + (tens > 0 ? tens : 0) + "f", xp)
+                + suffix;
+        }
+
+        return referenceToDecimalString(xp, 6) + suffix;
+    }
+
+    static String referenceToDecimalString(double v, int minSigFigs) {
+        double vabs = Math.abs(v);
+        if (vabs == 0) {
+            return "0";
+        }
+        String format;
+        if (vabs < 1e-4 || vabs >= 1e6) {
+            format = "%." + Integer.toString(minSigFigs-1) + "e";
+        } else {
+            int precision =
+                (vabs < 10) ? 3
+                : (vabs < 100) ? 2
+                : (vabs < 1000) ? 1
+                : (vabs < 1e4) ? 0
+                : (vabs < 1e5) ? -1
+                : -2;
+            precision = Math.max(0, minSigFigs + precision);
+            format = "%." + Integer.toString(precision) + "f";
+        }
+        return referenceFixMinusZero(String.format(format, v));
+    }
+
+    private static Pattern minusZeroPattern = Pattern.compile("-0+\\.?0*(E|\\z)");
+
+    static String referenceFixMinusZero(String s) {
+        return minusZeroPattern.matcher(s).lookingAt() ? "0" : s;
+    }
+}
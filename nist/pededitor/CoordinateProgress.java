@@ -0,0 +1,17 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+/** Callback that CoordinateReader and CoordinateWriter invoke after
+    each chunk of work, so that long imports and exports can report
+    their progress and be canceled. */
+@FunctionalInterface
+public interface CoordinateProgress {
+    /** @param done The number of characters read so far (when
+        importing) or points written so far (when exporting).
+
+        @return false to cancel the operation, in which case the
+        reader or writer throws a CancellationException. */
+    boolean update(long done);
+}
@@ -0,0 +1,145 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/** Streaming parser for lists of x,y coordinate pairs in the format
+    that BasicEditor.stringToCurves() describes. The input is read in
+    chunks of CHUNK_SIZE characters without being split into a String
+    per line or per number, and numbers are parsed directly from the
+    line buffer by ContinuedFraction.parseDouble(CharSequence, int,
+    int). */
+public class CoordinateReader {
+    /** Number of characters read between progress updates. */
+    public static final int CHUNK_SIZE = 1 << 16;
+
+    /** Current line, excluding the newline. */
+    private final StringBuilder line = new StringBuilder(256);
+    private int lineNo = 0;
+    private ArrayList<Point2D.Double[]> curves = new ArrayList<>();
+    private double[] xy = new double[256];
+    private int pointCount = 0;
+
+    private CoordinateReader() {
+    }
+
+    /** Read the given text and return its curves. */
+    public static Point2D.Double[][] readCurves(String s)
+        throws NumberFormatException {
+        try {
+            return readCurves(new StringReader(s), null);
+        } catch (IOException x) {
+            throw new IllegalStateException(x); // Will never happen
+        }
+    }
+
+    /** Read everything from in and return its curves, calling
+        progress (if not null) after every CHUNK_SIZE characters.
+
+        @throws NumberFormatException if a line is not blank or a
+        comment and is not of the form x,y.
+
+        @throws CancellationException if progress returns false. */
+    public static Point2D.Double[][] readCurves
+        (Reader in, CoordinateProgress progress)
+        throws IOException, NumberFormatException {
+        CoordinateReader r = new CoordinateReader();
+        char[] buf = new char[CHUNK_SIZE];
+        long done = 0;
+        int len;
+        while ((len = in.read(buf)) >= 0) {
+            int start = 0;
+            for (int i = 0; i < len; ++i) {
+                if (buf[i] == '\n') {
+                    r.append(buf, start, i);
+                    r.endLine();
+                    start = i + 1;
+                }
+            }
+            r.append(buf, start, len);
+            done += len;
+            if (progress != null && !progress.update(done)) {
+                throw new CancellationException();
+            }
+        }
+        r.endLine();
+        r.endCurve();
+        return r.curves.toArray(new Point2D.Double[0][]);
+    }
+
+    private void append(char[] buf, int start, int end) {
+        line.append(buf, start, end - start);
+    }
+
+    private void endLine() {
+        ++lineNo;
+        int end = line.length();
+        for (int i = 0; i < end; ++i) {
+            if (line.charAt(i) == '#') {
+                end = i;
+                break;
+            }
+        }
+        int start = 0;
+        while (start < end && line.charAt(start) <= ' ') {
+            ++start;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            --end;
+        }
+        if (start == end) {
+            line.setLength(0);
+            endCurve();
+            return;
+        }
+
+        // Like String.split(","), ignore trailing empty fields.
+        int lastEnd = end;
+        while (lastEnd > start && line.charAt(lastEnd - 1) == ',') {
+            --lastEnd;
+        }
+        int comma = -1;
+        for (int i = start; i < lastEnd; ++i) {
+            if (line.charAt(i) == ',') {
+                if (comma >= 0) {
+                    comma = -1;
+                    break;
+                }
+                comma = i;
+            }
+        }
+        if (comma < 0) {
+            throw new NumberFormatException
+                ("Line " + lineNo + " '" + line.substring(start, end)
+                 + "' does not have format 'x,y'");
+        }
+
+        if (pointCount * 2 + 2 > xy.length) {
+            xy = Arrays.copyOf(xy, xy.length * 2);
+        }
+        xy[pointCount * 2] = ContinuedFraction.parseDouble(line, start, comma);
+        xy[pointCount * 2 + 1] = ContinuedFraction.parseDouble(line, comma + 1, lastEnd);
+        ++pointCount;
+        line.setLength(0);
+    }
+
+    private void endCurve() {
+        if (pointCount == 0) {
+            return;
+        }
+        Point2D.Double[] curve = new Point2D.Double[pointCount];
+        for (int i = 0; i < pointCount; ++i) {
+            curve[i] = new Point2D.Double(xy[i * 2], xy[i * 2 + 1]);
+        }
+        curves.add(curve);
+        pointCount = 0;
+    }
+}
@@ -0,0 +1,70 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Component;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+/** Perform a CoordinateReader or CoordinateWriter operation on a
+    background thread while showing a ProgressMonitor that lets the
+    user cancel it. The monitor only pops up if the operation is
+    expected to take more than half a second. */
+abstract class CoordinateWorker<T> extends SwingWorker<T, Void> {
+    private final ProgressMonitor monitor;
+    private final long total;
+
+    /** @param total The value of CoordinateProgress.update()'s
+        argument upon completion. */
+    CoordinateWorker(Component parent, String message, long total) {
+        this.total = Math.max(1, total);
+        monitor = new ProgressMonitor(parent, message, null, 0, 100);
+        addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName())) {
+                    monitor.setProgress((Integer) e.getNewValue());
+                    if (monitor.isCanceled()) {
+                        cancel(false);
+                    }
+                }
+            });
+    }
+
+    /** Perform the operation. This is called from a background
+        thread. */
+    abstract T compute(CoordinateProgress progress) throws Exception;
+
+    /** Called from the event dispatch thread with the result of
+        compute() if it completes normally. */
+    abstract void succeeded(T result);
+
+    /** Called from the event dispatch thread with the exception that
+        compute() threw, unless the operation was canceled. */
+    abstract void failed(Throwable x);
+
+    @Override protected T doInBackground() throws Exception {
+        return compute(done -> {
+                setProgress((int) Math.min(100, done * 100 / total));
+                return !isCancelled();
+            });
+    }
+
+    @Override protected void done() {
+        monitor.close();
+        if (isCancelled()) {
+            return;
+        }
+        try {
+            succeeded(get());
+        } catch (ExecutionException x) {
+            if (!(x.getCause() instanceof CancellationException)) {
+                failed(x.getCause());
+            }
+        } catch (InterruptedException | CancellationException x) {
+            // Canceled
+        }
+    }
+}
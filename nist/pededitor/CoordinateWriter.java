@@ -0,0 +1,238 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.function.DoubleUnaryOperator;
+
+/** Snapshot of groups of coordinate pairs that can be written to a
+    Writer in the format that CoordinateReader reads, optionally from
+    a background thread. Each coordinate is formatted as by
+    String.format("%.<sigFigs>g"), except that the decimal separator
+    is always a period, and output is flushed to the Writer every
+    CHUNK_SIZE points instead of being accumulated in one string. */
+public class CoordinateWriter {
+    /** Number of points written between progress updates. */
+    public static final int CHUNK_SIZE = 4096;
+
+    private String header = null;
+    private final ArrayList<String> groupHeaders = new ArrayList<>();
+    /** Each element holds x0, y0, x1, y1, ... */
+    private final ArrayList<double[]> groups = new ArrayList<>();
+    private long pointCount = 0;
+
+    /** Set the text (normally a comment) to write before everything
+        else. */
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    /** Add a group consisting of (f1(v1(p)), f2(v2(p))) for each
+        point p. If groupHeader is null, the group is separated from
+        the previous one by a blank line; otherwise groupHeader (which
+        should be a comment) is written instead. */
+    public void add(String groupHeader, Iterable<? extends Point2D> points,
+                    LinearAxis v1, DoubleUnaryOperator f1,
+                    LinearAxis v2, DoubleUnaryOperator f2) {
+        double[] xy = new double[16];
+        int cnt = 0;
+        for (Point2D p: points) {
+            if (cnt + 2 > xy.length) {
+                xy = Arrays.copyOf(xy, xy.length * 2);
+            }
+            double x = p.getX();
+            double y = p.getY();
+            xy[cnt++] = f1.applyAsDouble(v1.applyAsDouble(x, y));
+            xy[cnt++] = f2.applyAsDouble(v2.applyAsDouble(x, y));
+        }
+        groupHeaders.add(groupHeader);
+        groups.add(Arrays.copyOf(xy, cnt));
+        pointCount += cnt / 2;
+    }
+
+    public long getPointCount() {
+        return pointCount;
+    }
+
+    /** Write everything to out, calling progress (if not null) after
+        every CHUNK_SIZE points. out is flushed but not closed.
+
+        @throws CancellationException if progress returns false. */
+    public void write(Writer out, int sigFigs, CoordinateProgress progress)
+        throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (header != null) {
+            sb.append(header);
+        }
+        long done = 0;
+        for (int i = 0; i < groups.size(); ++i) {
+            String s = groupHeaders.get(i);
+            if (s != null) {
+                sb.append(s);
+            } else if (i > 0) {
+                sb.append('\n');
+            }
+            double[] xy = groups.get(i);
+            for (int j = 0; j < xy.length; j += 2) {
+                appendDouble(sb, xy[j], sigFigs);
+                sb.append(", ");
+                appendDouble(sb, xy[j + 1], sigFigs);
+                sb.append('\n');
+                if (++done % CHUNK_SIZE == 0) {
+                    flush(out, sb);
+                    if (progress != null && !progress.update(done)) {
+                        throw new CancellationException();
+                    }
+                }
+            }
+        }
+        flush(out, sb);
+        out.flush();
+        if (progress != null) {
+            progress.update(done);
+        }
+    }
+
+    private static void flush(Writer out, StringBuilder sb) throws IOException {
+        for (int i = 0; i < sb.length(); ) {
+            int end = Math.min(sb.length(), i + 8192);
+            out.append(sb, i, end);
+            i = end;
+        }
+        sb.setLength(0);
+    }
+
+    @Override public String toString() {
+        return toString(6);
+    }
+
+    public String toString(int sigFigs) {
+        StringWriter w = new StringWriter();
+        try {
+            write(w, sigFigs, null);
+        } catch (IOException x) {
+            throw new IllegalStateException(x); // Will never happen
+        }
+        return w.toString();
+    }
+
+    /** @return String.format(Locale.ROOT, "%." + sigFigs + "g", x). */
+    public static String format(double x, int sigFigs) {
+        return appendDouble(new StringBuilder(), x, sigFigs).toString();
+    }
+
+    /** Append String.format(Locale.ROOT, "%." + sigFigs + "g", x) to
+        sb without creating a Formatter.
+
+        String.format() rounds the shortest decimal representation of
+        x half up. Scaling x by a power of ten and rounding the result
+        gives the same digits except when the scaled value lies within
+        rounding error of a tie, so in that rare case, and for
+        precisions or exponents too large for the scaling to be
+        accurate, this falls back to String.format(). */
+    public static StringBuilder appendDouble(StringBuilder sb, double x, int sigFigs) {
+        if (sigFigs < 1) {
+            sigFigs = 1;
+        }
+        if (x == 0) {
+            if (Double.doubleToRawLongBits(x) != 0) {
+                sb.append('-');
+            }
+            sb.append('0');
+            if (sigFigs > 1) {
+                sb.append('.');
+                for (int i = 1; i < sigFigs; ++i) {
+                    sb.append('0');
+                }
+            }
+            return sb;
+        }
+
+        if (sigFigs <= 15 && !Double.isNaN(x) && !Double.isInfinite(x)) {
+            double a = Math.abs(x);
+            int e = (int) Math.floor(Math.log10(a));
+            // Math.log10() may be off by one near powers of 10, so
+            // adjust e if the scaled value has the wrong magnitude.
+            for (int tries = 0; tries < 2; ++tries) {
+                int shift = sigFigs - 1 - e;
+                if (shift < -22 || shift > 22) {
+                    break;
+                }
+                double scaled = (shift >= 0) ? a * ContinuedFraction.POW10[shift]
+                    : a / ContinuedFraction.POW10[-shift];
+                if (scaled >= ContinuedFraction.POW10[sigFigs]) {
+                    ++e;
+                    continue;
+                }
+                if (scaled < ContinuedFraction.POW10[sigFigs - 1]) {
+                    --e;
+                    continue;
+                }
+                double floor = Math.floor(scaled);
+                double frac = scaled - floor;
+                if (Math.abs(frac - 0.5) <= scaled * 1e-14) {
+                    break; // Too close to a tie to be sure
+                }
+                long digits = (long) floor + ((frac > 0.5) ? 1 : 0);
+                if (digits == (long) ContinuedFraction.POW10[sigFigs]) {
+                    digits /= 10;
+                    ++e;
+                }
+                if (x < 0) {
+                    sb.append('-');
+                }
+                appendDigits(sb, digits, e, sigFigs);
+                return sb;
+            }
+        }
+
+        return sb.append(String.format(Locale.ROOT, "%." + sigFigs + "g", x));
+    }
+
+    /** Append the number digits * 10^(e + 1 - sigFigs), where digits
+        has exactly sigFigs digits, in %g format. */
+    private static void appendDigits(StringBuilder sb, long digits, int e, int sigFigs) {
+        char[] d = new char[sigFigs];
+        for (int i = sigFigs - 1; i >= 0; --i) {
+            d[i] = (char) ('0' + digits % 10);
+            digits /= 10;
+        }
+
+        if (e >= -4 && e < sigFigs) {
+            if (e >= 0) {
+                sb.append(d, 0, e + 1);
+                if (e + 1 < sigFigs) {
+                    sb.append('.');
+                    sb.append(d, e + 1, sigFigs - e - 1);
+                }
+            } else {
+                sb.append("0.");
+                for (int i = -1; i > e; --i) {
+                    sb.append('0');
+                }
+                sb.append(d);
+            }
+            return;
+        }
+
+        sb.append(d[0]);
+        if (sigFigs > 1) {
+            sb.append('.');
+            sb.append(d, 1, sigFigs - 1);
+        }
+        sb.append(e < 0 ? "e-" : "e+");
+        int ae = Math.abs(e);
+        if (ae < 10) {
+            sb.append('0');
+        }
+        sb.append(ae);
+    }
+}
@@ -33,6 +33,9 @@ public class CropFrame extends ImageScrollFrame {
         ArrayList<CropEventListener>();
     protected CropFrameAction cropAction;
     protected CropFrameAction openAction;
+    /** Background decoder of the full-resolution image, or null if
+        it is not running. */
+    protected ImageDecoder decoder = null;
 
     public synchronized void addCropEventListener(CropEventListener listener) {
         cropListeners.add(listener);
@@ -42,6 +45,10 @@ public class CropFrame extends ImageScrollFrame {
     }
 
     protected void cropDone() {
+        // Let any decode in progress finish: it puts the image in
+        // DiagramCache, where the new diagram's SourceImage will find
+        // it.
+        decoder = null;
         CropEvent ce = new CropEvent(this);
         for (CropEventListener l : cropListeners) {
             l.cropPerformed(ce);
@@ -49,6 +56,18 @@ public class CropFrame extends ImageScrollFrame {
         dispose();
     }
 
+    @Override public void dispose() {
+        cancelDecoding();
+        super.dispose();
+    }
+
+    void cancelDecoding() {
+        if (decoder != null) {
+            decoder.cancel();
+            decoder = null;
+        }
+    }
+
     abstract class CropFrameAction extends AbstractAction {
         private static final long serialVersionUID = 7152450019959819145L;
 
@@ -178,6 +197,12 @@ public class CropFrame extends ImageScrollFrame {
         mnHelp.add(help);
 
         setJMenuBar(menuBar);
+
+        addWindowListener(new WindowAdapter() {
+                @Override public void windowClosing(WindowEvent e) {
+                    cancelDecoding();
+                }
+            });
     }
 
     public static File openFileDialog(Component parent, String title,
@@ -229,19 +254,50 @@ public class CropFrame extends ImageScrollFrame {
         setSelectionReady(getCropPane().getSelection() != null);
     }
 
+    /** Load the given image file. Large images are decoded in the
+        background: this method waits only for a low-resolution
+        preview, which is displayed until the full image is ready. */
     @Override public void setFilename(String filename)
         throws IOException {
-        super.setFilename(filename);
+        cancelDecoding();
+        ImageDecoder d = ImageDecoder.start(new File(filename), this::imageDecoded);
+        decoder = d;
+        BufferedImage preview;
+        try {
+            preview = d.awaitPreview();
+        } catch (IOException x) {
+            cancelDecoding();
+            throw x;
+        }
+        if (d.isDone()) {
+            decoder = null;
+            setImage(preview);
+        } else {
+            setPreview(preview, d.getWidth(), d.getHeight());
+        }
         this.filename = filename;
         setTitle("Select Diagram in " + filename);
         if (diagramDialog == null) {
-            diagramDialog = new DiagramDialog(this, getImage());
+            diagramDialog = new DiagramDialog(this, preview);
             diagramDialog.pack();
         }
-        diagramType = (new DiagramDialog(this, getImage())).showModal();
+        diagramType = (new DiagramDialog(this, preview)).showModal();
         repaint();
     }
 
+    void imageDecoded(ImageDecoder d) {
+        if (d != decoder || !d.isDone()) {
+            return;
+        }
+        decoder = null;
+        try {
+            getImagePane().finishPreview(d.await());
+        } catch (IOException x) {
+            JOptionPane.showMessageDialog
+                (this, "Could not load file: " + x);
+        }
+    }
+
     public DiagramType getDiagramType() {
         return diagramType;
     }
@@ -5,8 +5,15 @@ package gov.nist.pededitor;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicLong;
 
 class CroppedTransformedImage {
+    /** Number of SourceImage.getCroppedTransformedImage() calls that
+        found a usable cached image. */
+    static final AtomicLong cacheHits = new AtomicLong();
+    /** Number of SourceImage.getCroppedTransformedImage() calls that
+        had to transform the image again. */
+    static final AtomicLong cacheMisses = new AtomicLong();
 
     PolygonTransform transform;
     /** The transformed image cropped to cropBounds. */
@@ -15,8 +22,13 @@ class CroppedTransformedImage {
         in croppedImage. */
     Rectangle cropBounds;
 
-    int getMemoryUsage() {
-        return cropBounds.width * cropBounds.height;
+    /** @return the approximate size of croppedImage in bytes. Images
+        of grayscale and black-and-white scans use 1 byte or less per
+        pixel instead of 4; see ImageTransform.Storage. */
+    long getMemoryUsage() {
+        int bits = (croppedImage == null) ? 32
+            : croppedImage.getColorModel().getPixelSize();
+        return (long) cropBounds.width * cropBounds.height * bits / 8;
     }
 
     @Override public String toString() {
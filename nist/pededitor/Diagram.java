@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -40,6 +41,7 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -52,9 +54,9 @@ import java.util.Observable;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.DoubleUnaryOperator;
 import java.util.function.ToDoubleFunction;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import javax.imageio.ImageIO;
@@ -77,6 +79,12 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
     but not including GUI elements such as menus and windows. */
 public class Diagram extends Observable implements Printable {
     static ObjectMapper objectMapper = null;
+
+    static final Metrics.Timer PAINT_TIMER = Metrics.timer("diagram.paint");
+    static final Metrics.Timer LOAD_TIMER = Metrics.timer("diagram.load");
+    static final Metrics.Timer SAVE_TIMER = Metrics.timer("diagram.save");
+    static final Metrics.Timer INTERSECTIONS_TIMER
+        = Metrics.timer("diagram.intersections");
     protected static final DecimalFormat STANDARD_PERCENT_FORMAT
         = new DecimalFormat("##0.00%");
 
@@ -219,6 +227,9 @@ public class Diagram extends Observable implements Printable {
         array. Set this to null whenever diagramComponents changes. */
     protected transient double[/* Side */][/* elementNo */]
         componentElements = null;
+    /** Map from label text to the labels with that text. Set this to
+        null whenever decorations or label texts change. */
+    protected transient HashMap<String, ArrayList<Label>> labelIndex = null;
 
     protected ArrayList<LinearAxis> axes = new ArrayList<>();
     protected boolean percentagePreferred = true;
@@ -265,6 +276,7 @@ public class Diagram extends Observable implements Printable {
         setPrincipalToStandardPage(null);
         pageBounds = null;
         decorations = new ArrayList<>();
+        labelIndex = null;
         removeAllTags();
         removeAllVariables();
         diagramComponents = new String[Side.values().length];
@@ -498,6 +510,7 @@ public class Diagram extends Observable implements Printable {
 
     /** setChanged() and then notifyObservers() */
     public void propagateChange1() {
+        labelIndex = null;
         if (suppressUpdateCnt > 0) {
             return;
         }
@@ -506,6 +519,7 @@ public class Diagram extends Observable implements Printable {
     }
 
     public void propagateChange() {
+        labelIndex = null;
         if (suppressUpdateCnt > 0) {
             return;
         }
@@ -580,6 +594,7 @@ public class Diagram extends Observable implements Printable {
         boolean clip = (flags & FLAG_UNCLIPPED) == 0;
         boolean showImages = (flags & FLAG_HIDE_IMAGES) == 0;
         Shape oldClip = null;
+        long start = Metrics.start();
         try {
             oldClip = g.getClip();
             if (clip) {
@@ -591,12 +606,24 @@ public class Diagram extends Observable implements Printable {
             ArrayList<Decoration> decorations = getDecorations();
 
             for (Decoration d: decorations) {
-                if (showImages || !(d instanceof SourceImage)) {
+                if (g instanceof RecordingGraphics && d instanceof SourceImage) {
+                    // Resample scanned images at the resolution of
+                    // each replay, and only within its clip, instead
+                    // of once at the resolution of the recording.
+                    // Whether to show them is also decided then.
+                    ((RecordingGraphics) g).recordDeferred((t, m) -> {
+                            if (showImages) {
+                                t.scale(1 / m, 1 / m);
+                                draw(t, d, scale * m);
+                            }
+                        });
+                } else if (showImages || !(d instanceof SourceImage)) {
                     draw(g, d, scale);
                 }
             }
         } finally {
             g.setClip(oldClip);
+            PAINT_TIMER.stop(start);
         }
     }
 
@@ -690,6 +717,7 @@ public class Diagram extends Observable implements Printable {
 
     public void addDecoration(int index, Decoration d) {
         decorations.add(index, d);
+        labelIndex = null;
         propagateChange();
     }
 
@@ -955,9 +983,16 @@ public class Diagram extends Observable implements Printable {
         point, and perform the conversion by converting the projection
         and then adding the unchanged offset. */
     ProjectionAndOffset projectOntoDiagram(Point2D prin) {
+        return projectOntoDiagram
+            (prin, diagramShape(principalToStandardPage));
+    }
+
+    /** Like projectOntoDiagram(prin), but with the diagram's outline
+        in standard page coordinates supplied by the caller, so it
+        need not be recomputed for every point. */
+    ProjectionAndOffset projectOntoDiagram(Point2D prin, Shape diagramPage) {
         double x = prin.getX();
         double y = prin.getY();
-        Shape diagramPage = diagramShape(principalToStandardPage);
         Point2D.Double page = principalToStandardPage.transform(prin);
         CurveDistanceRange cdist = PathParam2D.borderDistance
             (diagramPage, page, 1e-8, 20);
@@ -1061,6 +1096,14 @@ public class Diagram extends Observable implements Printable {
         diagram and to all angles. */
     public boolean transformDiagram(SlopeTransform2D xform,
             boolean stopAtBorders) throws UnsolvableException {
+        return DiagramTransformer.transform(this, xform, stopAtBorders);
+    }
+
+    /** Equivalent to transformDiagram(), but transforms the
+        decorations one point at a time. Retained as the reference
+        implementation for DiagramTransformer. */
+    boolean serialTransformDiagram(SlopeTransform2D xform,
+            boolean stopAtBorders) throws UnsolvableException {
         for (Decoration d: decorations) {
             if (d instanceof TransformedShape) {
                 Point2D.Double p = ((TransformedShape) d).getLocation();
@@ -1163,7 +1206,11 @@ public class Diagram extends Observable implements Printable {
         }
         if (convertLabels) {
             for (Label label: labels()) {
-                label.setText(MoleWeightString.moleToWeight(label.getText()));
+                String s = label.getText();
+                String s2 = MoleWeightString.moleToWeight(s);
+                if (!s2.equals(s)) {
+                    label.setText(s2);
+                }
             }
         }
         setUsingWeightFraction(true);
@@ -1225,8 +1272,11 @@ public class Diagram extends Observable implements Printable {
             boolean isAtom = isAtomic();
             for (Label label: labels()) {
                 String s = label.getText();
-                label.setText(isAtom ? MoleWeightString.weightToAtomic(s)
-                              : MoleWeightString.weightToMole(s));
+                String s2 = isAtom ? MoleWeightString.weightToAtomic(s)
+                    : MoleWeightString.weightToMole(s);
+                if (!s2.equals(s)) {
+                    label.setText(s2);
+                }
             }
         }
         setUsingWeightFraction(false);
@@ -1437,6 +1487,7 @@ public class Diagram extends Observable implements Printable {
                 --index;
             }
             decorations.remove(lastIndex);
+            labelIndex = null;
             propagateChange();
         }
 
@@ -1467,6 +1518,15 @@ public class Diagram extends Observable implements Printable {
         return null;
     }
 
+    /** Decode all images now instead of when they are first painted.
+        This may be called from a background thread before the diagram
+        is displayed. */
+    public void preloadImages() {
+        for (SourceImage image: images()) {
+            image.getImage();
+        }
+    }
+
     // If firstImage() would return null, then create a new empty
     // SourceImage and return that instead. For old save file versions.
     SourceImage createFirstImage() {
@@ -1581,8 +1641,15 @@ public class Diagram extends Observable implements Printable {
     @JsonIgnore public String[] getAllText() {
         TreeSet<String> lines = new TreeSet<>();
         for (Label label: labels()) {
-            lines.add(HtmlToText.htmlToText(label.getText()));
+            lines.add(label.getPlainText());
         }
+        addNonLabelText(lines);
+        return lines.toArray(new String[0]);
+    }
+
+    /** Add the text of all tags, key values, and diagram components
+        to lines. */
+    void addNonLabelText(Collection<String> lines) {
         for (String s: tags) {
             lines.add(s.trim());
         }
@@ -1594,16 +1661,34 @@ public class Diagram extends Observable implements Printable {
                 lines.add(s);
             }
         }
-        return lines.toArray(new String[0]);
+    }
+
+    /** Return a map from label text to the list of labels with that
+        text. Do not modify the return value. */
+    @JsonIgnore Map<String, ArrayList<Label>> getLabelIndex() {
+        if (labelIndex == null) {
+            HashMap<String, ArrayList<Label>> index = new HashMap<>();
+            for (Label label: labels()) {
+                index.computeIfAbsent(label.getText(), k -> new ArrayList<>())
+                    .add(label);
+            }
+            labelIndex = index;
+        }
+        return labelIndex;
+    }
+
+    /** Return all labels whose text equals text. */
+    public List<Label> labelsWithText(String text) {
+        ArrayList<Label> res = getLabelIndex().get(text);
+        return (res == null) ? Collections.emptyList()
+            : Collections.unmodifiableList(res);
     }
 
     /** Return the coordinates for all labels that match text. */
     public ArrayList<Point2D.Double> labelCoordinates(String text) {
         ArrayList<Point2D.Double> res = new ArrayList<>();
-        for (Label label: labels()) {
-            if (text.equals(label.getText())) {
-                res.add(new Point2D.Double(label.getX(), label.getY()));
-            }
+        for (Label label: labelsWithText(text)) {
+            res.add(new Point2D.Double(label.getX(), label.getY()));
         }
         Collections.sort(res, new OrderByXY());
         return res;
@@ -1622,17 +1707,24 @@ public class Diagram extends Observable implements Printable {
     @JsonIgnore public String allCoordinatesToString
         (LinearAxis v1, DoubleUnaryOperator f1, LinearAxis v2, DoubleUnaryOperator f2,
          boolean addComments, int sigFigs) {
+        return allCoordinates(v1, f1, v2, f2, addComments).toString(sigFigs);
+    }
+
+    /** Return a snapshot of the coordinates of all labels and curves,
+        expressed in terms of f1(v1) and f2(v2), that can be written
+        to a stream without reference to this diagram. */
+    @JsonIgnore public CoordinateWriter allCoordinates
+        (LinearAxis v1, DoubleUnaryOperator f1, LinearAxis v2, DoubleUnaryOperator f2,
+         boolean addComments) {
         ArrayList<String> groupStartTags = new ArrayList<>();
         ArrayList<List<Point2D.Double>> rawCoordinateGroups
             = new ArrayList<>();
 
-        TreeSet<String> labelTexts = new TreeSet<>();
-        for (Label label: labels()) {
-            labelTexts.add(label.getText());
-        }
+        Map<String, ArrayList<Label>> index = getLabelIndex();
+        TreeSet<String> labelTexts = new TreeSet<>(index.keySet());
 
         for (String labelText: labelTexts) {
-            String plaintext = HtmlToText.htmlToText(labelText);
+            String plaintext = index.get(labelText).get(0).getPlainText();
             String groupStartTag = null;
             if (addComments) {
                 StringBuilder s = new StringBuilder();
@@ -1672,8 +1764,9 @@ public class Diagram extends Observable implements Printable {
             rawCoordinateGroups.add(Arrays.asList(path.getCurve().getPoints()));
         }
 
-        StringBuilder sb = new StringBuilder();
+        CoordinateWriter res = new CoordinateWriter();
         if (addComments) {
+            StringBuilder sb = new StringBuilder();
             sb.append("# ");
             sb.append(getProvisionalTitle());
             sb.append("\n");
@@ -1692,19 +1785,13 @@ public class Diagram extends Observable implements Printable {
                 }
             }
             sb.append("\n\n");
+            res.setHeader(sb.toString());
         }
-        int i = -1;
-        for (List<Point2D.Double> g: rawCoordinateGroups) {
-            ++i;
-            String s = groupStartTags.get(i);
-            if (s != null) {
-                sb.append(s);
-            } else if (i > 0) {
-                sb.append("\n");
-            }
-            sb.append(toString(g, v1, f1, v2, f2, sigFigs));
+        for (int i = 0; i < rawCoordinateGroups.size(); ++i) {
+            res.add(groupStartTags.get(i), rawCoordinateGroups.get(i),
+                    v1, f1, v2, f2);
         }
-        return sb.toString();
+        return res;
     }
 
     /** Expand all margins by the given factor. */
@@ -1722,21 +1809,24 @@ public class Diagram extends Observable implements Printable {
                     LinearAxis v1, DoubleUnaryOperator f1,
                     LinearAxis v2, DoubleUnaryOperator f2,
                     int sigFigs) {
-        StringBuilder sb = new StringBuilder();
-        String format = "%." + sigFigs + "g";
-        for (Point2D.Double p: g) {
-            p = transform(transform(p, v1, v2), f1, f2);
-            sb.append(String.format(format, p.getX()) + ", "
-                      + String.format(format, p.getY()) + '\n');
-        }
-        return sb.toString();
+        CoordinateWriter res = new CoordinateWriter();
+        res.add(null, g, v1, f1, v2, f2);
+        return res.toString(sigFigs);
     }
 
     /** Return all chemical formulas converted to Hill order.
         Duplicates are removed. */
     @JsonIgnore public String[] getAllFormulas() {
+        TreeSet<String> lines = new TreeSet<>();
+        addNonLabelText(lines);
+
         TreeSet<String> res = new TreeSet<>();
-        for (String line: getAllText()) {
+        for (Label label: labels()) {
+            for (ChemicalString.Match m: label.getFormulas()) {
+                res.add(m.toString());
+            }
+        }
+        for (String line: lines) {
             for (ChemicalString.Match m: ChemicalString.embeddedFormulas(line)) {
                 res.add(m.toString());
             }
@@ -2106,6 +2196,7 @@ public class Diagram extends Observable implements Printable {
 
     public Decoration removeDecoration(int layer) {
         Decoration d = decorations.remove(layer);
+        labelIndex = null;
 
         // Also remove decorations that require this decoration, and
         // if necessary, remove decorations that require *those*
@@ -2240,6 +2331,7 @@ public class Diagram extends Observable implements Printable {
             decorations = new ArrayList<>();
         }
         decorations.addAll(Arrays.asList(objects));
+        labelIndex = null;
         if (!axes.isEmpty()) {
             linkRulersWithAxes();
         }
@@ -2300,32 +2392,34 @@ public class Diagram extends Observable implements Printable {
      *         back into principal space.
      */
     List<Point2D.Double> intersections() {
+        long start = Metrics.start();
+        try {
+            return computeIntersections();
+        } finally {
+            INTERSECTIONS_TIMER.stop(start);
+        }
+    }
+
+    private List<Point2D.Double> computeIntersections() {
         ArrayList<Point2D.Double> res = new ArrayList<>();
         Line2D.Double[] segs = getLineSegments();
         BoundedParam2D[] straights = getStraightSegments();
         BoundedParam2D[] curves = getCurvedSegments();
 
-        int cs = curves.length;
-        for (int i = 0; i < cs; ++i) {
-            BoundedParam2D curve = curves[i];
+        for (BoundedParam2D curve: curves) {
             for (Line2D segment: segs) {
                 for (double t: curve.segIntersections(segment)) {
                     res.add(curve.getLocation(t));
                 }
             }
+        }
 
-            for (int j = i+1; j < cs; ++j) {
-                BoundedParam2D curve2 = curves[j];
-                try {
-                    for (Point2D.Double p: BoundedParam2Ds.intersections
-                             (curve, curve2, 1e-9, 80)) {
-                        res.add(p);
-                    }
-                } catch (FailedToConvergeException x) {
-                    System.err.println(x);
-                    // That's OK.
-                }
-            }
+        int failures = BezierIntersections.intersections
+            (res, Arrays.asList(curves), 1e-9, 200);
+        if (failures > 0) {
+            // That's OK.
+            System.err.println("Could not compute all intersections for "
+                               + failures + " pairs of curves");
         }
 
         for (BoundedParam2D straight: straights) {
@@ -2336,7 +2430,19 @@ public class Diagram extends Observable implements Printable {
             }
         }
 
-        return res.stream().map(p -> standardPageToPrincipal.transform(p)).collect(Collectors.toList());
+        int cnt = res.size();
+        double[] xs = new double[cnt];
+        double[] ys = new double[cnt];
+        for (int i = 0; i < cnt; ++i) {
+            Point2D.Double p = res.get(i);
+            xs[i] = p.x;
+            ys[i] = p.y;
+        }
+        standardPageToPrincipal.transform(xs, ys, cnt);
+        for (int i = 0; i < cnt; ++i) {
+            res.set(i, new Point2D.Double(xs[i], ys[i]));
+        }
+        return res;
     }
 
     /** @return an array of all curved segments defined for this
@@ -2746,6 +2852,7 @@ public class Diagram extends Observable implements Printable {
 
     static Diagram loadFrom(File file) throws IOException {
         Diagram res;
+        long start = Metrics.start();
 
         try {
             ObjectMapper mapper = getObjectMapper();
@@ -2756,11 +2863,13 @@ public class Diagram extends Observable implements Printable {
 
         res.setFilename(file.getAbsolutePath());
         res.finishDeserialization();
+        LOAD_TIMER.stop(start);
         return res;
     }
 
     static Diagram loadFrom(String jsonString) throws IOException {
         Diagram res;
+        long start = Metrics.start();
 
         try {
             ObjectMapper mapper = getObjectMapper();
@@ -2770,11 +2879,13 @@ public class Diagram extends Observable implements Printable {
         }
 
         res.finishDeserialization();
+        LOAD_TIMER.stop(start);
         return res;
     }
 
     static Diagram loadFrom(InputStream is) throws IOException {
         Diagram res;
+        long start = Metrics.start();
 
         try {
             ObjectMapper mapper = getObjectMapper();
@@ -2784,6 +2895,7 @@ public class Diagram extends Observable implements Printable {
         }
 
         res.finishDeserialization();
+        LOAD_TIMER.stop(start);
         return res;
     }
 
@@ -2823,7 +2935,7 @@ public class Diagram extends Observable implements Printable {
         }
         while (true) {
             SourceImage image = firstImage();
-            if (image != null && image.getImage() == null) {
+            if (image != null && !image.isReadable()) {
                 removeDecoration(image);
             } else {
                 break;
@@ -2952,6 +3064,7 @@ public class Diagram extends Observable implements Printable {
                 initializeDiagram();
                 decorations = other.decorations;
                 other.decorations = null;
+                labelIndex = null;
                 setFontName(other.getFontName());
                 axes = other.axes;
                 componentElements = null;
@@ -3002,7 +3115,19 @@ public class Diagram extends Observable implements Printable {
         Dimension size = bestFitSize(width, height);
         width = size.width;
         height = size.height;
+        int scale = supersampleScale(width, height);
+        BufferedImage res = createImageSub(width * scale, height * scale,
+                    flags);
+        if (scale > 1) {
+            res = ScaleImage.downscale(res, scale);
+        }
+        return res;
+    }
 
+    /** @return the factor by which createImage() enlarges an image of
+        the given final size before painting it and shrinking it
+        back down. */
+    static int supersampleScale(int width, int height) {
         // Images in the editor are normally displayed without font
         // hinting, but saving at low resolution can cause font
         // hinting to significantly rearrange the positions of letters
@@ -3017,12 +3142,7 @@ public class Diagram extends Observable implements Printable {
         if ((scale & 1) == 0) {
             --scale;
         }
-        BufferedImage res = createImageSub(width * scale, height * scale,
-                    flags);
-        if (scale > 1) {
-            res = ScaleImage.downscale(res, scale);
-        }
-        return res;
+        return scale;
     }
 
     BufferedImage createImageSub(int width, int height, int flags) {
@@ -3030,11 +3150,27 @@ public class Diagram extends Observable implements Printable {
         int imageType = transparent ? BufferedImage.TYPE_INT_ARGB
             : BufferedImage.TYPE_INT_RGB;
         BufferedImage res = new BufferedImage(width, height, imageType);
+        paintImage(res, flags);
+        return res;
+    }
+
+    /** Paint the diagram so it fills as much of image as possible.
+        image should be freshly allocated or cleared, and it should be
+        of type TYPE_INT_ARGB if flags includes FLAG_TRANSPARENT and
+        TYPE_INT_RGB otherwise. */
+    void paintImage(BufferedImage image, int flags) {
+        boolean transparent = (flags & FLAG_TRANSPARENT) != 0;
         Color backColor = transparent ? new Color(0, 0, 0, 0) :
             Color.WHITE;
-        paintDiagram(res.createGraphics(), bestFitScale(new Dimension(width, height)),
-                backColor, flags);
-        return res;
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setFont(getFont());
+            paintDiagram(g, bestFitScale
+                         (new Dimension(image.getWidth(), image.getHeight())),
+                         backColor, flags);
+        } finally {
+            g.dispose();
+        }
     }
 
     /** Return the minimum scale that does not waste screen real
@@ -3061,10 +3197,94 @@ public class Diagram extends Observable implements Printable {
        @param showImages If false, any SourceImages will be ignored. */
     public void saveAsImage(File file, String format, int width, int height,
                             int flags) throws IOException {
+        Dimension size = bestFitSize(width, height);
+        int scale = supersampleScale(size.width, size.height);
+        if ((long) size.width * size.height * scale * scale
+            > TILED_IMAGE_THRESHOLD) {
+            saveAsTiledImage(file, format, width, height, flags);
+            return;
+        }
         BufferedImage save = createImage(width, height, flags);
         ImageIO.write(save, format, file);
     }
 
+    /** saveAsImage() paints images with more than this many
+        supersampled pixels one strip at a time. */
+    static final long TILED_IMAGE_THRESHOLD = 1L << 24;
+
+    /** Like saveAsImage(), but paint the image one horizontal strip
+        at a time in parallel, so that memory use depends on the
+        strip size instead of the image size. Each rendering thread
+        paints its own copy of this diagram, but the copies share this
+        diagram's image file contents and decoded images, and they are
+        released when the image has been written. */
+    public void saveAsTiledImage(File file, String format, int width,
+            int height, int flags) throws IOException {
+        if (width == 0 || height == 0) {
+            throw new IllegalArgumentException(
+                    "Cannot make image with width " + width
+                    + " and height " + height);
+        }
+        Dimension size = bestFitSize(width, height);
+        int scale = supersampleScale(size.width, size.height);
+        boolean transparent = (flags & FLAG_TRANSPARENT) != 0;
+        Color backColor = transparent ? new Color(0, 0, 0, 0) :
+            Color.WHITE;
+        double paintScale = bestFitScale
+            (new Dimension(size.width * scale, size.height * scale));
+        String json = toJsonString();
+        // Decode the images once, here, so the copies can share them.
+        preloadImages();
+        ArrayList<SourceImage> originals = new ArrayList<>();
+        for (SourceImage image: images()) {
+            originals.add(image);
+        }
+        try (TiledImage im = new TiledImage
+             (size.width, size.height, scale, transparent, () -> {
+                 Diagram copy;
+                 try {
+                     copy = loadFrom(json);
+                 } catch (IOException x) {
+                     throw new IllegalStateException(x);
+                 }
+                 Iterator<SourceImage> it = originals.iterator();
+                 for (SourceImage image: copy.images()) {
+                     image.shareImage(it.next());
+                 }
+                 return g -> {
+                     g.setFont(copy.getFont());
+                     copy.paintDiagram(g, paintScale, backColor, flags);
+                 };
+             })) {
+            if (!ImageIO.write(im, format, file)) {
+                throw new IOException("Unsupported image format '" + format + "'");
+            }
+        }
+    }
+
+    /** Write the diagram to out as an SVG document whose size is the
+        largest with the diagram's proportions that fits within width
+        x height. The output is streamed as the diagram is painted, so
+        this uses little memory regardless of the diagram's size. */
+    public void saveAsSVG(Writer out, int width, int height, int flags)
+        throws IOException {
+        Dimension size = bestFitSize(width, height);
+        SVGGraphics2D g = new SVGGraphics2D(out, size.width, size.height);
+        g.setFontFiles(fontFiles);
+        g.setFont(getFont());
+        boolean transparent = (flags & FLAG_TRANSPARENT) != 0;
+        paintDiagram(g, bestFitScale(size), transparent ? null : Color.WHITE,
+                     flags);
+        g.finish();
+    }
+
+    public void saveAsSVG(File file, int width, int height) throws IOException {
+        try (Writer out = Files.newBufferedWriter
+             (file.toPath(), StandardCharsets.UTF_8)) {
+            saveAsSVG(out, width, height, drawFlags());
+        }
+    }
+
     /** Return true if the save was successful. */
     public boolean saveAsPED(Path path) throws IOException {
         return saveAsPED(path, true);
@@ -3083,6 +3303,7 @@ public class Diagram extends Observable implements Printable {
             return false;
         }
         String oldFilename = getFilename();
+        long start = Metrics.start();
         try (PrintWriter writer = new PrintWriter
              (Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
             if (updateFilename) {
@@ -3096,6 +3317,8 @@ public class Diagram extends Observable implements Printable {
                 setFilename(oldFilename);
             }
             throw x;
+        } finally {
+            SAVE_TIMER.stop(start);
         }
     }
 
@@ -3189,7 +3412,7 @@ public class Diagram extends Observable implements Printable {
         if (nearest == null || minDistSq > maxPageDist * maxPageDist) {
             return null;
         }
-        String text = HtmlToText.htmlToText(nearest.getText());
+        String text = nearest.getPlainText();
         ChemicalString.Match match = ChemicalString.maybeQuotedComposition(text);
         if (match != null) {
             return match.within(text).trim();
@@ -3479,7 +3702,33 @@ public class Diagram extends Observable implements Printable {
         /* Mucking with aset is discouraged at this point, because
          * it's too late to give the user the chance to change those
          * settings in a dialog. */
-        job.print(aset);
+        try {
+            job.print(aset);
+        } finally {
+            printRecording = null;
+        }
+    }
+
+    /** The printing system usually calls print(Graphics, ...) several
+        times per page, so during a print job, the diagram is painted
+        once into printRecording and replayed after that. */
+    protected transient RecordingGraphics printRecording = null;
+    protected transient double printRecordingScale;
+    protected transient int printRecordingFlags;
+
+    /** Paint the diagram into a display list that can be replayed
+        into any number of graphics contexts, such as an image and a
+        PDF document, without painting the diagram again. The
+        arguments are the same as for paintDiagram(). */
+    public RecordingGraphics record(double scale, Color backColor, int flags) {
+        RecordingGraphics res = new RecordingGraphics();
+        try {
+            res.setFont(getFont());
+            paintDiagram(res, scale, backColor, flags);
+        } finally {
+            res.dispose();
+        }
+        return res;
     }
 
     @Override public int print(Graphics g0, PageFormat pf, int pageIndex)
@@ -3509,14 +3758,19 @@ public class Diagram extends Observable implements Printable {
         if (title != null) {
             g.drawString(title, 0, (int) Math.round(titleY - deltaY));
         }
-        g.setFont(getFont());
         double scale = Math.min((bounds.height - deltaY) / pageBounds.height,
                                 bounds.width / pageBounds.width);
         int flags = 0;
         if (!isPrintImages()) {
             flags |= FLAG_HIDE_IMAGES;
         }
-        paintDiagram(g, scale, null, flags);
+        if (printRecording == null || printRecordingScale != scale
+            || printRecordingFlags != flags) {
+            printRecording = record(scale, null, flags);
+            printRecordingScale = scale;
+            printRecordingFlags = flags;
+        }
+        printRecording.replay(g);
         g.setTransform(oldTransform);
 
         return Printable.PAGE_EXISTS;
@@ -4233,26 +4487,45 @@ public class Diagram extends Observable implements Printable {
                 : null;
     }
 
+    /** Fonts loaded so far, keyed by resource file name. Creating and
+        registering a font takes long enough to matter at startup, so
+        each one is loaded only once, and every diagram derives its
+        own sized copy from the cached original. */
+    static final Map<String, Font> loadedFonts = new ConcurrentHashMap<>();
+
     public Font loadFont(String filename, float size) {
-        InputStream is = getClass().getResourceAsStream(filename);
-        if (is == null) {
-            throw new IllegalStateException
-                ("Could not locate font '" + filename + "'");
-        }
-        try {
-            Font f = Font.createFont(Font.TRUETYPE_FONT, is);
-            GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(f);
-            f = f.deriveFont(size);
-            return f;
-        } catch (IOException e) {
-            throw new IllegalStateException
-                ("Could not process font '" + filename
-                 + "': " + e);
-        } catch (FontFormatException e) {
-            throw new IllegalStateException
-                ("Could not process font '" + filename
-                 + "': " + e);
-        }
+        return loadFont(filename).deriveFont(size);
+    }
+
+    /** @return the font stored in the given resource file, loading
+        and registering it if that has not been done already. This may
+        be called from any thread. */
+    static Font loadFont(String filename) {
+        return loadedFonts.computeIfAbsent(filename, fn -> {
+                InputStream is = Diagram.class.getResourceAsStream(fn);
+                if (is == null) {
+                    throw new IllegalStateException
+                        ("Could not locate font '" + fn + "'");
+                }
+                try (InputStream is2 = is) {
+                    Font f = Font.createFont(Font.TRUETYPE_FONT, is2);
+                    GraphicsEnvironment.getLocalGraphicsEnvironment()
+                        .registerFont(f);
+                    return f;
+                } catch (IOException e) {
+                    throw new IllegalStateException
+                        ("Could not process font '" + fn + "': " + e);
+                } catch (FontFormatException e) {
+                    throw new IllegalStateException
+                        ("Could not process font '" + fn + "': " + e);
+                }
+            });
+    }
+
+    /** Load the default font ahead of time, so that the first diagram
+        to be displayed need not wait for it. */
+    static void preloadDefaultFont() {
+        loadFont(fontFiles.get(defaultFontName));
     }
 
     @JsonIgnore public Font getFont() {
@@ -0,0 +1,214 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+/** In-process cache of parsed diagrams and decoded images, so that
+    when one long-running instance (see SingleInstanceBasicEditor)
+    reopens a diagram, or opens another diagram that embeds the same
+    image, it need not parse or decode anything again.
+
+    Diagrams are keyed by absolute path, and an entry is used only if
+    the file's size and modification time are unchanged. Because
+    opening a diagram in an editor consumes the Diagram object (see
+    Diagram.cannibalize()), take() removes the entry it returns, and
+    the caller then calls refill() to parse a fresh copy in the
+    background, so every reopen after the first is a hit as long as
+    the previous background parse has finished. The parse runs on a
+    single low-priority thread, and the budget below bounds what the
+    copies it produces can cost. Decoded images are
+    keyed by the contents of the image file, and since images are
+    never modified after decoding, the same BufferedImage is shared by
+    every diagram that uses it. The hash of each byte array is
+    computed only once.
+
+    The estimated size of everything cached is kept below a budget of
+    -Dpededitor.cacheMegabytes (default: a quarter of the maximum heap
+    size) by discarding the least recently used entries, diagrams
+    before images. A budget of 0 disables caching. */
+final class DiagramCache {
+    /** Rough ratio of the memory taken by a parsed diagram to the
+        size of its PED file. */
+    static final int DIAGRAM_BYTES_PER_FILE_BYTE = 8;
+
+    static final long budget = Long.getLong
+        ("pededitor.cacheMegabytes",
+         Runtime.getRuntime().maxMemory() / 4 / (1 << 20)) << 20;
+
+    static class DiagramEntry {
+        long size;
+        long modified;
+        Diagram diagram;
+        long cost;
+    }
+
+    static class ImageEntry {
+        byte[] bytes;
+        BufferedImage image;
+        long cost;
+    }
+
+    /** Both maps are in least to most recently used order. */
+    static final LinkedHashMap<String, DiagramEntry> diagrams
+        = new LinkedHashMap<>(16, 0.75f, true);
+    static final LinkedHashMap<Integer, ImageEntry> images
+        = new LinkedHashMap<>(16, 0.75f, true);
+    /** Content hash of each byte array passed in, keyed by identity.
+        Image files can be tens of megabytes, so hashing one on every
+        lookup would cost more than the lookup saves. */
+    static final WeakHashMap<byte[], Integer> hashes = new WeakHashMap<>();
+    static long used = 0;
+
+    static ExecutorService loader = null;
+
+    private DiagramCache() {
+    }
+
+    static synchronized ExecutorService getLoader() {
+        if (loader == null) {
+            loader = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "DiagramCache");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+        }
+        return loader;
+    }
+
+    /** @return a parsed copy of the given file that is current with
+        its contents on disk, or null if none is cached. The returned
+        diagram belongs to the caller and is removed from the cache. */
+    static synchronized Diagram take(File file) {
+        file = file.getAbsoluteFile();
+        DiagramEntry e = diagrams.remove(file.getPath());
+        if (e == null) {
+            return null;
+        }
+        used -= e.cost;
+        if (e.size != file.length() || e.modified != file.lastModified()) {
+            return null; // Stale
+        }
+        return e.diagram;
+    }
+
+    /** Parse the given file and decode its images in the background,
+        and cache the result for the next call to take(), unless a
+        current copy is already cached. */
+    static void refill(File file) {
+        if (budget <= 0) {
+            return;
+        }
+        File f = file.getAbsoluteFile();
+        getLoader().execute(() -> {
+                long size = f.length();
+                long modified = f.lastModified();
+                long cost = size * DIAGRAM_BYTES_PER_FILE_BYTE;
+                synchronized (DiagramCache.class) {
+                    DiagramEntry e = diagrams.get(f.getPath());
+                    if ((e != null && e.size == size && e.modified == modified)
+                        || cost > budget) {
+                        return;
+                    }
+                }
+                try {
+                    Diagram d = Diagram.loadFrom(f);
+                    d.preloadImages();
+                    DiagramEntry e = new DiagramEntry();
+                    e.size = size;
+                    e.modified = modified;
+                    e.diagram = d;
+                    e.cost = cost;
+                    put(f.getPath(), e);
+                } catch (IOException | RuntimeException x) {
+                    // Leave it to the next attempt to open the file to
+                    // report the problem.
+                }
+            });
+    }
+
+    static synchronized void put(String path, DiagramEntry e) {
+        DiagramEntry old = diagrams.put(path, e);
+        if (old != null) {
+            used -= old.cost;
+        }
+        used += e.cost;
+        trim();
+    }
+
+    /** @return the image encoded by bytes, decoding it only if an
+        image with the same contents is not already cached. */
+    static BufferedImage decode(byte[] bytes) throws IOException {
+        BufferedImage image = cachedImage(bytes);
+        if (image != null) {
+            return image;
+        }
+        image = ImageIO.read(new ByteArrayInputStream(bytes));
+        if (image != null) {
+            image = ImageTransform.compact(image);
+            putImage(bytes, image);
+        }
+        return image;
+    }
+
+    /** @return the cached image encoded by bytes, or null if none is
+        cached. */
+    static synchronized BufferedImage cachedImage(byte[] bytes) {
+        ImageEntry e = images.get(hash(bytes));
+        if (e != null && (e.bytes == bytes || Arrays.equals(e.bytes, bytes))) {
+            return e.image;
+        }
+        return null;
+    }
+
+    /** Cache image as the decoding of bytes. */
+    static synchronized void putImage(byte[] bytes, BufferedImage image) {
+        if (budget <= 0) {
+            return;
+        }
+        ImageEntry e = new ImageEntry();
+        e.bytes = bytes;
+        e.image = image;
+        e.cost = bytes.length + (long) image.getWidth() * image.getHeight()
+            * Math.max(1, image.getColorModel().getPixelSize() / 8);
+        ImageEntry old = images.put(hash(bytes), e);
+        if (old != null) {
+            used -= old.cost;
+        }
+        used += e.cost;
+        trim();
+    }
+
+    /** @return Arrays.hashCode(bytes), computed only the first time
+        this array is seen. */
+    private static Integer hash(byte[] bytes) {
+        return hashes.computeIfAbsent(bytes, Arrays::hashCode);
+    }
+
+    /** Discard least recently used entries until the budget is met. */
+    private static void trim() {
+        for (Map<?, ?> map: new Map<?, ?>[] { diagrams, images }) {
+            for (Iterator<?> it = map.values().iterator();
+                 used > budget && it.hasNext(); ) {
+                Object o = it.next();
+                used -= (o instanceof DiagramEntry) ? ((DiagramEntry) o).cost
+                    : ((ImageEntry) o).cost;
+                it.remove();
+            }
+        }
+    }
+}
@@ -31,6 +31,8 @@ import com.itextpdf.text.pdf.PdfWriter;
 
 /** Class to add save-as-PDF capabilities to a Diagram. */
 public class DiagramPDF {
+    static final Metrics.Timer EXPORT_TIMER = Metrics.timer("pdf.export");
+
     static class FontMap extends DefaultFontMapper {
         Diagram d;
         
@@ -99,6 +101,15 @@ public class DiagramPDF {
     }
 
     public static void appendToPDF(Diagram d, Document doc, PdfWriter writer) {
+        long start = Metrics.start();
+        try {
+            appendToPDFSub(d, doc, writer);
+        } finally {
+            EXPORT_TIMER.stop(start);
+        }
+    }
+
+    static void appendToPDFSub(Diagram d, Document doc, PdfWriter writer) {
         String title = d.getTitle();
         if (title != null) {
             try {
@@ -0,0 +1,215 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/** Apply a SlopeTransform2D to a whole diagram at once, as for
+    mole/weight fraction conversion.
+
+    Diagram.serialTransformDiagram() transforms each decoration in
+    turn, one point at a time. This class instead makes three passes:
+
+    1. Gather the control points of every curve and the location of
+    every label, arrow, and other TransformedShape into one pair of
+    coordinate arrays. When stopAtBorders is true, shape locations
+    outside the diagram are first projected onto the diagram's
+    border; those projections are computed in parallel.
+
+    2. Transform the arrays in place using xform.transform(xs, ys, n),
+    split into chunks that are processed in parallel when there are
+    enough points to be worth it.
+
+    3. Walk the decorations again in their original order, storing the
+    transformed points and delegating any decoration that was not
+    gathered (such as tie lines) to its own transform() method.
+
+    The result is identical to serialTransformDiagram(). */
+final class DiagramTransformer {
+    /** Use parallel streams only if there are at least this many
+        points to transform. */
+    static final int PARALLEL_THRESHOLD = 1 << 14;
+    /** Number of points per parallel chunk. */
+    static final int CHUNK_SIZE = 1 << 12;
+    /** Project shape locations in parallel only if there are at
+        least this many shapes. */
+    static final int PARALLEL_PROJECTION_THRESHOLD = 64;
+
+    private DiagramTransformer() {}
+
+    /** @see Diagram#transformDiagram(SlopeTransform2D, boolean) */
+    static boolean transform(Diagram diagram, SlopeTransform2D xform,
+            boolean stopAtBorders) throws UnsolvableException {
+        ArrayList<Decoration> decorations = diagram.decorations;
+        int dcnt = decorations.size();
+
+        // starts[i] is the index in xs/ys of the first point of
+        // decoration #i, or -1 if that decoration is not gathered.
+        int[] starts = new int[dcnt];
+        Interp2D[] curves = new Interp2D[dcnt];
+        ArrayList<TransformedShape> shapes = new ArrayList<>();
+        int n = 0;
+        for (int i = 0; i < dcnt; ++i) {
+            Decoration d = decorations.get(i);
+            Interp2D curve = null;
+            if (d instanceof TransformedShape) {
+                starts[i] = n++;
+                shapes.add((TransformedShape) d);
+                continue;
+            } else if (d instanceof DecorationHasInterp2D) {
+                curve = ((DecorationHasInterp2D) d).getCurve();
+            } else if (d instanceof LinearRuler) {
+                curve = (LinearRuler) d;
+            }
+            if (curve == null) {
+                starts[i] = -1;
+            } else {
+                curves[i] = curve;
+                starts[i] = n;
+                n += curve.size();
+            }
+        }
+
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < dcnt; ++i) {
+            Interp2D curve = curves[i];
+            if (curve == null) {
+                continue;
+            }
+            int start = starts[i];
+            int size = curve.size();
+            for (int j = 0; j < size; ++j) {
+                Point2D.Double p = curve.get(j);
+                xs[start + j] = p.x;
+                ys[start + j] = p.y;
+            }
+        }
+
+        Diagram.ProjectionAndOffset[] paos
+            = project(diagram, shapes, stopAtBorders);
+        for (int i = 0, si = 0; i < dcnt; ++i) {
+            if (curves[i] == null && starts[i] >= 0) {
+                Point2D.Double proj = paos[si++].projection;
+                xs[starts[i]] = proj.x;
+                ys[starts[i]] = proj.y;
+            }
+        }
+
+        transform(xform, xs, ys, n);
+
+        for (int i = 0, si = 0; i < dcnt; ++i) {
+            Decoration d = decorations.get(i);
+            int start = starts[i];
+            Interp2D curve = curves[i];
+            if (start < 0) {
+                d.transform(xform);
+            } else if (curve != null) {
+                int size = curve.size();
+                for (int j = 0; j < size; ++j) {
+                    curve.set(j, new Point2D.Double
+                              (xs[start + j], ys[start + j]));
+                }
+            } else {
+                apply(diagram, xform, (TransformedShape) d, paos[si++],
+                      xs[start], ys[start]);
+            }
+        }
+
+        diagram.transformDiagramCorners(xform);
+        return true;
+    }
+
+    /** Transform the n points (xs[i], ys[i]) in place, in parallel
+        if n is large. */
+    static void transform(Transform2D xform, double[] xs, double[] ys,
+            int n) throws UnsolvableException {
+        if (n < PARALLEL_THRESHOLD) {
+            xform.transform(xs, ys, n);
+            return;
+        }
+        int chunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        UnsolvableException[] failure = new UnsolvableException[1];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+                int start = c * CHUNK_SIZE;
+                int end = Math.min(n, start + CHUNK_SIZE);
+                double[] cxs = Arrays.copyOfRange(xs, start, end);
+                double[] cys = Arrays.copyOfRange(ys, start, end);
+                try {
+                    xform.transform(cxs, cys, end - start);
+                } catch (UnsolvableException x) {
+                    synchronized (failure) {
+                        failure[0] = x;
+                    }
+                    return;
+                }
+                System.arraycopy(cxs, 0, xs, start, end - start);
+                System.arraycopy(cys, 0, ys, start, end - start);
+            });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    static Diagram.ProjectionAndOffset[] project(Diagram diagram,
+            ArrayList<TransformedShape> shapes, boolean stopAtBorders) {
+        int cnt = shapes.size();
+        Diagram.ProjectionAndOffset[] res
+            = new Diagram.ProjectionAndOffset[cnt];
+        if (!stopAtBorders) {
+            for (int i = 0; i < cnt; ++i) {
+                res[i] = new Diagram.ProjectionAndOffset
+                    (shapes.get(i).getLocation());
+            }
+            return res;
+        }
+        Shape diagramPage = diagram.diagramShape
+            (diagram.principalToStandardPage);
+        IntStream range = IntStream.range(0, cnt);
+        if (cnt >= PARALLEL_PROJECTION_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(i -> res[i] = diagram.projectOntoDiagram
+                      (shapes.get(i).getLocation(), diagramPage));
+        return res;
+    }
+
+    /** Move shape to (x + offset.x, y + offset.y), where (x,y) is the
+        transformed projection of its original location, and update
+        its angle and opacity the same way serialTransformDiagram()
+        does. */
+    static void apply(Diagram diagram, SlopeTransform2D xform,
+            TransformedShape shape, Diagram.ProjectionAndOffset pao,
+            double x, double y) {
+        Point2D.Double p = shape.getLocation();
+        Point2D.Double newP = new Point2D.Double
+            (x + pao.offset.x, y + pao.offset.y);
+        if (!pao.interior && (shape instanceof Label)) {
+            Label label = (Label) shape;
+            String text = label.getText();
+            if (MoleWeightString.hasAtomic(text)
+                || MoleWeightString.hasMole(text)
+                || MoleWeightString.hasWeight(text)) {
+                // Assume this is a title whose positioning in
+                // the diagram should remain fixed.
+                return;
+            }
+            if (diagram.principalToStandardPage.transform(p)
+                .distanceSq(diagram.principalToStandardPage.transform(newP))
+                > 1e-3) {
+                // If the label moves, it might overlap the axes, so
+                // make it opaque.
+                label.setOpaque(true);
+            }
+        }
+        if (pao.interior) { // Only modify angles of points inside the diagram.
+            shape.setAngle(xform.transformAngle(p, shape.getAngle()));
+        }
+        shape.move(newP.x - p.x, newP.y - p.y);
+    }
+}
@@ -759,6 +759,11 @@ public class EditFrame extends JFrame
         showGrid.setSelected(b);
     }
 
+    /** Internal use; called from BasicEditor.java. */
+    void setPaintProfilerShown(boolean b) {
+        showPaintProfiler.setSelected(b);
+    }
+
     /** Internal use; called from BasicEditor.java. */
     void setPixelMode(boolean b) {
         pixelMode.setSelected(b);
@@ -865,6 +870,19 @@ public class EditFrame extends JFrame
                 }
             });
 
+    protected JCheckBoxMenuItem showPaintProfiler
+        = new JCheckBoxMenuItem
+        (new Action("Paint profiler", KeyEvent.VK_P) {
+                {
+                    putValue(SHORT_DESCRIPTION,
+                             "Show how long each part of the diagram takes to draw");
+                }
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().setPaintProfilerShown(showPaintProfiler.isSelected());
+                    finishEvent();
+                }
+            });
+
     protected JCheckBoxMenuItem showMathWindow
         = new JCheckBoxMenuItem
         (new Action("Show math window", KeyEvent.VK_S) {
@@ -1194,6 +1212,16 @@ public class EditFrame extends JFrame
      * Create the frame.
      */
     public EditFrame(BasicEditor parentEditor) {
+        this(parentEditor, false);
+    }
+
+    /** @param viewerOnly If true, build only what viewing diagrams
+        needs: the Curve menu and its icons, the Font, Key/value
+        pairs, Margins, Scale and Set components menus, and the
+        keyboard shortcuts of editing actions are left out. The fields for them still exist, so code that refers
+        to them need not check, but they are not attached to the
+        frame. Such a frame cannot be made editable later. */
+    public EditFrame(BasicEditor parentEditor, boolean viewerOnly) {
         this.parentEditor = parentEditor;
         parentEditor.addObserver(this);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -1290,170 +1318,17 @@ public class EditFrame extends JFrame
 
         menuBar.add(mnPosition);
 
-        // "Curve" top-level menu
-        mnCurve.setMnemonic(KeyEvent.VK_C);
-
-        mnCurve.add(createFillMenu());
-
-        JMenu mnLineStyle = new JMenu("Line style");
-        mnLineStyle.setMnemonic(KeyEvent.VK_L);
-
-        LineStyleMenuItem solidLineItem =
-            new LineStyleMenuItem(StandardStroke.SOLID, 59, 2, 2.0);
-        solidLineItem.setSelected(true);
-        mnLineStyle.add(solidLineItem);
-        mnLineStyle.add(new LineStyleMenuItem
-                        (StandardStroke.DOT_DASH, 59, 3, 2.0));
-        mnLineStyle.add(new LineStyleMenuItem
-                        (StandardStroke.SOLID_DOT, 55, 5, 3.0));
-
-        {
-            JMenu mnDensity = new JMenu();
-            mnDensity.setIcon(icon(StandardStroke.DASH3, 60, 2, 2.0));
-
-            for (StandardStroke stroke:
-                     EnumSet.range(StandardStroke.DASH1,
-                                   StandardStroke.DASH5)) {
-                mnDensity.add(new LineStyleMenuItem(stroke, 104, 4, 2.0));
-            }
-            mnLineStyle.add(mnDensity);
-        }
-
-        {
-            JMenu mnDensity = new JMenu();
-            mnDensity.setIcon(icon(StandardStroke.DOT3, 56, 4, 2.0));
-
-            for (StandardStroke stroke:
-                     EnumSet.range(StandardStroke.DOT1,
-                                   StandardStroke.DOT5)) {
-                mnDensity.add(new LineStyleMenuItem(stroke, 104, 4, 2.0));
-            }
-            mnLineStyle.add(mnDensity);
-        }
-
-        {
-            JMenu mnDensity = new JMenu();
-            mnDensity.setIcon(icon(StandardStroke.RAILROAD12, 54, 7, 1.0));
-
-            for (StandardStroke stroke:
-                     EnumSet.range(StandardStroke.RAILROAD2,
-                                   StandardStroke.RAILROAD24)) {
-                mnDensity.add(new LineStyleMenuItem(stroke, 104, 24, 2.0));
-            }
-            mnLineStyle.add(mnDensity);
+        if (!viewerOnly) {
+            buildCurveMenu();
+            menuBar.add(mnCurve);
         }
-        mnCurve.add(mnLineStyle);
-
-        JMenu mnLineWidth = new JMenu("Line width");
-        mnLineWidth.setMnemonic(KeyEvent.VK_W);
-        double[] lineWidths = {0.0006, 0.0012, 0.0017, 0.0020, 0.0024, 0.0029,
-                               0.0034, 0.0048};
-
-        mnLineWidth.add(customLineWidth);
-        lineWidthGroup.add(customLineWidth);
-        for (int i = 0; i < lineWidths.length; ++i) {
-            LineWidthMenuItem item = new LineWidthMenuItem(lineWidths[i]);
-            if (lineWidths[i] == Diagram.STANDARD_LINE_WIDTH) {
-                item.setSelected(true);
-            }
-            mnLineWidth.add(item);
-        }
-        mnCurve.add(mnLineWidth);
-        mnCurve.add(smoothed);
-
-        mnCurve.add(new Action("Toggle closure",
-                               KeyEvent.VK_O,
-                               KeyStroke.getKeyStroke('o')) {
-                @Override public void actionPerformed(ActionEvent e) {
-                    getEditor().toggleCurveClosure();
-                    finishEvent();
-                }
-            });
-
-        mnCurve.add(new Action
-                    ("Toggle smoothing of selected point", KeyEvent.VK_P, "typed ,") {
-                @Override public void actionPerformed(ActionEvent e) {
-                    getEditor().toggleCusp();
-                    finishEvent();
-                }
-            });
-
-        mnCurve.add(new Action("Select left vertex", KeyEvent.VK_L, "typed [") {
-                @Override public void actionPerformed(ActionEvent e) {
-                    getEditor().shiftActiveVertex(false);
-                    finishEvent();
-                }
-            });
-
-        mnCurve.add(new Action("Select right vertex", KeyEvent.VK_R, "typed ]") {
-                @Override public void actionPerformed(ActionEvent e) {
-                    getEditor().shiftActiveVertex(true);
-                    finishEvent();
-                }
-            });
-
-        menuBar.add(mnCurve);
 
         // "Properties" top-level menu
         mnProperties.setMnemonic(KeyEvent.VK_R);
 
-        mnFont.setMnemonic(KeyEvent.VK_F);
-        FontMenuItem sans = new FontMenuItem
-            ("Sans", "DejaVu LGC Sans PED");
-        mnFont.add(sans);
-        sans.setSelected(true);
-        mnFont.add(new FontMenuItem("Serif", "DejaVu LGC Serif PED"));
-        mnFont.add(new FontMenuItem("Sans (Widely-spaced lines)",
-                                    "DejaVu LGC Sans GRUMP"));
-
-        mnProperties.add(mnFont);
-
-        mnKeys.setMnemonic(KeyEvent.VK_K);
-        mnKeys.add(mnAddKey);
-
-        mnKeys.add(new Action("List", KeyEvent.VK_L) {
-                @Override public void actionPerformed(ActionEvent e) {
-                    getEditor().listKeyValues();
-                    finishEvent();
-                }
-            });
-        mnProperties.add(mnKeys);
-
-        mnMargins.setMnemonic(KeyEvent.VK_M);
-        mnMargins.add(toMenuItem(new Action("Auto-fit", KeyEvent.VK_A) {
-                {
-                    putValue(SHORT_DESCRIPTION,
-                             "Eliminate all excees white space");
-                }
-                @Override public void actionPerformed(ActionEvent e) {
-                    getEditor().computeMargins();
-                    finishEvent();
-                }
-            }));
-        mnMargins.add(toMenuItem(new Action("Expand all", KeyEvent.VK_X) {
-                {
-                    putValue(SHORT_DESCRIPTION,
-                             "Expand the diagram on all sides");
-                }
-                @Override public void actionPerformed(ActionEvent e) {
-                    getEditor().expandMargins(0.2);
-                    finishEvent();
-                }
-            }));
-        mnMargins.add(new Action("Set", KeyEvent.VK_S) {
-                @Override public void actionPerformed(ActionEvent e) {
-                    getEditor().setMargins();
-                    finishEvent();
-                }
-            });
-
-        mnProperties.add(mnMargins);
-
-        mnScale.setMnemonic(KeyEvent.VK_S);
-        mnScale.add(scaleXUnits);
-        mnScale.add(scaleYUnits);
-        mnScale.add(scaleBoth);
-        mnProperties.add(mnScale);
+        if (!viewerOnly) {
+            buildPropertiesEditingMenus();
+        }
 
         mnTags.setMnemonic(KeyEvent.VK_T);
         mnProperties.add(mnTags);
@@ -1529,13 +1404,15 @@ public class EditFrame extends JFrame
         mnChem.setMnemonic(KeyEvent.VK_M);
         menuBar.add(mnChem);
 
-        mnSetComponents.setMnemonic(KeyEvent.VK_C);
         setTopComponent.setEnabled(false);
-        mnSetComponents.add(setLeftComponent);
-        mnSetComponents.add(setRightComponent);
-        mnSetComponents.add(setTopComponent);
-        mnSetComponents.add(guessComponents);
-        mnChem.add(mnSetComponents);
+        if (!viewerOnly) {
+            mnSetComponents.setMnemonic(KeyEvent.VK_C);
+            mnSetComponents.add(setLeftComponent);
+            mnSetComponents.add(setRightComponent);
+            mnSetComponents.add(setTopComponent);
+            mnSetComponents.add(guessComponents);
+            mnChem.add(mnSetComponents);
+        }
 
         mnChem.add(swapBinary);
 
@@ -1624,6 +1501,7 @@ public class EditFrame extends JFrame
             });
         mnView.add(showGrid);
         mnView.add(showMathWindow);
+        mnView.add(showPaintProfiler);
         mnView.add(mnHints);
         showMathWindow.setSelected(true);
 
@@ -1669,50 +1547,224 @@ public class EditFrame extends JFrame
         // actMonitor, semi-secret.
         for (Action act: new Action[]
             {
-              actAddAutoPositionedVertex,
-              actAddVertex,
               actAutoPosition,
               actCenterMouse,
-              actCircle,
-              actColor,
-              actCopy,
-              actCopyAndPaste,
               actCopyStatusBar,
-              actCut,
-              actCutAll,
-              actCutRegion,
               actDeselect,
-              actEditSelection,
-              actIsotherm,
-              actLeftArrow,
-              actMakeDefault,
               actMonitor,
-              actMovePoint,
-              actMoveSelection,
               actNearestCurve,
               actNearestGridPoint,
               actNearestPoint,
-              actPaste,
-              actRemoveSelection,
-              actRedo,
-              actResetToDefault,
-              actRightArrow,
-              actRuler,
               actSelectNearestCurve,
               actSelectNearestPoint,
               actShiftPressed,
               actShiftReleased,
-              actText,
-              actTieLine,
-              actUndo,
             }) {
             enable(act);
         }
+        if (!viewerOnly) {
+            for (Action act: new Action[]
+                {
+                  actAddAutoPositionedVertex,
+                  actAddVertex,
+                  actCircle,
+                  actColor,
+                  actCopy,
+                  actCopyAndPaste,
+                  actCut,
+                  actCutAll,
+                  actCutRegion,
+                  actEditSelection,
+                  actIsotherm,
+                  actLeftArrow,
+                  actMakeDefault,
+                  actMovePoint,
+                  actMoveSelection,
+                  actPaste,
+                  actRemoveSelection,
+                  actRedo,
+                  actResetToDefault,
+                  actRightArrow,
+                  actRuler,
+                  actText,
+                  actTieLine,
+                  actUndo,
+                }) {
+                enable(act);
+            }
+        }
 
         enableZoom();
         setIconImage(getIcon());
     }
 
+    /** Fill in the Curve menu, whose line and fill style items each
+        carry an icon that is rendered here. */
+    void buildCurveMenu() {
+        mnCurve.setMnemonic(KeyEvent.VK_C);
+
+        mnCurve.add(createFillMenu());
+
+        JMenu mnLineStyle = new JMenu("Line style");
+        mnLineStyle.setMnemonic(KeyEvent.VK_L);
+
+        LineStyleMenuItem solidLineItem =
+            new LineStyleMenuItem(StandardStroke.SOLID, 59, 2, 2.0);
+        solidLineItem.setSelected(true);
+        mnLineStyle.add(solidLineItem);
+        mnLineStyle.add(new LineStyleMenuItem
+                        (StandardStroke.DOT_DASH, 59, 3, 2.0));
+        mnLineStyle.add(new LineStyleMenuItem
+                        (StandardStroke.SOLID_DOT, 55, 5, 3.0));
+
+        {
+            JMenu mnDensity = new JMenu();
+            mnDensity.setIcon(icon(StandardStroke.DASH3, 60, 2, 2.0));
+
+            for (StandardStroke stroke:
+                     EnumSet.range(StandardStroke.DASH1,
+                                   StandardStroke.DASH5)) {
+                mnDensity.add(new LineStyleMenuItem(stroke, 104, 4, 2.0));
+            }
+            mnLineStyle.add(mnDensity);
+        }
+
+        {
+            JMenu mnDensity = new JMenu();
+            mnDensity.setIcon(icon(StandardStroke.DOT3, 56, 4, 2.0));
+
+            for (StandardStroke stroke:
+                     EnumSet.range(StandardStroke.DOT1,
+                                   StandardStroke.DOT5)) {
+                mnDensity.add(new LineStyleMenuItem(stroke, 104, 4, 2.0));
+            }
+            mnLineStyle.add(mnDensity);
+        }
+
+        {
+            JMenu mnDensity = new JMenu();
+            mnDensity.setIcon(icon(StandardStroke.RAILROAD12, 54, 7, 1.0));
+
+            for (StandardStroke stroke:
+                     EnumSet.range(StandardStroke.RAILROAD2,
+                                   StandardStroke.RAILROAD24)) {
+                mnDensity.add(new LineStyleMenuItem(stroke, 104, 24, 2.0));
+            }
+            mnLineStyle.add(mnDensity);
+        }
+        mnCurve.add(mnLineStyle);
+
+        JMenu mnLineWidth = new JMenu("Line width");
+        mnLineWidth.setMnemonic(KeyEvent.VK_W);
+        double[] lineWidths = {0.0006, 0.0012, 0.0017, 0.0020, 0.0024, 0.0029,
+                               0.0034, 0.0048};
+
+        mnLineWidth.add(customLineWidth);
+        lineWidthGroup.add(customLineWidth);
+        for (int i = 0; i < lineWidths.length; ++i) {
+            LineWidthMenuItem item = new LineWidthMenuItem(lineWidths[i]);
+            if (lineWidths[i] == Diagram.STANDARD_LINE_WIDTH) {
+                item.setSelected(true);
+            }
+            mnLineWidth.add(item);
+        }
+        mnCurve.add(mnLineWidth);
+        mnCurve.add(smoothed);
+
+        mnCurve.add(new Action("Toggle closure",
+                               KeyEvent.VK_O,
+                               KeyStroke.getKeyStroke('o')) {
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().toggleCurveClosure();
+                    finishEvent();
+                }
+            });
+
+        mnCurve.add(new Action
+                    ("Toggle smoothing of selected point", KeyEvent.VK_P, "typed ,") {
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().toggleCusp();
+                    finishEvent();
+                }
+            });
+
+        mnCurve.add(new Action("Select left vertex", KeyEvent.VK_L, "typed [") {
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().shiftActiveVertex(false);
+                    finishEvent();
+                }
+            });
+
+        mnCurve.add(new Action("Select right vertex", KeyEvent.VK_R, "typed ]") {
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().shiftActiveVertex(true);
+                    finishEvent();
+                }
+            });
+    }
+
+    /** Add the Font, Key/value pairs, Margins and Scale submenus to
+        the Properties menu. */
+    void buildPropertiesEditingMenus() {
+        mnFont.setMnemonic(KeyEvent.VK_F);
+        FontMenuItem sans = new FontMenuItem
+            ("Sans", "DejaVu LGC Sans PED");
+        mnFont.add(sans);
+        sans.setSelected(true);
+        mnFont.add(new FontMenuItem("Serif", "DejaVu LGC Serif PED"));
+        mnFont.add(new FontMenuItem("Sans (Widely-spaced lines)",
+                                    "DejaVu LGC Sans GRUMP"));
+
+        mnProperties.add(mnFont);
+
+        mnKeys.setMnemonic(KeyEvent.VK_K);
+        mnKeys.add(mnAddKey);
+
+        mnKeys.add(new Action("List", KeyEvent.VK_L) {
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().listKeyValues();
+                    finishEvent();
+                }
+            });
+        mnProperties.add(mnKeys);
+
+        mnMargins.setMnemonic(KeyEvent.VK_M);
+        mnMargins.add(toMenuItem(new Action("Auto-fit", KeyEvent.VK_A) {
+                {
+                    putValue(SHORT_DESCRIPTION,
+                             "Eliminate all excees white space");
+                }
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().computeMargins();
+                    finishEvent();
+                }
+            }));
+        mnMargins.add(toMenuItem(new Action("Expand all", KeyEvent.VK_X) {
+                {
+                    putValue(SHORT_DESCRIPTION,
+                             "Expand the diagram on all sides");
+                }
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().expandMargins(0.2);
+                    finishEvent();
+                }
+            }));
+        mnMargins.add(new Action("Set", KeyEvent.VK_S) {
+                @Override public void actionPerformed(ActionEvent e) {
+                    getEditor().setMargins();
+                    finishEvent();
+                }
+            });
+
+        mnProperties.add(mnMargins);
+
+        mnScale.setMnemonic(KeyEvent.VK_S);
+        mnScale.add(scaleXUnits);
+        mnScale.add(scaleYUnits);
+        mnScale.add(scaleBoth);
+        mnProperties.add(mnScale);
+    }
+
     public void setReloadVisible(boolean b) {
         mnReload.setVisible(b);
     }
@@ -0,0 +1,122 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+/** Consistency check for the exporters. Every PED file in the given
+    directory (default "test") is loaded and exported, and the output
+    is checked:
+
+    <ul>
+
+    <li>An SVG export that contains any text must embed its font with
+    an @font-face rule, so that labels look the same without the
+    DejaVu LGC PED fonts being installed.
+
+    <li>Replaying a display list from Diagram.record(), as printing
+    does, must produce the same pixels as painting the diagram
+    directly at the same scale.
+
+    </ul>
+
+    Usage: ExportCheck [<directory>]
+
+    Problems are reported to standard error, and the exit status is 1
+    if there were any. */
+public class ExportCheck {
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        File dir = new File((args.length > 0) ? args[0] : "test");
+        File[] files = dir.listFiles
+            ((File d, String name) -> "ped".equalsIgnoreCase(Stuff.getExtension(name)));
+        if (files == null || files.length == 0) {
+            System.err.println("No PED files found in '" + dir + "'");
+            System.exit(2);
+        }
+
+        int failures = 0;
+        for (File file: files) {
+            try {
+                Diagram d = Diagram.loadFrom(file);
+                for (String problem: new String[] { checkSVG(d), checkReplay(d) }) {
+                    if (problem != null) {
+                        System.err.println(file + ": " + problem);
+                        ++failures;
+                        break;
+                    }
+                }
+            } catch (IOException | RuntimeException x) {
+                System.err.println(file + ": " + x);
+                ++failures;
+            }
+        }
+        System.out.println("Checked " + files.length + " files, "
+                           + failures + " failed.");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** @return a description of what is wrong with d's SVG export,
+        or null if nothing is. */
+    static String checkSVG(Diagram d) throws IOException {
+        StringWriter out = new StringWriter();
+        d.saveAsSVG(out, 800, 600, d.drawFlags());
+        String svg = out.toString();
+        if (svg.contains("<text") && !svg.contains("@font-face")) {
+            return "SVG text does not use an embedded font";
+        }
+        return null;
+    }
+
+    /** @return a description of how an 800x600 image painted by
+        replaying a recording of d differs from one painted directly,
+        or null if they are identical. */
+    static String checkReplay(Diagram d) {
+        Dimension size = d.bestFitSize(800, 600);
+        double scale = d.bestFitScale(size);
+        BufferedImage direct = new BufferedImage
+            (size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        d.paintImage(direct, 0);
+        BufferedImage replayed = new BufferedImage
+            (size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        RecordingGraphics recording = d.record(scale, Color.WHITE, 0);
+        Graphics2D g = replayed.createGraphics();
+        try {
+            recording.replay(g);
+        } finally {
+            g.dispose();
+        }
+
+        int[] a = direct.getRGB(0, 0, size.width, size.height, null, 0,
+                                size.width);
+        int[] b = replayed.getRGB(0, 0, size.width, size.height, null, 0,
+                                  size.width);
+        int diffs = 0;
+        int maxDiff = 0;
+        for (int i = 0; i < a.length; ++i) {
+            if (a[i] != b[i]) {
+                ++diffs;
+                for (int shift = 0; shift < 24; shift += 8) {
+                    maxDiff = Math.max(maxDiff, Math.abs
+                                       (((a[i] >> shift) & 0xff)
+                                        - ((b[i] >> shift) & 0xff)));
+                }
+            }
+        }
+        return (diffs == 0) ? null
+            : ("Replayed recording differs from direct painting in "
+               + diffs + " of " + a.length + " pixels, by up to "
+               + maxDiff + " levels");
+    }
+}
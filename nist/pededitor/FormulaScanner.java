@@ -0,0 +1,441 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Single-pass chemical formula parser that returns the same results
+    as the regular expression-based ChemicalString.regexComposition()
+    and ChemicalString.regexEmbeddedFormulas(), but works directly on
+    offsets into the input instead of on fresh subsequences, and
+    looks element symbols up in a trie instead of a long regex
+    alternation. The regular expressions' backtracking behavior is
+    emulated exactly, so the two paths can be compared
+    character-for-character; see FormulaScannerBenchmark. */
+class FormulaScanner {
+    /** Trie of element symbols. Every symbol is an ASCII capital
+        letter followed by zero or more ASCII lowercase letters, so
+        the root is indexed by 'A'-'Z' and all other nodes by
+        'a'-'z'. */
+    static class Node {
+        final Node[] children = new Node[26];
+        /** The symbol that ends at this node, or null. This is the
+            same String instance as the key in symbolToNumberMap, so
+            no new strings need to be created for matches. */
+        String symbol = null;
+    }
+
+    static final Node symbolTrie = createSymbolTrie();
+
+    static Node createSymbolTrie() {
+        Node root = new Node();
+        for (String symbol: ChemicalString.symbolToNumberMap.keySet()) {
+            Node node = root;
+            for (int i = 0; i < symbol.length(); ++i) {
+                char ch = symbol.charAt(i);
+                int index = (i == 0) ? ch - 'A' : ch - 'a';
+                Node child = node.children[index];
+                if (child == null) {
+                    child = node.children[index] = new Node();
+                }
+                node = child;
+            }
+            node.symbol = symbol;
+        }
+        return root;
+    }
+
+    final CharSequence s;
+    final int end;
+
+    // Results of the most recent elementCount() call.
+    String symbol;
+    int subscriptStart;
+    int subscriptEnd;
+
+    FormulaScanner(CharSequence s) {
+        this.s = s;
+        this.end = s.length();
+    }
+
+    /** @see ChemicalString#composition(CharSequence) */
+    static ChemicalString.Match composition(CharSequence s) {
+        return new FormulaScanner(s).composition(0);
+    }
+
+    /** @see ChemicalString#embeddedFormulas(CharSequence) */
+    static ChemicalString.Match[] embeddedFormulas(CharSequence s) {
+        FormulaScanner scan = new FormulaScanner(s);
+        ArrayList<ChemicalString.Match> res = new ArrayList<>();
+        int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            char ch = s.charAt(i);
+            if (Character.isLetterOrDigit(ch) && ch <= 'z') {
+                ChemicalString.Match m = scan.composition(i);
+                if (m == null) {
+                    for (; i < len
+                             && Character.isLetterOrDigit(s.charAt(i));
+                         ++i) {
+                    }
+                    continue;
+                } else {
+                    m.beginIndex += i;
+                    m.endIndex += i;
+                    res.add(m);
+                    i = m.endIndex;
+                }
+            }
+        }
+        return res.toArray(new ChemicalString.Match[0]);
+    }
+
+    static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    static boolean isLowercase(char ch) {
+        return ch >= 'a' && ch <= 'z';
+    }
+
+    static boolean isIon(char ch) {
+        return ch == '\u207a' || ch == '\u207b';
+    }
+
+    static boolean isUnicodeFraction(char ch) {
+        return ch == '\u00bd' || ch == '\u2153' || ch == '\u00bc';
+    }
+
+    /** Equivalent to the regex \s, which without the
+        UNICODE_CHARACTER_CLASS flag means [ \t\n\x0B\f\r]. */
+    static boolean isWhitespace(char ch) {
+        return ch == ' ' || (ch >= '\t' && ch <= '\r');
+    }
+
+    int skipWhitespace(int pos) {
+        while (pos < end && isWhitespace(s.charAt(pos))) {
+            ++pos;
+        }
+        return pos;
+    }
+
+    int skipDigits(int pos) {
+        while (pos < end && isDigit(s.charAt(pos))) {
+            ++pos;
+        }
+        return pos;
+    }
+
+    int skipIons(int pos) {
+        while (pos < end && isIon(s.charAt(pos))) {
+            ++pos;
+        }
+        return pos;
+    }
+
+    /** Return the end of the ChemicalString.subscript pattern match
+        starting at pos, or -1 if there is none. */
+    int subscriptEnd(int pos) {
+        if (pos >= end) {
+            return -1;
+        }
+        char ch = s.charAt(pos);
+        int p;
+        if (isUnicodeFraction(ch)) {
+            p = pos + 1;
+        } else if (ch == '.') {
+            p = skipDigits(pos + 1);
+            if (p == pos + 1) {
+                return -1;
+            }
+        } else if (isDigit(ch)) {
+            p = skipDigits(pos);
+            if (p < end && s.charAt(p) == '.') {
+                p = skipDigits(p + 1);
+            } else if (p < end && s.charAt(p) == '/') {
+                int p2 = skipDigits(p + 1);
+                if (p2 > p + 1) {
+                    p = p2;
+                }
+            }
+        } else {
+            return -1;
+        }
+        if (p < end && s.charAt(p) == '%') {
+            ++p;
+        }
+        return p;
+    }
+
+    /** Return the end of the element symbol starting at pos, and set
+        this.symbol, or return -1 if there is no such symbol. The
+        symbol must be followed by something other than a lowercase
+        letter. */
+    int symbolEnd(int pos) {
+        if (pos >= end) {
+            return -1;
+        }
+        char ch = s.charAt(pos);
+        if (ch < 'A' || ch > 'Z') {
+            return -1;
+        }
+        Node node = symbolTrie.children[ch - 'A'];
+        ++pos;
+        while (node != null && pos < end && isLowercase(ch = s.charAt(pos))) {
+            node = node.children[ch - 'a'];
+            ++pos;
+        }
+        if (node == null || node.symbol == null) {
+            return -1;
+        }
+        symbol = node.symbol;
+        return pos;
+    }
+
+    /** Equivalent to a lookingAt() match of
+        ChemicalString.elementCount starting at pos. Return the end of
+        the match, or -1 if there is none. On success, set symbol and
+        set [subscriptStart, subscriptEnd) to the range of the count
+        (or subscriptStart = -1 if there is no count). */
+    int elementCount(int pos) {
+        int e = symbolEnd(pos);
+        if (e < 0) {
+            return -1;
+        }
+        int ss = skipIons(e);
+        int se = subscriptEnd(ss);
+        int q = (se >= 0) ? skipIons(se) : ss;
+        if (q >= end || !isLowercase(s.charAt(q))) {
+            subscriptStart = (se >= 0) ? ss : -1;
+            subscriptEnd = se;
+            return q;
+        }
+
+        // The greedy match is followed by a lowercase letter, so the
+        // trailing (?![a-z]) fails and the regex engine backtracks.
+        // Every backtracking step leaves the match followed by an
+        // ion or a subscript character, so the first step always
+        // succeeds; emulate it.
+        if (se < 0 || q > se) {
+            // Give back one ion.
+            subscriptStart = (se >= 0) ? ss : -1;
+            subscriptEnd = se;
+            return q - 1;
+        }
+
+        char first = s.charAt(ss);
+        char last = s.charAt(se - 1);
+        int len = se - ss;
+        if (last == '%') {
+            // Give back the optional percent sign.
+            se = se - 1;
+        } else if (isUnicodeFraction(first)) {
+            se = -1;
+        } else if (first == '.') {
+            // \.\d+ gives back a digit if it can.
+            se = (len > 2) ? se - 1 : -1;
+        } else {
+            int p = skipDigits(ss);
+            if (p < se && s.charAt(p) == '/') {
+                // \d+/\d+ gives back a digit if it can; otherwise
+                // fall through to the plain \d+ alternative.
+                se = (se - p > 2) ? se - 1 : p;
+            } else if (p < se) {
+                // \d+\.\d* either gives back a digit, or falls
+                // through to \d+ without the decimal point.
+                se = se - 1;
+            } else {
+                // Plain \d+.
+                se = (len > 1) ? se - 1 : -1;
+            }
+        }
+
+        if (se < 0) {
+            subscriptStart = -1;
+            subscriptEnd = -1;
+            return ss;
+        }
+        subscriptStart = ss;
+        subscriptEnd = se;
+        return se;
+    }
+
+    /** Return ContinuedFraction.parseDouble() of s[start, end), or
+        NaN if that throws a NumberFormatException. */
+    double parseCount(int start, int stop) {
+        // Fast path for plain integers and integer percentages,
+        // which are exact either way.
+        int digitsEnd = skipDigits(start);
+        if (digitsEnd > start && digitsEnd - start <= 15
+            && (digitsEnd == stop
+                || (digitsEnd + 1 == stop && s.charAt(digitsEnd) == '%'))) {
+            long v = 0;
+            for (int i = start; i < digitsEnd; ++i) {
+                v = v * 10 + (s.charAt(i) - '0');
+            }
+            double mul = (digitsEnd == stop) ? 1.0 : 0.01;
+            return mul * v;
+        }
+
+        return ContinuedFraction.parseDoubleOrNaN(s, start, stop);
+    }
+
+    /** Equivalent to ChemicalString.regexComposition(s.subSequence(start,
+        s.length())). */
+    ChemicalString.Match composition(int start) {
+        ChemicalString.Match res = new ChemicalString.Match();
+        res.composition = new HashMap<String,Double>();
+
+        int oldPos = start;
+        for (;;) {
+            if (oldPos == end) {
+                res.setWholeStringMatch(true);
+                break;
+            }
+            int pos = oldPos;
+            boolean numberNeeded = false;
+            if (pos > start) {
+                // This isn't the first chemical formula, so a join
+                // character is allowed, but not required.
+                char ch = s.charAt(pos);
+                if (ch == '+' || ch == ':') {
+                    ++pos;
+                } else {
+                    numberNeeded = true;
+                    if (ch == ',') {
+                        ++pos;
+                    }
+                }
+            }
+
+            pos = skipWhitespace(pos);
+            int numEnd = subscriptEnd(pos);
+            double count = 1.0;
+            if (numEnd >= 0) {
+                count = parseCount(pos, numEnd);
+                if (Double.isNaN(count)) {
+                    break;
+                }
+                pos = skipWhitespace(numEnd);
+            } else if (numberNeeded) {
+                break;
+            }
+
+            ChemicalString.Match simple = simpleComposition(pos);
+            if (simple == null) {
+                break;
+            }
+            pos += simple.endIndex;
+            res.merge(simple, count);
+            oldPos = skipWhitespace(pos);
+        }
+
+        res.endIndex = oldPos - start;
+        return (res.endIndex > 0) ? res : null;
+    }
+
+    /** Equivalent to
+        ChemicalString.regexSimpleComposition(s.subSequence(start,
+        s.length())). */
+    ChemicalString.Match simpleComposition(int start) {
+        ChemicalString.Match res = new ChemicalString.Match();
+        HashMap<String,Double> compo = new HashMap<>();
+        res.composition = compo;
+        int pos = start;
+
+        for (;;) {
+            if (pos == end) {
+                res.setWholeStringMatch(true);
+                break;
+            }
+            char ch = s.charAt(pos);
+            char rightDelimiter = (ch == '(') ? ')' : (ch == '[') ? ']' : 0;
+
+            if (rightDelimiter != 0) {
+                ++pos;
+                ChemicalString.Match submatch = composition(pos);
+                if (submatch == null) {
+                    break;
+                }
+                pos += submatch.endIndex;
+                if (pos == end || s.charAt(pos) != rightDelimiter) {
+                    break;
+                }
+                ++pos;
+                res.endIndex += 2 + submatch.endIndex;
+
+                // Now try to match a trailing subscript (as in
+                // "(SO2)3")
+                double count = 1.0;
+                int subEnd = subscriptEnd(pos);
+                if (subEnd >= 0) {
+                    count = parseCount(pos, subEnd);
+                    if (Double.isNaN(count)) {
+                        break;
+                    }
+                    res.endIndex += subEnd - pos;
+                    pos = subEnd;
+                }
+                res.merge(submatch, count);
+                continue;
+            }
+
+            int ecEnd = elementCount(pos);
+            if (ecEnd >= 0) {
+                // Successfully matched an element and possible count,
+                // such as "Si" or "Si2".
+                res.endIndex += ecEnd - pos;
+                pos = ecEnd;
+                double count = 1;
+                if (subscriptStart >= 0) {
+                    count = parseCount(subscriptStart, subscriptEnd);
+                    if (Double.isNaN(count)) {
+                        break;
+                    }
+                }
+
+                Double d = compo.get(symbol);
+                if (d == null) {
+                    d = 0.0;
+                }
+                double newCount = d + count;
+                if (newCount > 0) {
+                    compo.put(symbol, d + count);
+                }
+                continue;
+            }
+
+            if (Character.isLetter(ch)) {
+                // A letter immediately after a matching portion
+                // invalidates the whole match.
+                return null;
+            }
+
+            break;
+        }
+
+        return (res.endIndex > 0) ? res : null;
+    }
+
+    /** @return true if a and b are both null or have the same
+        indexes, whole-string flag, and composition. */
+    static boolean sameMatch(ChemicalString.Match a, ChemicalString.Match b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.beginIndex != b.beginIndex || a.endIndex != b.endIndex
+            || a.isWholeStringMatch() != b.isWholeStringMatch()
+            || a.composition.size() != b.composition.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Double> entry: a.composition.entrySet()) {
+            Double v = b.composition.get(entry.getKey());
+            if (v == null || Double.compare(v, entry.getValue()) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Compare FormulaScanner against the regular expression-based
+    formula parser in ChemicalString for both correctness and speed.
+
+    Usage: FormulaScannerBenchmark [file.ped or directory ...]
+
+    The plain text of every label, tag, and key value in the given
+    diagrams (by default, the diagrams in the test directory) forms
+    the corpus. Every suffix of every line of the corpus, plus a
+    batch of random strings, is parsed both ways, and any mismatch
+    is reported. Then embeddedFormulas() is timed on the corpus using
+    each parser. */
+public class FormulaScannerBenchmark {
+    static final String RANDOM_ALPHABET
+        = "HCOSiFeNaKlpba0123456789./%()[]+:, \t\u00bd\u207a\u207b\"-";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            args = new String[] { "test" };
+        }
+        ArrayList<String> corpus = new ArrayList<>();
+        for (String arg: args) {
+            addCorpus(corpus, new File(arg));
+        }
+
+        Random random = new Random(1);
+        ArrayList<String> checks = new ArrayList<>(corpus);
+        for (int i = 0; i < 100000; ++i) {
+            checks.add(randomString(random, 1 + random.nextInt(12)));
+        }
+        int mismatches = 0;
+        for (String line: checks) {
+            for (int i = 0; i < line.length(); ++i) {
+                String s = line.substring(i);
+                if (!FormulaScanner.sameMatch(ChemicalString.regexComposition(s),
+                                FormulaScanner.composition(s))) {
+                    ++mismatches;
+                    System.err.println("composition mismatch: '" + s + "'");
+                }
+            }
+            ChemicalString.Match[] a = ChemicalString.regexEmbeddedFormulas(line);
+            ChemicalString.Match[] b = FormulaScanner.embeddedFormulas(line);
+            boolean same = a.length == b.length;
+            for (int i = 0; same && i < a.length; ++i) {
+                same = FormulaScanner.sameMatch(a[i], b[i]);
+            }
+            if (!same) {
+                ++mismatches;
+                System.err.println("embeddedFormulas mismatch: '" + line + "'");
+            }
+        }
+        System.out.println(checks.size() + " strings checked, "
+                           + mismatches + " mismatches");
+        if (corpus.isEmpty()) {
+            return;
+        }
+
+        int chars = 0;
+        for (String line: corpus) {
+            chars += line.length();
+        }
+        System.out.println("Corpus: " + corpus.size() + " lines, "
+                           + chars + " characters");
+        for (int round = 0; round < 3; ++round) {
+            System.out.println("Round " + (round + 1) + ":");
+            time("  regex", corpus, true);
+            time("  scanner", corpus, false);
+        }
+    }
+
+    static void addCorpus(ArrayList<String> corpus, File file)
+        throws IOException {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File f: files) {
+                    if (f.isDirectory() || f.getName().endsWith(".ped")) {
+                        addCorpus(corpus, f);
+                    }
+                }
+            }
+            return;
+        }
+        for (String line: Diagram.loadFrom(file).getAllText()) {
+            corpus.add(line);
+        }
+    }
+
+    static String randomString(Random random, int length) {
+        StringBuilder res = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            res.append(RANDOM_ALPHABET.charAt
+                       (random.nextInt(RANDOM_ALPHABET.length())));
+        }
+        return res.toString();
+    }
+
+    static void time(String name, ArrayList<String> corpus, boolean regex) {
+        long charCnt = 0;
+        int formulaCnt = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (String line: corpus) {
+                ChemicalString.Match[] ms = regex
+                    ? ChemicalString.regexEmbeddedFormulas(line)
+                    : FormulaScanner.embeddedFormulas(line);
+                formulaCnt += ms.length;
+                charCnt += line.length();
+            }
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 1000000000L);
+        System.out.println(String.format
+                           ("%s: %.1f MB/s (%d formulas)", name,
+                            charCnt / (elapsed / 1e9) / 1e6, formulaCnt));
+    }
+}
@@ -0,0 +1,459 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014.
+ *
+ * This file uses the iText library (http://itextpdf.com) and is
+ * subject to the GNU Affero General Public License
+ * (http://www.gnu.org/licenses/agpl-3.0.html). */
+
+package gov.nist.pededitor;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** Time the rendering, geometry and I/O hot paths, and write the
+    results in the JSON format that JMH uses, so that results from
+    different releases can be compared with the usual JMH tools.
+
+    Usage: HotPathBenchmark [-wi <count>] [-i <count>] [-w <seconds>]
+           [-r <seconds>] [-rff <file>] [-corpus <directory>]
+           [<regexp> ...]
+
+    Options have the same meanings as in JMH: -wi and -i give the
+    number of warmup and measurement iterations (default 3 and 5), -w
+    and -r the length of each in seconds (default 1), and -rff the
+    results file (default jmh-result.json). Only benchmarks whose full
+    names match at least one of the given regular expressions are run.
+
+    Each benchmark operation is one pass over the whole corpus (by
+    default, the diagrams in the test directory next to this class),
+    or for ImageTransform.run(), one transformation of a synthetic
+    1600x1200 image into an 800x600 one. The score is the average
+    time per operation in milliseconds, with a 99.9% confidence
+    interval, as in JMH's AverageTime mode. All benchmarks run in this
+    JVM, one after another. */
+public class HotPathBenchmark {
+    /** A named operation to time. */
+    static class Benchmark {
+        String name;
+        Map<String, String> params = new LinkedHashMap<>();
+        BenchmarkOp op;
+
+        Benchmark(String name, BenchmarkOp op) {
+            this.name = HotPathBenchmark.class.getName() + "." + name;
+            this.op = op;
+        }
+
+        Benchmark param(String key, String value) {
+            params.put(key, value);
+            return this;
+        }
+
+        /** @return the name as JMH would print it, including
+            parameters. */
+        String fullName() {
+            StringBuilder res = new StringBuilder(name);
+            for (Map.Entry<String, String> e: params.entrySet()) {
+                res.append(':').append(e.getKey()).append('=')
+                    .append(e.getValue());
+            }
+            return res.toString();
+        }
+    }
+
+    @FunctionalInterface interface BenchmarkOp {
+        /** Perform the operation once, and return a value that
+            depends on its result so the JIT cannot discard it. */
+        long run() throws Exception;
+    }
+
+    /** Sum of every BenchmarkOp result. */
+    static volatile long sink = 0;
+
+    public static void main(String[] args) throws Exception {
+        int warmupIterations = 3;
+        int iterations = 5;
+        double warmupSeconds = 1;
+        double seconds = 1;
+        String resultFile = "jmh-result.json";
+        File corpus = null;
+        ArrayList<Pattern> patterns = new ArrayList<>();
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if (i + 1 < args.length && arg.startsWith("-")) {
+                String value = args[++i];
+                switch (arg) {
+                case "-wi":
+                    warmupIterations = Integer.parseInt(value);
+                    continue;
+                case "-i":
+                    iterations = Integer.parseInt(value);
+                    continue;
+                case "-w":
+                    warmupSeconds = Double.parseDouble(value);
+                    continue;
+                case "-r":
+                    seconds = Double.parseDouble(value);
+                    continue;
+                case "-rff":
+                    resultFile = value;
+                    continue;
+                case "-corpus":
+                    corpus = new File(value);
+                    continue;
+                default:
+                    --i;
+                    break;
+                }
+            }
+            patterns.add(Pattern.compile(arg));
+        }
+
+        if (corpus == null) {
+            corpus = defaultCorpus();
+        }
+        if (!corpus.exists()) {
+            System.err.println("Corpus " + corpus.getAbsolutePath()
+                               + " not found; use -corpus <directory> to choose one.");
+            System.exit(2);
+        }
+        ArrayList<File> files = new ArrayList<>();
+        MoleWeightBenchmark.addFiles(files, corpus);
+        ArrayList<Diagram> diagrams = new ArrayList<>();
+        for (File file: files) {
+            Diagram d = Diagram.loadFrom(file);
+            d.preloadImages();
+            diagrams.add(d);
+        }
+        if (diagrams.isEmpty()) {
+            System.err.println("No diagrams found in "
+                               + corpus.getAbsolutePath()
+                               + "; use -corpus <directory> to choose one.");
+            System.exit(2);
+        }
+        System.out.println("Corpus: " + diagrams.size() + " diagrams");
+
+        ArrayList<Map<String, Object>> results = new ArrayList<>();
+        for (Benchmark b: benchmarks(files, diagrams)) {
+            String fullName = b.fullName();
+            if (!patterns.isEmpty()
+                && patterns.stream().noneMatch(p -> p.matcher(fullName).find())) {
+                continue;
+            }
+            System.out.println(fullName);
+            for (int i = 0; i < warmupIterations; ++i) {
+                System.out.println(String.format
+                                   ("  Warmup %d: %.3f ms/op", i + 1,
+                                    iteration(b.op, warmupSeconds)));
+            }
+            double[] scores = new double[iterations];
+            for (int i = 0; i < iterations; ++i) {
+                scores[i] = iteration(b.op, seconds);
+                System.out.println(String.format
+                                   ("  Iteration %d: %.3f ms/op", i + 1,
+                                    scores[i]));
+            }
+            Map<String, Object> result = result(b, scores, warmupIterations,
+                                                warmupSeconds, seconds);
+            @SuppressWarnings("unchecked")
+                Map<String, Object> metric
+                = (Map<String, Object>) result.get("primaryMetric");
+            System.out.println(String.format
+                               ("  Result: %.3f \u00b1 %.3f ms/op",
+                                metric.get("score"), metric.get("scoreError")));
+            results.add(result);
+        }
+
+        if (!results.isEmpty()) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter()
+                .writeValue(new File(resultFile), results);
+            System.out.println("Results written to " + resultFile);
+        }
+    }
+
+    /** @return the test directory that sits next to this class, or
+        if it cannot be found there (for example, because the class
+        was loaded from a jar), the test subdirectory of the current
+        directory. */
+    static File defaultCorpus() {
+        URL url = HotPathBenchmark.class.getResource("test");
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                return new File(url.toURI());
+            } catch (URISyntaxException x) {
+                // Fall through
+            }
+        }
+        return new File("test");
+    }
+
+    /** @return every benchmark, in the order they should run. */
+    static List<Benchmark> benchmarks(List<File> files, List<Diagram> diagrams)
+        throws IOException {
+        ArrayList<Benchmark> res = new ArrayList<>();
+
+        res.add(new Benchmark("loadFrom", () -> {
+                    long sum = 0;
+                    for (File file: files) {
+                        sum += Diagram.loadFrom(file).getDecorations().size();
+                    }
+                    return sum;
+                }));
+
+        Path temp = Files.createTempFile("benchmark", ".ped");
+        temp.toFile().deleteOnExit();
+        res.add(new Benchmark("saveAsPED", () -> {
+                    long sum = 0;
+                    for (Diagram d: diagrams) {
+                        d.saveAsPED(temp, false);
+                        sum += Files.size(temp);
+                    }
+                    return sum;
+                }));
+
+        BufferedImage input = syntheticImage(1600, 1200);
+        for (ImageTransform.DithererType ditherer:
+                 ImageTransform.DithererType.values()) {
+            for (PolygonTransform xform: polygonTransforms()) {
+                res.add(new Benchmark("imageTransform", () -> {
+                            BufferedImage out = ImageTransform.run
+                                (xform, input, ditherer, BufferedImage.TYPE_INT_RGB);
+                            return out.getRGB(out.getWidth() / 2, out.getHeight() / 2);
+                        })
+                    .param("ditherer", ditherer.toString())
+                    .param("transform", xform.getClass().getSimpleName()));
+            }
+        }
+
+        res.add(new Benchmark("intersections", () -> {
+                    long sum = 0;
+                    for (Diagram d: diagrams) {
+                        sum += d.intersections().size();
+                    }
+                    return sum;
+                }));
+
+        // Query a 10x10 grid of points spread over each page.
+        res.add(new Benchmark("nearestCurve", () -> {
+                    long sum = 0;
+                    for (Diagram d: diagrams) {
+                        Rectangle2D.Double b = d.getPageBounds();
+                        for (int i = 0; i < 10; ++i) {
+                            for (int j = 0; j < 10; ++j) {
+                                Point2D.Double p = new Point2D.Double
+                                    (b.x + b.width * (i + 0.5) / 10,
+                                     b.y + b.height * (j + 0.5) / 10);
+                                if (d.nearestCurve(p) != null) {
+                                    ++sum;
+                                }
+                            }
+                        }
+                    }
+                    return sum;
+                }));
+
+        // Label.draw() passes all labels except cutouts to htmlDraw().
+        BufferedImage canvas = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB);
+        res.add(new Benchmark("htmlDraw", () -> {
+                    Graphics2D g = canvas.createGraphics();
+                    try {
+                        g.setColor(Color.BLACK);
+                        long sum = 0;
+                        for (Diagram d: diagrams) {
+                            Rectangle2D.Double b = d.getPageBounds();
+                            double scale = 800 / Math.max(b.width, b.height);
+                            for (Label label: d.labels()) {
+                                label.draw(g, scale);
+                                ++sum;
+                            }
+                        }
+                        return sum;
+                    } finally {
+                        g.dispose();
+                    }
+                }));
+
+        res.add(new Benchmark("toPDFByteArray", () -> {
+                    long sum = 0;
+                    for (Diagram d: diagrams) {
+                        byte[] bytes = DiagramPDF.toPDFByteArray(d);
+                        if (bytes != null) {
+                            sum += bytes.length;
+                        }
+                    }
+                    return sum;
+                }));
+
+        ArrayList<String> texts = new ArrayList<>();
+        for (Diagram d: diagrams) {
+            for (Label label: d.labels()) {
+                texts.add(label.getText());
+            }
+        }
+        res.add(new Benchmark("embeddedFormulas", () -> {
+                    long sum = 0;
+                    for (String text: texts) {
+                        sum += ChemicalString.embeddedFormulas(text).length;
+                    }
+                    return sum;
+                }));
+
+        return res;
+    }
+
+    /** @return a deterministic image of the given size with both
+        smooth gradients and sharp edges, roughly like a scanned
+        diagram. */
+    static BufferedImage syntheticImage(int width, int height) {
+        BufferedImage res = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int v = 128 + (x * 127 / width) - (y * 64 / height)
+                    + random.nextInt(16);
+                res.setRGB(x, y, ((x / 40 + y / 40) % 7 == 0) ? 0
+                           : (v << 16) | (v << 8) | (255 - v));
+            }
+        }
+        return res;
+    }
+
+    /** @return one transform of each PolygonTransform type, each
+        mapping the 1600x1200 synthetic image to roughly 800x600
+        pixels. */
+    static List<PolygonTransform> polygonTransforms() {
+        Rectangle2D.Double in = new Rectangle2D.Double(0, 0, 1600, 1200);
+        Rectangle2D.Double out = new Rectangle2D.Double(0, 0, 800, 600);
+        // Vertices in lower left, upper left, upper right, lower
+        // right order.
+        Point2D.Double[] inQuad = {
+            new Point2D.Double(100, 1100), new Point2D.Double(150, 80),
+            new Point2D.Double(1500, 150), new Point2D.Double(1550, 1150) };
+        Point2D.Double[] outQuad = {
+            new Point2D.Double(20, 580), new Point2D.Double(60, 10),
+            new Point2D.Double(780, 40), new Point2D.Double(760, 590) };
+
+        ArrayList<PolygonTransform> res = new ArrayList<>();
+        res.add(new RectangleTransform(in, out));
+        res.add(new TriangleTransform
+                (Arrays.copyOf(inQuad, 3), Arrays.copyOf(outQuad, 3)));
+        res.add(new QuadToRect(inQuad, out));
+        RectToQuad r2q = new RectToQuad();
+        r2q.setRectangle(in);
+        r2q.setVertices(outQuad);
+        res.add(r2q);
+        res.add(new QuadToQuad(inQuad, outQuad));
+        return res;
+    }
+
+    /** Run op repeatedly for about the given number of seconds, and
+        return the average time per call in milliseconds. */
+    static double iteration(BenchmarkOp op, double seconds) throws Exception {
+        long duration = (long) (seconds * 1e9);
+        long calls = 0;
+        long sum = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sum += op.run();
+            ++calls;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < duration);
+        sink += sum;
+        return elapsed / 1e6 / calls;
+    }
+
+    /** @return the JMH-style result record for b. */
+    static Map<String, Object> result(Benchmark b, double[] scores,
+            int warmupIterations, double warmupSeconds, double seconds) {
+        int n = scores.length;
+        double mean = 0;
+        for (double s: scores) {
+            mean += s;
+        }
+        mean /= n;
+        double error = Double.NaN;
+        if (n > 1) {
+            double var = 0;
+            for (double s: scores) {
+                var += (s - mean) * (s - mean);
+            }
+            var /= n - 1;
+            error = studentT9995(n - 1) * Math.sqrt(var / n);
+        }
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("0.0", sorted[0]);
+        percentiles.put("50.0", (sorted[(n - 1) / 2] + sorted[n / 2]) / 2);
+        percentiles.put("100.0", sorted[n - 1]);
+
+        Map<String, Object> metric = new LinkedHashMap<>();
+        metric.put("score", mean);
+        metric.put("scoreError", error);
+        metric.put("scoreConfidence", new double[] { mean - error, mean + error });
+        metric.put("scorePercentiles", percentiles);
+        metric.put("scoreUnit", "ms/op");
+        metric.put("rawData", new double[][] { scores });
+
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("benchmark", b.name);
+        res.put("mode", "avgt");
+        res.put("threads", 1);
+        res.put("forks", 0);
+        res.put("jvm", System.getProperty("java.home"));
+        res.put("jvmArgs", ManagementFactory.getRuntimeMXBean().getInputArguments());
+        res.put("jdkVersion", System.getProperty("java.version"));
+        res.put("vmName", System.getProperty("java.vm.name"));
+        res.put("vmVersion", System.getProperty("java.vm.version"));
+        res.put("warmupIterations", warmupIterations);
+        res.put("warmupTime", warmupSeconds + " s");
+        res.put("warmupBatchSize", 1);
+        res.put("measurementIterations", n);
+        res.put("measurementTime", seconds + " s");
+        res.put("measurementBatchSize", 1);
+        if (!b.params.isEmpty()) {
+            res.put("params", b.params);
+        }
+        res.put("primaryMetric", metric);
+        res.put("secondaryMetrics", new LinkedHashMap<String, Object>());
+        return res;
+    }
+
+    static final double[] T9995 = { 636.619, 31.599, 12.924, 8.610, 6.869,
+                                    5.959, 5.408, 5.041, 4.781, 4.587 };
+
+    /** @return the 99.95th percentile of Student's t distribution
+        with the given degrees of freedom, which is what a two-sided
+        99.9% confidence interval requires. Values beyond the table
+        use the Cornish-Fisher expansion, which is accurate to within
+        0.1 for more than 10 degrees of freedom. */
+    static double studentT9995(int dof) {
+        if (dof <= T9995.length) {
+            return T9995[dof - 1];
+        }
+        double z = 3.2905; // 99.95th percentile of the normal distribution
+        double z3 = z * z * z;
+        double z5 = z3 * z * z;
+        return z + (z3 + z) / (4 * dof)
+            + (5 * z5 + 16 * z3 + 3 * z) / (96.0 * dof * dof);
+    }
+}
@@ -0,0 +1,272 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/** Decode an image file on a background thread, so that opening a
+    100 MB scan does not freeze the user interface.
+
+    If the image has more than PREVIEW_PIXELS pixels, a preview is
+    decoded first using ImageReadParam.setSourceSubsampling(), which
+    is much faster and needs much less memory than a full decode, and
+    then the full-resolution image is decoded. The listener is called
+    on the event dispatch thread when each becomes available, so the
+    user interface can show the preview at once and swap in the full
+    image later. Pixel (x,y) of the preview corresponds to pixel
+    (x*getSubsampling(), y*getSubsampling()) of the full image.
+
+    Full images are shared through DiagramCache, so a later call to
+    SourceImage.getImage() for the same file contents does not decode
+    it again. */
+class ImageDecoder {
+    /** Decode a preview first only if the image has more pixels than
+        this. */
+    static final long PREVIEW_PIXELS = 1 << 20;
+
+    interface Listener {
+        /** Called on the event dispatch thread when the preview or
+            the full image has been decoded, or when decoding has
+            failed. Never called after cancel(). */
+        void imageDecoded(ImageDecoder decoder);
+    }
+
+    static ExecutorService executor = null;
+
+    final File file;
+    volatile byte[] bytes;
+    final Listener listener;
+    final CompletableFuture<BufferedImage> preview = new CompletableFuture<>();
+    final CompletableFuture<BufferedImage> image = new CompletableFuture<>();
+    volatile int width = -1;
+    volatile int height = -1;
+    volatile int subsampling = 1;
+    volatile boolean cancelled = false;
+    /** The reader that is in use, so cancel() can abort it. */
+    ImageReader reader = null;
+    Future<?> task;
+
+    private ImageDecoder(File file, byte[] bytes, Listener listener) {
+        this.file = file;
+        this.bytes = bytes;
+        this.listener = listener;
+    }
+
+    static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "ImageDecoder");
+                    t.setDaemon(true);
+                    return t;
+                });
+        }
+        return executor;
+    }
+
+    /** Start decoding the given image file contents.
+
+        @param listener Listener to notify of progress, or null. */
+    static ImageDecoder start(byte[] bytes, Listener listener) {
+        return new ImageDecoder(null, bytes, listener).start();
+    }
+
+    /** Start reading and decoding the given image file.
+
+        @param listener Listener to notify of progress, or null. */
+    static ImageDecoder start(File file, Listener listener) {
+        return new ImageDecoder(file, null, listener).start();
+    }
+
+    private ImageDecoder start() {
+        task = getExecutor().submit(this::run);
+        return this;
+    }
+
+    /** @return the contents of the image file, or null if they have
+        not been read yet. */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /** @return the width of the full image, or -1 if it is not known
+        yet. */
+    int getWidth() {
+        return width;
+    }
+
+    /** @return the height of the full image, or -1 if it is not known
+        yet. */
+    int getHeight() {
+        return height;
+    }
+
+    /** @return the ratio of the full image's size to the preview's. */
+    int getSubsampling() {
+        return subsampling;
+    }
+
+    /** @return the preview, or the full image if no separate preview
+        was needed, or null if neither is available yet. */
+    BufferedImage getPreview() {
+        return preview.getNow(null);
+    }
+
+    /** @return the full image, or null if it is not available yet. */
+    BufferedImage getImage() {
+        return image.getNow(null);
+    }
+
+    /** @return true if decoding has finished, failed, or been
+        cancelled. */
+    boolean isDone() {
+        return image.isDone();
+    }
+
+    /** @return true if decoding finished successfully. */
+    boolean succeeded() {
+        return image.isDone() && !image.isCompletedExceptionally();
+    }
+
+    /** Wait for the preview to be decoded and return it. */
+    BufferedImage awaitPreview() throws IOException {
+        return await(preview);
+    }
+
+    /** Wait for the full image to be decoded and return it. */
+    BufferedImage await() throws IOException {
+        return await(image);
+    }
+
+    static BufferedImage await(CompletableFuture<BufferedImage> f)
+        throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Image decoding interrupted", x);
+        } catch (CancellationException x) {
+            throw new IOException("Image decoding cancelled", x);
+        } catch (ExecutionException x) {
+            Throwable cause = x.getCause();
+            throw (cause instanceof IOException) ? (IOException) cause
+                : new IOException(cause);
+        }
+    }
+
+    /** Stop decoding as soon as possible. The listener will not be
+        called again, and await() will throw an IOException. */
+    void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            if (reader != null) {
+                reader.abort();
+            }
+        }
+        task.cancel(false);
+        preview.cancel(false);
+        image.cancel(false);
+    }
+
+    void run() {
+        try {
+            if (cancelled) {
+                return;
+            }
+            if (bytes == null) {
+                bytes = Files.readAllBytes(file.toPath());
+            }
+            BufferedImage res = DiagramCache.cachedImage(bytes);
+            if (res == null) {
+                res = decode();
+                if (res == null) {
+                    return; // Cancelled
+                }
+                res = ImageTransform.compact(res);
+                DiagramCache.putImage(bytes, res);
+            }
+            width = res.getWidth();
+            height = res.getHeight();
+            preview.complete(res);
+            image.complete(res);
+            notifyListener();
+        } catch (IOException | RuntimeException | OutOfMemoryError x) {
+            preview.completeExceptionally(x);
+            image.completeExceptionally(x);
+            notifyListener();
+        }
+    }
+
+    /** @return the decoded image, or null if decoding was cancelled. */
+    BufferedImage decode() throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream
+             (new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new IOException
+                    (((file == null) ? "Image" : file.toString())
+                     + ": unknown image format");
+            }
+            ImageReader r = readers.next();
+            synchronized (this) {
+                if (cancelled) {
+                    r.dispose();
+                    return null;
+                }
+                reader = r;
+            }
+            try {
+                r.setInput(iis, false, true);
+                width = r.getWidth(0);
+                height = r.getHeight(0);
+                int s = (int) Math.ceil
+                    (Math.sqrt((double) width * height / PREVIEW_PIXELS));
+                if (s > 1) {
+                    ImageReadParam param = r.getDefaultReadParam();
+                    param.setSourceSubsampling(s, s, 0, 0);
+                    BufferedImage p = r.read(0, param);
+                    if (cancelled) {
+                        return null;
+                    }
+                    subsampling = s;
+                    preview.complete(p);
+                    notifyListener();
+                }
+                BufferedImage res = r.read(0);
+                return cancelled ? null : res;
+            } finally {
+                synchronized (this) {
+                    reader = null;
+                }
+                r.dispose();
+            }
+        }
+    }
+
+    void notifyListener() {
+        if (listener != null) {
+            EventQueue.invokeLater(() -> {
+                    if (!cancelled) {
+                        listener.imageDecoded(this);
+                    }
+                });
+        }
+    }
+}
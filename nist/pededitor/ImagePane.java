@@ -15,6 +15,9 @@ import javax.swing.JPanel;
 public class ImagePane extends JPanel {
     private static final long serialVersionUID = -5288040395450118276L;
     protected BufferedImage image;
+    /** Low-resolution stand-in for image that is displayed at the
+        full image's size until the full image is ready, or null. */
+    protected BufferedImage preview;
 
     public ImagePane() {}
 
@@ -24,6 +27,7 @@ public class ImagePane extends JPanel {
 
     public void setImage(BufferedImage image) {
         this.image = image;
+        preview = null;
         if (image != null) {
             setPreferredSize(new Dimension(image.getWidth(null),
                                            image.getHeight(null)));
@@ -32,6 +36,26 @@ public class ImagePane extends JPanel {
         repaint();
     }
 
+    /** Display preview stretched to width x height until the image
+        of that size is passed to finishPreview(). getImage() returns
+        null in the meantime. */
+    public void setPreview(BufferedImage preview, int width, int height) {
+        setImage(null);
+        this.preview = preview;
+        setPreferredSize(new Dimension(width, height));
+        revalidate();
+        repaint();
+    }
+
+    /** Replace the preview with the full-resolution image. Unlike
+        setImage(), this does not reset anything that depends on the
+        image's size, such as a selection. */
+    public void finishPreview(BufferedImage image) {
+        this.image = image;
+        preview = null;
+        repaint();
+    }
+
     @Override
 	public void paintComponent(Graphics g) {
         Rectangle drawHere = g.getClipBounds();
@@ -39,6 +63,9 @@ public class ImagePane extends JPanel {
         ((Graphics2D) g).fill(drawHere);
         if (image != null) {
             g.drawImage(image, 0, 0, null);
+        } else if (preview != null) {
+            Dimension size = getPreferredSize();
+            g.drawImage(preview, 0, 0, size.width, size.height, null);
         }
     }
 
@@ -65,19 +65,27 @@ public class ImageScrollFrame extends JFrame {
             scrollPane.setPreferredSize
                 (new Dimension(preferredWidth, preferredHeight));
         } else {
-            int w = im.getWidth();
-            int h = im.getHeight();
-
-            if (w < preferredWidth && h < preferredHeight) {
-                scrollPane.setPreferredSize(null);
-            } else {
-                scrollPane.setPreferredSize
-                    (new Dimension(preferredWidth, preferredHeight));
-            }
+            setScrollPaneSize(im.getWidth(), im.getHeight());
         }
         imagePane.setImage(im);
     }
 
+    /** Display a low-resolution preview of a width x height image.
+        See ImagePane.setPreview(). */
+    public void setPreview(BufferedImage preview, int width, int height) {
+        setScrollPaneSize(width, height);
+        imagePane.setPreview(preview, width, height);
+    }
+
+    void setScrollPaneSize(int w, int h) {
+        if (w < preferredWidth && h < preferredHeight) {
+            scrollPane.setPreferredSize(null);
+        } else {
+            scrollPane.setPreferredSize
+                (new Dimension(preferredWidth, preferredHeight));
+        }
+    }
+
     public BufferedImage getImage() {
         return imagePane.getImage();
     }
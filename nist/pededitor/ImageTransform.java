@@ -4,6 +4,7 @@
 package gov.nist.pededitor;
 
 import java.awt.*;
+import java.awt.color.ColorSpace;
 import java.awt.geom.*;
 import java.awt.image.*;
 import java.io.*;
@@ -16,9 +17,43 @@ import javax.imageio.ImageIO;
     #max_output_y. */
 public class ImageTransform {
     static final ForkJoinPool mainPool = new ForkJoinPool();
+    static final Metrics.Timer TRANSFORM_TIMER = Metrics.timer("image.transform");
 
     enum DithererType { FAST, GOOD };
 
+    /** How run() stores its output when called with a Storage
+        argument. Scanned diagrams are almost always grayscale or
+        black and white, and for such sources GRAY and BILEVEL use 1
+        byte or 2 bits per pixel instead of ARGB's 4. Java2D converts
+        to the destination format when the image is drawn. */
+    enum Storage {
+        /** TYPE_INT_ARGB. */
+        ARGB,
+        /** 1 byte per pixel: GRAY_LEVELS opaque shades of gray, a
+            coarser band of partly transparent grays for the
+            antialiased pixels along the edges of the transformed
+            image, and one transparent entry. */
+        GRAY,
+        /** The source's two colors plus transparent, 2 bits per
+            pixel. Only suitable for FAST dithering of a two-color
+            source, which never produces partly transparent or
+            intermediate pixels. */
+        BILEVEL };
+
+    /** Number of opaque shades of gray in the GRAY palette. */
+    static final int GRAY_LEVELS = 223;
+    /** Number of partial alpha levels in the GRAY palette's edge
+        band, evenly spaced between transparent and opaque. */
+    static final int EDGE_ALPHA_LEVELS = 8;
+    /** Number of shades of gray at each edge band alpha level. */
+    static final int EDGE_GRAY_LEVELS = 4;
+    /** Index of the transparent entry of the GRAY palette. */
+    static final int GRAY_TRANSPARENT
+        = GRAY_LEVELS + EDGE_ALPHA_LEVELS * EDGE_GRAY_LEVELS;
+    /** Index of the transparent entry of the BILEVEL palette. */
+    static final int BILEVEL_TRANSPARENT = 2;
+    static final IndexColorModel GRAY_PALETTE = grayEdgePalette();
+
     /** run() with default size and either black or clear background,
         depending on whether the image type supports an alpha channel.
 
@@ -282,15 +317,70 @@ public class ImageTransform {
             int imageType) {
         int width = size.width;
         int height = size.height;
-
-        StopWatch s = new StopWatch();
-        s.start();
-
         BufferedImage output = new BufferedImage(width, height, imageType);
         if (background == null) {
             background = (output.getAlphaRaster() == null)
                 ? Color.BLACK : new Color(0, 0, 0, 0);
         }
+        int[] outputRGB = transform(xform, input, background, size, dithererType);
+        output.setRGB(0, 0, width, height, outputRGB, 0, width);
+        return output;
+    }
+
+    /** Like run(), but with a transparent background and the output
+        stored as specified. Use storageFor() to choose storage.
+
+        @param storage GRAY requires isGray(input.getColorModel()), and
+        BILEVEL requires isBilevel(input.getColorModel()). */
+    static BufferedImage run(PolygonTransform xform,
+            BufferedImage input, Dimension size,
+            DithererType dithererType, Storage storage) {
+        if (storage == Storage.ARGB) {
+            return run(xform, input, null, size, dithererType,
+                       BufferedImage.TYPE_INT_ARGB);
+        }
+        int width = size.width;
+        int height = size.height;
+        int[] pixels = transform(xform, input, new Color(0, 0, 0, 0), size,
+                                 dithererType);
+        BufferedImage output;
+
+        // Convert ARGB values to palette indexes in place.
+        if (storage == Storage.GRAY) {
+            output = new BufferedImage(width, height,
+                    BufferedImage.TYPE_BYTE_INDEXED, GRAY_PALETTE);
+            for (int i = 0; i < pixels.length; ++i) {
+                pixels[i] = grayIndex(pixels[i]);
+            }
+        } else {
+            IndexColorModel icm = (IndexColorModel) input.getColorModel();
+            int rgb1 = icm.getRGB(1) & 0xffffff;
+            int[] r = { icm.getRed(0), icm.getRed(1), 0 };
+            int[] g = { icm.getGreen(0), icm.getGreen(1), 0 };
+            int[] b = { icm.getBlue(0), icm.getBlue(1), 0 };
+            output = new BufferedImage(width, height,
+                    BufferedImage.TYPE_BYTE_BINARY,
+                    new IndexColorModel(2, 3, toBytes(r), toBytes(g), toBytes(b),
+                                        BILEVEL_TRANSPARENT));
+            for (int i = 0; i < pixels.length; ++i) {
+                int argb = pixels[i];
+                pixels[i] = ((argb >>> 24) < 0x80) ? BILEVEL_TRANSPARENT
+                    : ((argb & 0xffffff) == rgb1) ? 1 : 0;
+            }
+        }
+        output.getRaster().setSamples(0, 0, width, height, 0, pixels);
+        return output;
+    }
+
+    /** @return the ARGB values of the transformed image, in row-major
+        order. */
+    static int[] transform(PolygonTransform xform,
+            BufferedImage input, Color background, Dimension size,
+            DithererType dithererType) {
+        int width = size.width;
+        int height = size.height;
+
+        long start = Metrics.start();
         Transform2D inverseTransform;
 
         try {
@@ -317,9 +407,206 @@ public class ImageTransform {
                     inverseTransform, background);
         }
         mainPool.invoke(new RecursiveRectangleAction(ditherer, outputBounds, 500000));
-        output.setRGB(0, 0, width, height, outputRGB, 0, width);
-        s.ping();
-        return output;
+        TRANSFORM_TIMER.stop(start);
+        return outputRGB;
+    }
+
+    /** @return the most compact Storage for transforming input with
+        the given ditherer. */
+    static Storage storageFor(BufferedImage input, DithererType dithererType) {
+        ColorModel cm = input.getColorModel();
+        if (!isGray(cm)) {
+            return Storage.ARGB;
+        }
+        return (dithererType == DithererType.FAST && isBilevel(cm))
+            ? Storage.BILEVEL : Storage.GRAY;
+    }
+
+    /** @return true if every pixel value of cm is an opaque shade of
+        gray. */
+    static boolean isGray(ColorModel cm) {
+        if (cm instanceof IndexColorModel) {
+            IndexColorModel icm = (IndexColorModel) cm;
+            for (int i = 0; i < icm.getMapSize(); ++i) {
+                int argb = icm.getRGB(i);
+                if ((argb >>> 24) != 0xff || !isGray(argb)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return !cm.hasAlpha()
+            && cm.getColorSpace().getType() == ColorSpace.TYPE_GRAY;
+    }
+
+    /** @return true if cm is a gray palette of only two colors. */
+    static boolean isBilevel(ColorModel cm) {
+        return cm instanceof IndexColorModel
+            && ((IndexColorModel) cm).getMapSize() == 2 && isGray(cm);
+    }
+
+    static boolean isGray(int rgb) {
+        int b = rgb & 0xff;
+        return ((rgb >> 8) & 0xff) == b && ((rgb >> 16) & 0xff) == b;
+    }
+
+    /** @return an opaque palette of grayCnt shades of gray from
+        black to white. */
+    static IndexColorModel grayPalette(int grayCnt) {
+        byte[] levels = new byte[grayCnt];
+        for (int i = 0; i < grayCnt; ++i) {
+            levels[i] = (byte) ((i * 255 + (grayCnt - 1) / 2) / (grayCnt - 1));
+        }
+        return new IndexColorModel(8, grayCnt, levels, levels, levels);
+    }
+
+    /** @return the GRAY palette: GRAY_LEVELS opaque grays, then
+        EDGE_GRAY_LEVELS grays at each of EDGE_ALPHA_LEVELS partial
+        alphas in increasing order, then transparent. */
+    static IndexColorModel grayEdgePalette() {
+        int size = GRAY_TRANSPARENT + 1;
+        byte[] levels = new byte[size];
+        byte[] alphas = new byte[size];
+        for (int i = 0; i < GRAY_LEVELS; ++i) {
+            levels[i] = (byte) ((i * 255 + (GRAY_LEVELS - 1) / 2) / (GRAY_LEVELS - 1));
+            alphas[i] = (byte) 255;
+        }
+        for (int a = 0; a < EDGE_ALPHA_LEVELS; ++a) {
+            for (int g = 0; g < EDGE_GRAY_LEVELS; ++g) {
+                int i = GRAY_LEVELS + a * EDGE_GRAY_LEVELS + g;
+                levels[i] = (byte) ((g * 255 + (EDGE_GRAY_LEVELS - 1) / 2)
+                                    / (EDGE_GRAY_LEVELS - 1));
+                alphas[i] = (byte) (((a + 1) * 255 + (EDGE_ALPHA_LEVELS + 1) / 2)
+                                    / (EDGE_ALPHA_LEVELS + 1));
+            }
+        }
+        return new IndexColorModel(8, size, levels, levels, levels, alphas);
+    }
+
+    /** @return the index of the GRAY palette entry closest to argb. */
+    static int grayIndex(int argb) {
+        int gray = (((argb >> 16) & 0xff) + ((argb >> 8) & 0xff)
+                    + (argb & 0xff) + 1) / 3;
+        int alpha = argb >>> 24;
+        if (alpha == 255) {
+            return (gray * (GRAY_LEVELS - 1) + 127) / 255;
+        }
+        int level = (alpha * (EDGE_ALPHA_LEVELS + 1) + 127) / 255;
+        if (level == 0) {
+            return GRAY_TRANSPARENT;
+        } else if (level > EDGE_ALPHA_LEVELS) {
+            return (gray * (GRAY_LEVELS - 1) + 127) / 255;
+        }
+        return GRAY_LEVELS + (level - 1) * EDGE_GRAY_LEVELS
+            + (gray * (EDGE_GRAY_LEVELS - 1) + 127) / 255;
+    }
+
+    static byte[] toBytes(int[] values) {
+        byte[] res = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            res[i] = (byte) values[i];
+        }
+        return res;
+    }
+
+    /** @return image itself, or if image is opaque and contains only
+        shades of gray, an equivalent copy that takes less memory: a
+        1-bit-per-pixel image if it contains no more than two colors,
+        and otherwise an image with an 8-bit gray palette. Images whose
+        color model is already gray are returned unchanged.
+
+        Scanners often save black-and-white or grayscale scans as RGB,
+        which decode to 3 or 4 bytes per pixel. */
+    static BufferedImage compact(BufferedImage image) {
+        ColorModel cm = image.getColorModel();
+        if (isGray(cm) || cm.hasAlpha()) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] buf = new int[width * 3];
+        int[] row = new int[width];
+        int color0 = -1;
+        int color1 = -1;
+        boolean bilevel = true;
+        for (int y = 0; y < height; ++y) {
+            if (!getGrayRow(image, y, buf, row)) {
+                return image;
+            }
+            for (int x = 0; x < width && bilevel; ++x) {
+                int gray = row[x];
+                if (gray != color0 && gray != color1) {
+                    if (color0 == -1) {
+                        color0 = gray;
+                    } else if (color1 == -1) {
+                        color1 = gray;
+                    } else {
+                        bilevel = false;
+                    }
+                }
+            }
+        }
+
+        BufferedImage res;
+        if (bilevel) {
+            if (color1 == -1) {
+                color1 = color0;
+            }
+            byte[] levels = toBytes(new int[] { color0, color1 });
+            res = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY,
+                    new IndexColorModel(1, 2, levels, levels, levels));
+        } else {
+            res = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED,
+                    grayPalette(256));
+        }
+        WritableRaster raster = res.getRaster();
+        for (int y = 0; y < height; ++y) {
+            getGrayRow(image, y, buf, row);
+            if (bilevel) {
+                for (int x = 0; x < width; ++x) {
+                    row[x] = (row[x] == color0) ? 0 : 1;
+                }
+            }
+            raster.setSamples(0, y, width, 1, 0, row);
+        }
+        return res;
+    }
+
+    /** Store the gray levels of row y of image in gray[].
+
+        @param buf Scratch space for at least 3 * width values.
+
+        @return false if the row contains a pixel that is not
+        gray. */
+    static boolean getGrayRow(BufferedImage image, int y, int[] buf, int[] gray) {
+        int width = gray.length;
+        ColorModel cm = image.getColorModel();
+        if (cm.getColorSpace().isCS_sRGB() && cm.getNumComponents() == 3
+            && (cm instanceof ComponentColorModel || cm instanceof DirectColorModel)
+            && cm.getComponentSize(0) == 8 && cm.getComponentSize(1) == 8
+            && cm.getComponentSize(2) == 8) {
+            // Fast path for the usual 24-bit RGB images: read the
+            // samples directly instead of converting each pixel through
+            // the color model.
+            image.getRaster().getPixels(0, y, width, 1, buf);
+            for (int x = 0, i = 0; x < width; ++x, i += 3) {
+                int b = buf[i + 2];
+                if (buf[i] != b || buf[i + 1] != b) {
+                    return false;
+                }
+                gray[x] = b;
+            }
+        } else {
+            image.getRGB(0, y, width, 1, buf, 0, width);
+            for (int x = 0; x < width; ++x) {
+                int rgb = buf[x];
+                if (!isGray(rgb)) {
+                    return false;
+                }
+                gray[x] = rgb & 0xff;
+            }
+        }
+        return true;
     }
 
     /** Just a test harness. */
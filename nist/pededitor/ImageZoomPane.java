@@ -10,6 +10,12 @@ import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.ButtonGroup;
+import javax.swing.JPopupMenu;
+import javax.swing.JRadioButtonMenuItem;
 
 public class ImageZoomPane extends ImagePane {
     private static final long serialVersionUID = 5357695613573941516L;
@@ -27,11 +33,58 @@ public class ImageZoomPane extends ImagePane {
         channel... */
     protected Image crosshairs = null;
 
+    /** Number of screen pixels per image pixel in each direction. */
+    protected int magnification = 1;
+
+    /** Screen-compatible copy of image, or null if it has not been
+        created yet. */
+    protected transient ZoomTiles tiles = null;
+
     public ImageZoomPane() {
         setPreferredSize(new Dimension(preferredWidth, preferredHeight));
+        JPopupMenu menu = new JPopupMenu("Magnification");
+        ButtonGroup group = new ButtonGroup();
+        for (int m: new int[] {1, 2, 4}) {
+            JRadioButtonMenuItem item = new JRadioButtonMenuItem
+                (m + "x", m == magnification);
+            item.addActionListener(e -> setMagnification(m));
+            group.add(item);
+            menu.add(item);
+        }
+        addMouseListener(new MouseAdapter() {
+                @Override public void mousePressed(MouseEvent e) {
+                    maybeShowPopup(e);
+                }
+
+                @Override public void mouseReleased(MouseEvent e) {
+                    maybeShowPopup(e);
+                }
+
+                void maybeShowPopup(MouseEvent e) {
+                    if (e.isPopupTrigger()) {
+                        menu.show(e.getComponent(), e.getX(), e.getY());
+                    }
+                }
+            });
+    }
+
+    public int getMagnification() {
+        return magnification;
+    }
+
+    /** Show each image pixel as a magnification x magnification
+        square. Supported values are 1, 2, and 4. */
+    public void setMagnification(int magnification) {
+        if (magnification != this.magnification) {
+            this.magnification = magnification;
+            repaint();
+        }
     }
 
     @Override public void setImage(BufferedImage image) {
+        if (image != this.image) {
+            tiles = null;
+        }
         this.image = image;
         if (image != null) {
             int w = image.getWidth(null);
@@ -51,7 +104,15 @@ public class ImageZoomPane extends ImagePane {
         if (image != null) {
             int cx = getWidth()/2;
             int cy = getHeight()/2;
-            g.drawImage(image, cx-zoomX, cy-zoomY, null);
+            if (tiles == null
+                || !tiles.matches(image, getGraphicsConfiguration(), magnification)) {
+                tiles = new ZoomTiles(image, getGraphicsConfiguration(),
+                                      magnification);
+            }
+            // Center the magnified pixel (zoomX, zoomY) on (cx, cy).
+            tiles.draw(g, cx - zoomX * magnification - magnification / 2,
+                       cy - zoomY * magnification - magnification / 2,
+                       drawHere);
             if (crosshairs != null) {
                 ((Graphics2D) g).drawImage(crosshairs,
                             cx - crosshairs.getWidth(null)/2,
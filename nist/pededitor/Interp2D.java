@@ -32,9 +32,16 @@ public interface Interp2D extends TransformableParameterizable2D, Cloneable {
 
     default void transform(SlopeTransform2D xform) throws UnsolvableException {
         int size = this.size();
+        double[] xs = new double[size];
+        double[] ys = new double[size];
         for (int i = 0; i < size; ++i) {
             Point2D.Double p = get(i);
-            set(i, xform.transform(p));
+            xs[i] = p.x;
+            ys[i] = p.y;
+        }
+        xform.transform(xs, ys, size);
+        for (int i = 0; i < size; ++i) {
+            set(i, new Point2D.Double(xs[i], ys[i]));
         }
     }
 
@@ -118,10 +125,16 @@ public interface Interp2D extends TransformableParameterizable2D, Cloneable {
 
     default Point2D.Double[] transformPoints(AffineTransform xform) {
         int cnt = size();
+        double[] pts = new double[cnt * 2];
+        for (int i = 0; i < cnt; ++i) {
+            Point2D.Double p = get(i);
+            pts[2 * i] = p.x;
+            pts[2 * i + 1] = p.y;
+        }
+        xform.transform(pts, 0, pts, 0, cnt);
         Point2D.Double[] res = new Point2D.Double[cnt];
         for (int i = 0; i < cnt; ++i) {
-            res[i] = new Point2D.Double();
-            xform.transform(get(i), res[i]);
+            res[i] = new Point2D.Double(pts[2 * i], pts[2 * i + 1]);
         }
         return res;
     }
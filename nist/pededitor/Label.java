@@ -56,6 +56,12 @@ public class Label extends AnchoredTransformedShape {
     private Font font;
     transient private JLabel label = null;
     transient private Margins margins = null;
+    /** Cached HtmlToText.htmlToText(text), or null if not computed
+        yet. */
+    transient private String plainText = null;
+    /** Cached ChemicalString.embeddedFormulas(plainText), or null if
+        not computed yet. */
+    transient private ChemicalString.Match[] formulas = null;
     /** The actual string to display. (This may be HTML or something
         else as opposed to plain text.) */
     private String text;
@@ -93,6 +99,8 @@ public class Label extends AnchoredTransformedShape {
         label = other.label;
         setColor(other.getColor());
         margins = other.margins;
+        plainText = other.plainText;
+        formulas = other.formulas;
     }
 
     @Override public Label clone() {
@@ -128,6 +136,8 @@ public class Label extends AnchoredTransformedShape {
         if (text != this.text) {
             this.text = text;
             label = null;
+            plainText = null;
+            formulas = null;
         }
     }
     public void setAutoWidth(boolean v) { autoWidth = v; }
@@ -139,6 +149,26 @@ public class Label extends AnchoredTransformedShape {
 
     public String getText() { return text; }
 
+    /** Return the plain-text equivalent of getText(). The result is
+        cached until the text changes. */
+    @JsonIgnore public String getPlainText() {
+        if (plainText == null && text != null) {
+            plainText = HtmlToText.htmlToText(text);
+        }
+        return plainText;
+    }
+
+    /** Return the chemical formulas embedded in getPlainText(). The
+        result is cached until the text changes, so do not modify it. */
+    @JsonIgnore public ChemicalString.Match[] getFormulas() {
+        if (formulas == null) {
+            String s = getPlainText();
+            formulas = (s == null) ? new ChemicalString.Match[0]
+                : ChemicalString.embeddedFormulas(s);
+        }
+        return formulas;
+    }
+
     public boolean isAutoWidth() { return autoWidth; }
    /** If true, draw a box around the label. */
     public boolean isBoxed() { return boxed; }
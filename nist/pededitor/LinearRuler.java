@@ -6,15 +6,20 @@ package gov.nist.pededitor;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
+import java.awt.Shape;
 import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -314,24 +319,179 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
     }
 
     @Override public void draw(Graphics2D g, double scale) {
-        Interp2DDecoration dt = createTransformed(
-                AffineTransform.getScaleInstance(scale, scale));
+        draw(g, AffineTransform.getScaleInstance(scale, scale), 1.0);
+    }
+
+    @Override public void draw(Graphics2D g, AffineTransform xform,
+        double scale) {
+        AffineTransform xform2 = AffineTransform.getScaleInstance(scale,
+                scale);
+        xform2.concatenate(xform);
+        LinearRuler dt = createTransformed(xform2);
         dt.setLineWidth(dt.getLineWidth() * scale);
+        // The transformed copy is discarded after drawing, so lend it
+        // this ruler's layout cache and keep whatever layout it ends
+        // up using.
+        dt.layout = layout;
         dt.draw(g);
+        layout = dt.layout;
     }
-    
+
     /** Draw this ruler to the given graphics context. */
     @Override public void draw(Graphics2D g) {
         Stroke oldStroke = g.getStroke();
+        Font oldFont = g.getFont();
+        FontRenderContext frc = g.getFontRenderContext();
+        if (layout == null || !layout.matches(this, oldFont, frc)) {
+            layout = new Layout(this, g);
+        }
+        layout.draw(g);
+        g.setStroke(oldStroke);
+        g.setFont(oldFont);
+    }
+
+    /** Most recently used layout, which is reused as long as this
+        ruler, the font, and the font render context stay the same. */
+    transient Layout layout = null;
+
+    /** Everything that draw() needs, computed in advance: strokes,
+        tick mark segments, label strings and positions, and arrows.
+        Laying out a ruler requires choosing the tick spacing,
+        formatting labels, and measuring text, all of which takes much
+        longer than drawing the result. */
+    static class Layout {
+        /** Copy of the ruler this layout was computed for. */
+        final LinearRuler key;
+        final double logicalStart;
+        final double logicalEnd;
+        final Font baseFont;
+        final FontRenderContext frc;
+
+        Font font;
+        Stroke spineStroke;
+        Line2D.Double spine = null;
+        Stroke tickStroke = null;
+        ArrayList<Line2D.Double> ticks = new ArrayList<>();
+        ArrayList<LayoutLabel> labels = new ArrayList<>();
+        /** Font render context for the rotated labels. */
+        FontRenderContext labelFrc = null;
+        ArrayList<Shape> arrows = new ArrayList<>();
+
+        Layout(LinearRuler r, Graphics2D g) {
+            key = r.clone();
+            logicalStart = r.getLogicalStart();
+            logicalEnd = r.getLogicalEnd();
+            baseFont = g.getFont();
+            frc = g.getFontRenderContext();
+            r.layOut(this, g);
+        }
+
+        boolean matches(LinearRuler r, Font font, FontRenderContext frc) {
+            return key.sameLayout(r) && same(logicalStart, r.getLogicalStart())
+                && same(logicalEnd, r.getLogicalEnd())
+                && baseFont.equals(font) && this.frc.equals(frc);
+        }
+
+        void draw(Graphics2D g) {
+            g.setStroke(spineStroke);
+            if (spine != null) {
+                g.draw(spine);
+            }
+            if (tickStroke == null) {
+                return;
+            }
+            g.setStroke(tickStroke);
+            for (Line2D.Double tick: ticks) {
+                g.draw(tick);
+            }
+            if (!labels.isEmpty()) {
+                g.setFont(font);
+                AffineTransform oldTransform = g.getTransform();
+                // Pre-built glyph vectors are only worth using, and
+                // only produce the same output as drawString(), for
+                // on-screen raster output. Vector outputs such as PDF
+                // would render them as shapes instead of text.
+                boolean useGlyphs = g.getDeviceConfiguration().getDevice().getType()
+                    == GraphicsDevice.TYPE_RASTER_SCREEN;
+                for (LayoutLabel label: labels) {
+                    g.rotate(label.angle, label.anchorX, label.anchorY);
+                    if (useGlyphs) {
+                        if (label.glyphs == null) {
+                            label.glyphs = font.createGlyphVector(labelFrc, label.text);
+                        }
+                        g.drawGlyphVector(label.glyphs, label.x, label.y);
+                    } else {
+                        g.drawString(label.text, label.x, label.y);
+                    }
+                    g.setTransform(oldTransform);
+                }
+            }
+            for (Shape arrow: arrows) {
+                g.fill(arrow);
+            }
+        }
+    }
+
+    /** A label as positioned by LabelDialog.drawString(). */
+    static class LayoutLabel {
+        String text;
+        double angle;
+        double anchorX;
+        double anchorY;
+        /** Baseline position relative to the anchor, in the rotated
+            coordinate system. */
+        float x;
+        float y;
+        GlyphVector glyphs = null;
+    }
+
+    static boolean same(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    /** Return true if this ruler and other have the same values of
+        every field that affects layout, except for the axis, whose
+        effect is captured by getLogicalStart() and getLogicalEnd(). */
+    boolean sameLayout(LinearRuler other) {
+        return same(startPoint.x, other.startPoint.x)
+            && same(startPoint.y, other.startPoint.y)
+            && same(endPoint.x, other.endPoint.x)
+            && same(endPoint.y, other.endPoint.y)
+            && same(fontSize, other.fontSize)
+            && same(lineWidth, other.lineWidth)
+            && labelAnchor == other.labelAnchor
+            && same(multiplier, other.multiplier)
+            && displayLog10 == other.displayLog10
+            && same(textAngle, other.textAngle)
+            && tickRight == other.tickRight
+            && tickLeft == other.tickLeft
+            && maxBigTicks == other.maxBigTicks
+            && same(tickPadding, other.tickPadding)
+            && same(bigTickDelta, other.bigTickDelta)
+            && same(tickDelta, other.tickDelta)
+            && startArrow == other.startArrow
+            && endArrow == other.endArrow
+            && suppressStartTick == other.suppressStartTick
+            && suppressStartLabel == other.suppressStartLabel
+            && suppressEndTick == other.suppressEndTick
+            && suppressEndLabel == other.suppressEndLabel
+            && tickType == other.tickType
+            && drawSpine == other.drawSpine
+            && Objects.equals(tickStartD, other.tickStartD)
+            && Objects.equals(tickEndD, other.tickEndD);
+    }
+
+    /** Fill res with the layout of this ruler when drawn to g. */
+    void layOut(Layout res, Graphics2D g) {
         // CAP_SQUARE is not appropriate at endpoints that have arrows
         // (the arrows get ugly square noses), but it is appropriate
         // for endpoints that have no arrows, and no cap type is
         // appropriate for lines that have an arrow at just one of the
         // two ends. The solution is to use CAP_BUTT and move the
         // endpoint to simulate CAP_SQUARE when necessary.
-        g.setStroke(new BasicStroke((float) lineWidth,
-                                    BasicStroke.CAP_BUTT,
-                                    BasicStroke.JOIN_MITER));
+        res.spineStroke = new BasicStroke((float) lineWidth,
+                                          BasicStroke.CAP_BUTT,
+                                          BasicStroke.JOIN_MITER);
         
         if (drawSpine) {
             Point2D.Double vec = Geom.normalize
@@ -354,13 +514,12 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
                     pep.y += vec.y;
                 }
             }
-            g.draw(new Line2D.Double(psp, pep));
+            res.spine = new Line2D.Double(psp, pep);
         }
 
-        double start = getLogicalStart();
-        double end = getLogicalEnd();
+        double start = res.logicalStart;
+        double end = res.logicalEnd;
         if (start == end) {
-            g.setStroke(oldStroke);
             return; // Weird corner case.
         }
 
@@ -378,11 +537,11 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
         double xWeight = ws[0];
         double yWeight = ws[1];
 
-        Font oldFont = g.getFont();
-        g.setFont(oldFont.deriveFont((float) fontSize));
-        FontMetrics fm = g.getFontMetrics();
+        Font font = res.baseFont.deriveFont((float) fontSize);
+        res.font = font;
+        FontRenderContext frc = res.frc;
 
-        Rectangle2D digitBounds = fm.getStringBounds("8", g);
+        Rectangle2D digitBounds = font.getStringBounds("8", frc);
 
         double distance = startPoint.distance(endPoint);
         Point2D.Double pageDelta
@@ -424,7 +583,7 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
             longestLabel = rt2.longestString();
         }
         
-        Rectangle2D labelBounds = fm.getStringBounds("  " + longestLabel, g);
+        Rectangle2D labelBounds = font.getStringBounds("  " + longestLabel, frc);
         double padding = labelBounds.getHeight() * tickPadding;
         Rectangle2D.Double lb = new Rectangle2D.Double
             (labelBounds.getX(), labelBounds.getY(),
@@ -464,8 +623,8 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
             ? RulerTick.nextSmallerRound(bigTickD)
             : tickDelta;
 
-        g.setStroke(new BasicStroke((float) (lineWidth),
-                                    BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
+        res.tickStroke = new BasicStroke((float) (lineWidth),
+                                         BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
 
         double tickLength = lineWidth * 4;
         Point2D.Double tickOffset
@@ -501,14 +660,12 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
             tickEnd = aend;
         }
 
-        Point2D.Double tmpPoint = new Point2D.Double();
-
         /* Set suppressStartTick if startArrow is set. */
         boolean sst = startArrow || suppressStartTick;
         boolean set = endArrow || suppressEndTick;
 
         if (Math.abs(tickD) >= minTickDelta && tickD != 0 && tickStart != tickEnd) {
-            // Draw small ticks (if requested)
+            // Lay out small ticks (if requested)
 
             double smallTickEnd = tickEnd + 1e-6 * (tickEnd - tickStart);
 
@@ -521,36 +678,8 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
                     || (set && Math.abs(logical -aend) < clearDistance)) {
                     continue;
                 }
-                Point2D.Double location
-                    = toPhysical(logical, startPoint, endPoint);
-                if (tickRight) {
-                    if (tickType == TickType.V) {
-                        tmpPoint.x = location.x + tickOffset.x + tickVOffset.x;
-                        tmpPoint.y = location.y + tickOffset.y + tickVOffset.y;
-                        g.draw(new Line2D.Double(location, tmpPoint));
-                        tmpPoint.x = location.x + tickOffset.x - tickVOffset.x;
-                        tmpPoint.y = location.y + tickOffset.y - tickVOffset.y;
-                        g.draw(new Line2D.Double(location, tmpPoint));
-                    } else {
-                        tmpPoint.x = location.x + tickOffset.x;
-                        tmpPoint.y = location.y + tickOffset.y;
-                        g.draw(new Line2D.Double(location, tmpPoint));
-                    }
-                }                
-                if (tickLeft) {
-                    if (tickType == TickType.V) {
-                        tmpPoint.x = location.x - tickOffset.x - tickVOffset.x;
-                        tmpPoint.y = location.y - tickOffset.y - tickVOffset.y;
-                        g.draw(new Line2D.Double(location, tmpPoint));
-                        tmpPoint.x = location.x - tickOffset.x + tickVOffset.x;
-                        tmpPoint.y = location.y - tickOffset.y + tickVOffset.y;
-                        g.draw(new Line2D.Double(location, tmpPoint));
-                    } else {
-                        tmpPoint.x = location.x - tickOffset.x;
-                        tmpPoint.y = location.y - tickOffset.y;
-                        g.draw(new Line2D.Double(location, tmpPoint));
-                    }
-                }                
+                addTicks(res.ticks, toPhysical(logical, startPoint, endPoint),
+                         tickOffset, tickVOffset);
             }
         }
 
@@ -562,13 +691,19 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
 
 
         if (bigTickD != 0 && tickStart != tickEnd) {
-            // Draw big ticks and labels (if requested)
+            // Lay out big ticks and labels (if requested)
 
             actualTickStart = (tickStartD != null) ? tickStartD
                 : (bigTickD * Math.ceil((tickStart - 1e-6 * (aend - astart)) / bigTickD));
 
             String formatString = displayLog10 ? null : rt.formatString();
-            AffineTransform oldTransform = g.getTransform();
+            double labelAngle = theta + textAngle;
+            if (labelAnchor != LabelAnchor.NONE) {
+                AffineTransform oldTransform = g.getTransform();
+                g.rotate(labelAngle);
+                res.labelFrc = g.getFontRenderContext();
+                g.setTransform(oldTransform);
+            }
 
             double bigTickEnd = tickEnd
                 + 1e-6 * (tickEnd - tickStart);
@@ -582,35 +717,7 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
 
                 if (!((sst && Math.abs(logical - astart) < clearDistance)
                       || (set && Math.abs(logical - aend) < clearDistance))) {
-
-                    if (tickRight) {
-                        if (tickType == TickType.V) {
-                            tmpPoint.x = location.x + tickOffset.x + tickVOffset.x;
-                            tmpPoint.y = location.y + tickOffset.y + tickVOffset.y;
-                            g.draw(new Line2D.Double(location, tmpPoint));
-                            tmpPoint.x = location.x + tickOffset.x - tickVOffset.x;
-                            tmpPoint.y = location.y + tickOffset.y - tickVOffset.y;
-                            g.draw(new Line2D.Double(location, tmpPoint));
-                        } else {
-                            tmpPoint.x = location.x + tickOffset.x;
-                            tmpPoint.y = location.y + tickOffset.y;
-                            g.draw(new Line2D.Double(location, tmpPoint));
-                        }
-                    }                
-                    if (tickLeft) {
-                        if (tickType == TickType.V) {
-                            tmpPoint.x = location.x - tickOffset.x - tickVOffset.x;
-                            tmpPoint.y = location.y - tickOffset.y - tickVOffset.y;
-                            g.draw(new Line2D.Double(location, tmpPoint));
-                            tmpPoint.x = location.x - tickOffset.x + tickVOffset.x;
-                            tmpPoint.y = location.y - tickOffset.y + tickVOffset.y;
-                            g.draw(new Line2D.Double(location, tmpPoint));
-                        } else {
-                            tmpPoint.x = location.x - tickOffset.x;
-                            tmpPoint.y = location.y - tickOffset.y;
-                            g.draw(new Line2D.Double(location, tmpPoint));
-                        }
-                    }
+                    addTicks(res.ticks, location, tickOffset, tickVOffset);
                 }
 
                 if (!(labelAnchor == LabelAnchor.NONE ||
@@ -635,34 +742,76 @@ class LinearRuler implements Interp2DDecoration, SegmentInterp2D {
                         = ((labelAnchor == LabelAnchor.LEFT)
                            ? (tickLeft ? -1.0 : -1.0/3)
                            : (tickRight ? 1.0 : 1.0/3));
-                    Point2D.Double anchor = new Point2D.Double
-                        (location.x + mul * tickOffset.x,
-                         location.y + mul * tickOffset.y);
+                    LayoutLabel label = new LayoutLabel();
+                    label.angle = labelAngle;
+                    label.anchorX = location.x + mul * tickOffset.x;
+                    label.anchorY = location.y + mul * tickOffset.y;
 
-                    g.rotate(theta + textAngle, anchor.x, anchor.y);
                     String s = displayLog10
                         ? LogRulerTick.pow10String(logical)
                         : String.format(formatString, logical).trim();
-                    s = " " + ContinuedFraction.fixMinusZero(s) + " ";
-                    LabelDialog.drawString(g, s, anchor.x, anchor.y,
-                            xWeight, yWeight);
-                    g.setTransform(oldTransform);
+                    label.text = " " + ContinuedFraction.fixMinusZero(s) + " ";
+
+                    // Position the label as LabelDialog.drawString()
+                    // does.
+                    Rectangle2D bounds = font.getStringBounds(label.text, res.labelFrc);
+                    label.x = (float) (label.anchorX - bounds.getX()
+                                       - bounds.getWidth() * xWeight);
+                    label.y = (float) (label.anchorY - bounds.getY()
+                                       - bounds.getHeight() * yWeight);
+                    res.labels.add(label);
                 }
             }
         }
 
         if (startArrow) {
-            g.fill(new Arrow(startPoint.x, startPoint.y,
-                            lineWidth, theta + Math.PI).getShape());
+            res.arrows.add(new Arrow(startPoint.x, startPoint.y,
+                                     lineWidth, theta + Math.PI).getShape());
         }
 
         if (endArrow) {
-            g.fill(new Arrow(endPoint.x, endPoint.y,
-                            lineWidth, theta).getShape());
+            res.arrows.add(new Arrow(endPoint.x, endPoint.y,
+                                     lineWidth, theta).getShape());
         }
+    }
 
-        g.setStroke(oldStroke);
-        g.setFont(oldFont);
+    /** Add the tick mark or marks at location to ticks. */
+    void addTicks(List<Line2D.Double> ticks, Point2D.Double location,
+                  Point2D.Double tickOffset, Point2D.Double tickVOffset) {
+        if (tickRight) {
+            if (tickType == TickType.V) {
+                ticks.add(new Line2D.Double
+                          (location.x, location.y,
+                           location.x + tickOffset.x + tickVOffset.x,
+                           location.y + tickOffset.y + tickVOffset.y));
+                ticks.add(new Line2D.Double
+                          (location.x, location.y,
+                           location.x + tickOffset.x - tickVOffset.x,
+                           location.y + tickOffset.y - tickVOffset.y));
+            } else {
+                ticks.add(new Line2D.Double
+                          (location.x, location.y,
+                           location.x + tickOffset.x,
+                           location.y + tickOffset.y));
+            }
+        }
+        if (tickLeft) {
+            if (tickType == TickType.V) {
+                ticks.add(new Line2D.Double
+                          (location.x, location.y,
+                           location.x - tickOffset.x - tickVOffset.x,
+                           location.y - tickOffset.y - tickVOffset.y));
+                ticks.add(new Line2D.Double
+                          (location.x, location.y,
+                           location.x - tickOffset.x + tickVOffset.x,
+                           location.y - tickOffset.y + tickVOffset.y));
+            } else {
+                ticks.add(new Line2D.Double
+                          (location.x, location.y,
+                           location.x - tickOffset.x,
+                           location.y - tickOffset.y));
+            }
+        }
     }
 
     /** @return the least value t such that a second rectangle r2 that
@@ -0,0 +1,354 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/** Registry of named timers, counters and histograms for monitoring
+    where the time goes without attaching a profiler.
+
+    Metrics are collected only if the program is run with
+    -Dpededitor.metrics=true or -Dpededitor.metricsFile=<file>. In
+    that case every metric is registered as an MXBean named
+    gov.nist.pededitor:type=Metrics,name=<name>, so it can be watched
+    with jconsole or any other JMX client, and if metricsFile is set,
+    a JSON snapshot of all metrics is written to that file every
+    -Dpededitor.metricsSeconds seconds (default 60) and when the
+    program exits. When metrics are disabled, every update method
+    returns immediately, so instrumented code pays nothing beyond a
+    test of a constant.
+
+    A typical use is
+
+        static final Metrics.Timer LOAD_TIMER = Metrics.timer("diagram.load");
+        ...
+        long start = Metrics.start();
+        try {
+            ...
+        } finally {
+            LOAD_TIMER.stop(start);
+        }
+*/
+public class Metrics {
+    static final String FILE_PROPERTY = "pededitor.metricsFile";
+    static final boolean enabled = Boolean.getBoolean("pededitor.metrics")
+        || System.getProperty(FILE_PROPERTY) != null;
+
+    /** All metrics, sorted by name. */
+    static final Map<String, Metric> metrics = new TreeMap<>();
+    static ScheduledExecutorService dumper = null;
+
+    private Metrics() {
+    }
+
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    public interface HistogramMXBean extends CounterMXBean {
+        String getUnit();
+        double getTotal();
+        double getMean();
+        double getMin();
+        double getMax();
+        double getP50();
+        double getP90();
+        double getP99();
+    }
+
+    abstract static class Metric {
+        final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        /** @return the current values of this metric, for the JSON
+            dump. */
+        abstract Map<String, Object> snapshot();
+    }
+
+    /** A count of events, such as failures. */
+    public static class Counter extends Metric implements CounterMXBean {
+        final LongAdder count = new LongAdder();
+
+        Counter(String name) {
+            super(name);
+        }
+
+        public void increment() {
+            if (enabled) {
+                count.increment();
+            }
+        }
+
+        public void add(long delta) {
+            if (enabled) {
+                count.add(delta);
+            }
+        }
+
+        @Override public long getCount() {
+            return count.sum();
+        }
+
+        @Override Map<String, Object> snapshot() {
+            Map<String, Object> res = new LinkedHashMap<>();
+            res.put("type", "counter");
+            res.put("count", getCount());
+            return res;
+        }
+    }
+
+    /** The distribution of a non-negative quantity such as a size.
+        Values are counted in buckets of powers of two, so percentiles
+        are only accurate to within a factor of sqrt(2). */
+    public static class Histogram extends Metric implements HistogramMXBean {
+        final String unit;
+        /** Multiply recorded values by this to convert them to unit. */
+        final double unitScale;
+        /** buckets[i] counts values v with 64 -
+            Long.numberOfLeadingZeros(v) == i; that is, bucket 0 holds
+            0, and bucket i > 0 holds [2^(i-1), 2^i). */
+        final AtomicLongArray buckets = new AtomicLongArray(65);
+        final LongAdder count = new LongAdder();
+        final LongAdder total = new LongAdder();
+        final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        Histogram(String name, String unit, double unitScale) {
+            super(name);
+            this.unit = unit;
+            this.unitScale = unitScale;
+        }
+
+        public void record(long value) {
+            if (!enabled) {
+                return;
+            }
+            value = Math.max(0, value);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            total.add(value);
+            min.accumulateAndGet(value, Math::min);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        @Override public String getUnit() {
+            return unit;
+        }
+
+        @Override public long getCount() {
+            return count.sum();
+        }
+
+        @Override public double getTotal() {
+            return total.sum() * unitScale;
+        }
+
+        @Override public double getMean() {
+            long cnt = getCount();
+            return (cnt == 0) ? 0 : getTotal() / cnt;
+        }
+
+        @Override public double getMin() {
+            long v = min.get();
+            return (v == Long.MAX_VALUE) ? 0 : v * unitScale;
+        }
+
+        @Override public double getMax() {
+            long v = max.get();
+            return (v == Long.MIN_VALUE) ? 0 : v * unitScale;
+        }
+
+        @Override public double getP50() {
+            return percentile(0.5);
+        }
+
+        @Override public double getP90() {
+            return percentile(0.9);
+        }
+
+        @Override public double getP99() {
+            return percentile(0.99);
+        }
+
+        /** @return the geometric midpoint of the bucket that contains
+            the given fraction of the values, clamped to the observed
+            minimum and maximum. */
+        double percentile(double fraction) {
+            long cnt = 0;
+            for (int i = 0; i < buckets.length(); ++i) {
+                cnt += buckets.get(i);
+            }
+            if (cnt == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * cnt);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); ++i) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    double v = (i == 0) ? 0 : Math.scalb(Math.sqrt(2), i - 1);
+                    return Math.min(getMax(), Math.max(getMin(), v * unitScale));
+                }
+            }
+            return getMax();
+        }
+
+        @Override Map<String, Object> snapshot() {
+            Map<String, Object> res = new LinkedHashMap<>();
+            res.put("type", (this instanceof Timer) ? "timer" : "histogram");
+            res.put("unit", unit);
+            res.put("count", getCount());
+            res.put("total", getTotal());
+            res.put("mean", getMean());
+            res.put("min", getMin());
+            res.put("max", getMax());
+            res.put("p50", getP50());
+            res.put("p90", getP90());
+            res.put("p99", getP99());
+            return res;
+        }
+    }
+
+    /** A histogram of elapsed times, reported in milliseconds. */
+    public static class Timer extends Histogram {
+        Timer(String name) {
+            super(name, "ms", 1e-6);
+        }
+
+        /** Record the time elapsed since start, which should be a
+            value returned by Metrics.start(). */
+        public void stop(long start) {
+            if (enabled) {
+                record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /** @return the start time to pass to Timer.stop(), or 0 if
+        metrics are disabled. */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** @return the timer with the given name, creating it if
+        necessary. */
+    public static Timer timer(String name) {
+        return (Timer) get(name, () -> new Timer(name));
+    }
+
+    /** @return the counter with the given name, creating it if
+        necessary. */
+    public static Counter counter(String name) {
+        return (Counter) get(name, () -> new Counter(name));
+    }
+
+    /** @return the histogram with the given name, creating it if
+        necessary.
+
+        @param unit The unit of the recorded values, such as "bytes". */
+    public static Histogram histogram(String name, String unit) {
+        return (Histogram) get(name, () -> new Histogram(name, unit, 1));
+    }
+
+    interface MetricFactory {
+        Metric create();
+    }
+
+    static synchronized Metric get(String name, MetricFactory factory) {
+        Metric res = metrics.get(name);
+        if (res == null) {
+            res = factory.create();
+            metrics.put(name, res);
+            if (enabled) {
+                register(res);
+                startDumper();
+            }
+        }
+        return res;
+    }
+
+    static void register(Metric m) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean
+                (m, new ObjectName("gov.nist.pededitor:type=Metrics,name="
+                                   + ObjectName.quote(m.name)));
+        } catch (JMException x) {
+            System.err.println("Could not register metric " + m.name + ": " + x);
+        }
+    }
+
+    /** @return the current values of all metrics, keyed by name. */
+    public static synchronized Map<String, Object> snapshot() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        for (Metric m: metrics.values()) {
+            res.put(m.name, m.snapshot());
+        }
+        return res;
+    }
+
+    /** Write snapshot() to the given file as JSON. The file is
+        replaced atomically, so readers never see a partial dump. */
+    public static void dump(File file) throws IOException {
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("time", System.currentTimeMillis());
+        res.put("metrics", snapshot());
+        Path path = file.getAbsoluteFile().toPath();
+        Path temp = Files.createTempFile(path.getParent(), "tmp", ".part");
+        try {
+            new ObjectMapper().writerWithDefaultPrettyPrinter()
+                .writeValue(temp.toFile(), res);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** If a metrics file was requested, start dumping to it
+        periodically and at exit. */
+    static synchronized void startDumper() {
+        String filename = System.getProperty(FILE_PROPERTY);
+        if (dumper != null || filename == null) {
+            return;
+        }
+        File file = new File(filename);
+        long seconds = Math.max(1, Long.getLong("pededitor.metricsSeconds", 60));
+        Runnable dumpTask = () -> {
+            try {
+                dump(file);
+            } catch (IOException | RuntimeException x) {
+                System.err.println("Could not write metrics to " + file + ": " + x);
+            }
+        };
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Metrics");
+                t.setDaemon(true);
+                return t;
+            });
+        dumper.scheduleWithFixedDelay(dumpTask, seconds, seconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(dumpTask, "Metrics"));
+    }
+}
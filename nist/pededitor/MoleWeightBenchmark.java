@@ -0,0 +1,127 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/** Compare DiagramTransformer against the one-point-at-a-time
+    Diagram.serialTransformDiagram() for both correctness and speed
+    when converting diagrams between mole and weight fractions.
+
+    Usage: MoleWeightBenchmark [file.ped or directory ...]
+
+    Every diagram given (by default, the diagrams in the test
+    directory) whose components have known weights is converted from
+    mole to weight fraction both ways, and the results are compared.
+    Then each way is timed by converting the diagrams back and forth
+    repeatedly. */
+public class MoleWeightBenchmark {
+    public static void main(String[] args)
+        throws IOException, UnsolvableException {
+        if (args.length == 0) {
+            args = new String[] { "test" };
+        }
+        ArrayList<File> files = new ArrayList<>();
+        for (String arg: args) {
+            addFiles(files, new File(arg));
+        }
+
+        ArrayList<Diagram> serials = new ArrayList<>();
+        ArrayList<Diagram> bulks = new ArrayList<>();
+        int mismatches = 0;
+        int pointCnt = 0;
+        for (File file: files) {
+            Diagram serial = Diagram.loadFrom(file);
+            SideConcentrationTransform xform = serial.moleToWeightTransform();
+            if (xform == null) {
+                continue;
+            }
+            Diagram bulk = Diagram.loadFrom(file);
+            serial.serialTransformDiagram(xform, true);
+            bulk.transformDiagram(bulk.moleToWeightTransform(), true);
+            if (!serial.toJsonString().equals(bulk.toJsonString())) {
+                ++mismatches;
+                System.err.println("Mismatch: " + file);
+            }
+            serials.add(serial);
+            bulks.add(bulk);
+            pointCnt += pointCnt(bulk);
+        }
+        System.out.println(serials.size() + " diagrams checked, "
+                           + mismatches + " mismatches");
+        if (serials.isEmpty()) {
+            return;
+        }
+
+        System.out.println("Corpus: " + serials.size() + " diagrams, "
+                           + pointCnt + " points");
+        for (int round = 0; round < 3; ++round) {
+            System.out.println("Round " + (round + 1) + ":");
+            time("  serial", serials, pointCnt, false);
+            time("  bulk", bulks, pointCnt, true);
+        }
+    }
+
+    static void addFiles(ArrayList<File> files, File file) {
+        if (file.isDirectory()) {
+            File[] fs = file.listFiles();
+            if (fs != null) {
+                for (File f: fs) {
+                    if (f.isDirectory() || f.getName().endsWith(".ped")) {
+                        addFiles(files, f);
+                    }
+                }
+            }
+        } else {
+            files.add(file);
+        }
+    }
+
+    /** @return the number of points DiagramTransformer would gather
+        from d. */
+    static int pointCnt(Diagram d) {
+        int res = 0;
+        for (Decoration dec: d.getDecorations()) {
+            if (dec instanceof TransformedShape) {
+                ++res;
+            } else if (dec instanceof DecorationHasInterp2D) {
+                res += ((DecorationHasInterp2D) dec).getCurve().size();
+            } else if (dec instanceof LinearRuler) {
+                res += ((LinearRuler) dec).size();
+            }
+        }
+        return res;
+    }
+
+    /** Convert every diagram (which is currently in weight fractions)
+        back to mole fractions and then to weight fractions again,
+        repeatedly, for about a second. */
+    static void time(String name, ArrayList<Diagram> diagrams, int pointCnt,
+            boolean bulk) throws UnsolvableException {
+        long conversions = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (Diagram d: diagrams) {
+                SideConcentrationTransform m2w = d.moleToWeightTransform();
+                SideConcentrationTransform w2m = m2w.createInverse();
+                if (bulk) {
+                    d.transformDiagram(w2m, true);
+                    d.transformDiagram(m2w, true);
+                } else {
+                    d.serialTransformDiagram(w2m, true);
+                    d.serialTransformDiagram(m2w, true);
+                }
+            }
+            conversions += 2;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 1000000000L);
+        System.out.println(String.format
+                           ("%s: %.1f ms per pass, %.2f Mpoints/s", name,
+                            elapsed / 1e6 / conversions,
+                            conversions * pointCnt / (elapsed / 1e9) / 1e6));
+    }
+}
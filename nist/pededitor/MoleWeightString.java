@@ -12,6 +12,10 @@ public class MoleWeightString {
     /** Replace variants of the word "mole" or "atomic" with the
         corresponding variant of "weight". */
     public static String moleToWeight(String str) {
+        if (!str.contains("Mol") && !str.contains("mole")
+            && !str.contains("At") && !str.contains("atomic")) {
+            return str; // Nothing to replace; skip the regexes.
+        }
         return str.replace("Mole", "Weight")
             .replaceAll("\\bmole\\b", "weight")
             .replace("Mol.", "Wt.")
@@ -26,6 +30,9 @@ public class MoleWeightString {
     /** Replace variants of the word "weight" with the corresponding
         variant of "mole". */
     public static String weightToMole(String str) {
+        if (!hasWeightVariant(str)) {
+            return str;
+        }
         return str.replace("Weight", "Mole")
             .replace("weight", "mole")
             .replace("Wt.", "Mol.")
@@ -35,12 +42,22 @@ public class MoleWeightString {
     /** Replace variants of the word "weight" with the corresponding
         variant of "atomic". */
     public static String weightToAtomic(String str) {
+        if (!hasWeightVariant(str)) {
+            return str;
+        }
         return str.replace("Weight", "Atomic")
             .replace("weight", "atomic")
             .replace("Wt.", "At.")
             .replaceAll("Wt\\b", "At");
     }
 
+    /** Cheap test for whether weightToMole() or weightToAtomic()
+        could change str. */
+    static boolean hasWeightVariant(String str) {
+        return str.contains("Weight") || str.contains("weight")
+            || str.contains("Wt");
+    }
+
     static Pattern hm1 = Pattern.compile("\\bmole\\b");
     static Pattern hm2 = Pattern.compile("\\bmol\\.?\\b");
     static Pattern hw1 = Pattern.compile("\\bweight\\b");
@@ -0,0 +1,147 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014.
+ *
+ * This file uses the iText library (http://itextpdf.com) and is
+ * subject to the GNU Affero General Public License
+ * (http://www.gnu.org/licenses/agpl-3.0.html). */
+
+package gov.nist.pededitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/** On-disk cache of the one-page PDF documents that
+    DiagramPDF.toPDFByteArray() creates, so that batch conversions
+    such as PEDToPDF.combinePEDs() only render diagrams that have
+    changed since the previous run.
+
+    Each entry is a file in the cache directory named after the
+    SHA-256 hash of RENDERER_VERSION and the diagram's canonical JSON
+    representation (see Diagram.toJsonString(), which calls
+    resetIds()), so renaming or moving a PED file does not invalidate
+    its entry, but any change to its contents does. Entries are
+    written atomically, so several threads or processes may share one
+    cache directory.
+
+    A hit updates the entry's modification time, and whenever an
+    entry is added, the least recently used entries are deleted until
+    the total size of the cache is at most maxBytes. */
+public class PDFRenderCache {
+    /** Change this whenever a change to the PDF rendering code should
+        invalidate previously cached output. */
+    public static final String RENDERER_VERSION = "1";
+
+    final File dir;
+    final long maxBytes;
+    /** Approximate total size of the files in dir. */
+    long totalBytes = -1;
+
+    /** Cache in the given directory (which is created if necessary),
+        of at most maxBytes total size. */
+    public PDFRenderCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir.toPath());
+    }
+
+    /** @return the default cache: the directory named by the
+        pededitor.pdfCacheDir system property (by default, .pedpdfcache
+        in the user's home directory), limited to
+        pededitor.pdfCacheMegabytes megabytes (default 1024). */
+    public static PDFRenderCache createDefault() throws IOException {
+        String dir = System.getProperty
+            ("pededitor.pdfCacheDir",
+             new File(System.getProperty("user.home"), ".pedpdfcache").toString());
+        return new PDFRenderCache
+            (new File(dir), Long.getLong("pededitor.pdfCacheMegabytes", 1024) << 20);
+    }
+
+    /** @return the cache key for d. */
+    static String key(Diagram d) throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(RENDERER_VERSION.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(d.toJsonString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder res = new StringBuilder();
+            for (byte b: md.digest()) {
+                res.append(String.format("%02x", b));
+            }
+            return res.toString();
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    /** @return the result of DiagramPDF.toPDFByteArray(d), from the
+        cache if possible, or null if rendering failed. */
+    public byte[] toPDFByteArray(Diagram d) throws IOException {
+        Path file = new File(dir, key(d) + ".pdf").toPath();
+        try {
+            byte[] res = Files.readAllBytes(file);
+            file.toFile().setLastModified(System.currentTimeMillis());
+            return res;
+        } catch (IOException x) {
+            // Cache miss
+        }
+
+        byte[] res = DiagramPDF.toPDFByteArray(d);
+        if (res == null) {
+            return null;
+        }
+        Path temp = Files.createTempFile(dir.toPath(), "tmp", ".part");
+        try {
+            Files.write(temp, res);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        added(res.length);
+        return res;
+    }
+
+    synchronized void added(long bytes) {
+        if (totalBytes >= 0) {
+            totalBytes += bytes;
+            if (totalBytes <= maxBytes) {
+                return;
+            }
+        }
+        trim();
+    }
+
+    /** Delete least recently used entries until the cache fits. */
+    synchronized void trim() {
+        File[] files = dir.listFiles((File d, String name) -> name.endsWith(".pdf"));
+        if (files == null) {
+            return;
+        }
+        ArrayList<File> entries = new ArrayList<>();
+        long total = 0;
+        for (File f: files) {
+            total += f.length();
+            entries.add(f);
+        }
+        if (total > maxBytes) {
+            entries.sort(Comparator.comparingLong(File::lastModified));
+            for (File f: entries) {
+                if (total <= maxBytes) {
+                    break;
+                }
+                long len = f.length();
+                if (f.delete()) {
+                    total -= len;
+                }
+            }
+        }
+        totalBytes = total;
+    }
+}
@@ -0,0 +1,169 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/** Headless import and export of diagram coordinates in the format
+    used by the editor's Import and Export commands, expressed in
+    terms of the diagram's X and Y axes (as percentages for
+    percentage axes). Input and output are streamed, so data sets too
+    large for the clipboard can be handled quickly. */
+public class PEDCoordinates {
+
+    static void help() {
+        System.err.println
+            ("Usage:\n\n"
+             + "    java -cp PEDEditor.jar gov.nist.pededitor.PEDCoordinates -export\n"
+             + "        [-sigfigs <n>] [-nocomments] [-progress] <PED file> [<text file>]\n"
+             + "        Write the coordinates of all labels and curves to the text\n"
+             + "        file, or to standard output.\n\n"
+             + "         or\n\n"
+             + "    java -cp PEDEditor.jar gov.nist.pededitor.PEDCoordinates -import\n"
+             + "        [-progress] <PED file> <text file> <output PED file>\n"
+             + "        Add each group of x,y lines in the text file to the diagram\n"
+             + "        as a new solid curve, and save the result.");
+        System.exit(1);
+    }
+
+    /** @return a progress reporter that prints the percentage
+        complete to System.err. */
+    static CoordinateProgress progress(long total) {
+        long t = Math.max(1, total);
+        return done -> {
+            System.err.print("\r" + Math.min(100, done * 100 / t) + "%");
+            return true;
+        };
+    }
+
+    static DoubleUnaryOperator exportFunction(LinearAxis axis) {
+        return axis.isPercentage() ? StandardDoubleUnaryOperator.TO_PERCENT
+            : StandardDoubleUnaryOperator.IDENTITY;
+    }
+
+    static DoubleUnaryOperator importFunction(LinearAxis axis) {
+        return axis.isPercentage() ? StandardDoubleUnaryOperator.FROM_PERCENT
+            : StandardDoubleUnaryOperator.IDENTITY;
+    }
+
+    public static void export(File ped, File out, int sigFigs, boolean addComments,
+                              boolean showProgress) throws IOException {
+        Diagram d = Diagram.loadFrom(ped);
+        LinearAxis x = d.getXAxis();
+        LinearAxis y = d.getYAxis();
+        CoordinateWriter coords = d.allCoordinates
+            (x, exportFunction(x), y, exportFunction(y), addComments);
+        CoordinateProgress progress = showProgress
+            ? progress(coords.getPointCount()) : null;
+        if (out == null) {
+            Writer w = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            coords.write(w, sigFigs, progress);
+        } else {
+            try (Writer w = new OutputStreamWriter
+                 (new FileOutputStream(out), StandardCharsets.UTF_8)) {
+                    coords.write(w, sigFigs, progress);
+                }
+        }
+        if (showProgress) {
+            System.err.println();
+        }
+    }
+
+    /** @return the number of curves added. */
+    public static int importCurves(File ped, File in, File out, boolean showProgress)
+        throws IOException {
+        Diagram d = Diagram.loadFrom(ped);
+        Point2D.Double[][] curves;
+        try (Reader r = new InputStreamReader
+             (new FileInputStream(in), StandardCharsets.UTF_8)) {
+                curves = CoordinateReader.readCurves
+                    (r, showProgress ? progress(in.length()) : null);
+            }
+        if (showProgress) {
+            System.err.println();
+        }
+
+        LinearAxis x = d.getXAxis();
+        LinearAxis y = d.getYAxis();
+        DoubleUnaryOperator fx = importFunction(x);
+        DoubleUnaryOperator fy = importFunction(y);
+        Affine xformi;
+        try {
+            xformi = d.inverseTransform(x, y);
+        } catch (NoninvertibleTransformException e) {
+            throw new IllegalStateException(e); // Will never happen
+        }
+        for (Point2D.Double[] curve: curves) {
+            for (Point2D.Double p: curve) {
+                p.setLocation(fx.applyAsDouble(p.x), fy.applyAsDouble(p.y));
+                xformi.transform(p, p);
+            }
+            d.addDecoration(new CuspDecoration
+                            (new CuspInterp2D(Arrays.asList(curve), false, false),
+                             StandardStroke.SOLID, Diagram.STANDARD_LINE_WIDTH));
+        }
+        d.saveAsPED(Paths.get(out.getPath()), false);
+        return curves.length;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            help();
+        }
+        boolean isExport = "-export".equals(args[0]);
+        if (!isExport && !"-import".equals(args[0])) {
+            help();
+        }
+
+        int sigFigs = 6;
+        boolean addComments = true;
+        boolean showProgress = false;
+        int i = 1;
+        for (; i < args.length && args[i].startsWith("-"); ++i) {
+            if (isExport && "-sigfigs".equals(args[i]) && i + 1 < args.length) {
+                sigFigs = Integer.parseInt(args[++i]);
+            } else if (isExport && "-nocomments".equals(args[i])) {
+                addComments = false;
+            } else if ("-progress".equals(args[i])) {
+                showProgress = true;
+            } else {
+                help();
+            }
+        }
+        int cnt = args.length - i;
+
+        try {
+            if (isExport) {
+                if (cnt < 1 || cnt > 2) {
+                    help();
+                }
+                export(new File(args[i]), (cnt == 2) ? new File(args[i + 1]) : null,
+                       sigFigs, addComments, showProgress);
+            } else {
+                if (cnt != 3) {
+                    help();
+                }
+                int curveCnt = importCurves(new File(args[i]), new File(args[i + 1]),
+                                            new File(args[i + 2]), showProgress);
+                System.err.println("Added " + curveCnt + " curve(s).");
+            }
+        } catch (IOException | NumberFormatException x) {
+            System.err.println(x);
+            System.exit(2);
+        }
+    }
+}
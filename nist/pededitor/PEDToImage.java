@@ -25,7 +25,9 @@ public class PEDToImage {
              + "           -nomargin: Omit margins from PDF file\n\n"
              + "         or\n\n"
              + "    java -jar PEDToImage.jar <PED file> <image file> <width> <height>\n\n"
-             + "Supported image formats include GIF, JPEG, and PNG.");
+             + "Supported image formats include GIF, JPEG, PNG, and SVG.\n\n"
+             + "To convert many files in one JVM, use PEDToImageServer. To start\n"
+             + "faster, generate a class-data sharing archive with cds.sh.");
         System.exit(1);
     }
 
@@ -51,6 +53,7 @@ public class PEDToImage {
         }
 
         boolean isPDF = ext.equalsIgnoreCase("pdf");
+        boolean isSVG = ext.equalsIgnoreCase("svg");
 
         if (isPDF) {
             Document doc = new Document(PageSize.LETTER);
@@ -83,7 +86,7 @@ public class PEDToImage {
             help();
         }
 
-        if (!isPDF) {
+        if (!isSVG) {
             String[] imageExts = ImageIO.getReaderFileSuffixes();
 
             boolean foundMatch = false;
@@ -124,7 +127,11 @@ public class PEDToImage {
         }
 
         try {
-            d.saveAsImage(ofh, ext, width, height);
+            if (isSVG) {
+                d.saveAsSVG(ofh, width, height);
+            } else {
+                d.saveAsImage(ofh, ext, width, height);
+            }
         } catch (IOException x) {
             throw new IllegalArgumentException
                 ("Invalid output file '" + args[1] + "': " + x);
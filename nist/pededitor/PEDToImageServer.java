@@ -0,0 +1,265 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+/** Convert a stream of PED files to GIF, JPEG, or PNG images within a
+    single long-lived JVM, so the cost of JVM startup, class loading,
+    and JIT warm-up is paid once rather than once per image.
+
+    Each job is one line of the form
+
+        <PED file> <image file> <width> <height> [<format>]
+
+    Fields are separated by tabs if the line contains any tabs (so
+    paths may contain spaces) and by whitespace otherwise. The format
+    may be any that ImageIO supports, or "svg" for vector output, and
+    defaults to the image file's extension. As with PEDToImage, the
+    image is the largest one with the diagram's proportions that fits
+    within width x height.
+
+    Jobs are read from standard input, or, if -port is given, from any
+    number of connections to that port on the loopback interface. Jobs
+    run concurrently on a fixed pool of threads. Each thread keeps its
+    own supersampling buffers, which are reused whenever consecutive
+    jobs need the same size. For every job, one line is written back
+    (to standard output or the same connection) as each job
+    finishes, so the order may differ from the order of the jobs:
+
+        ok <image file> <width>x<height> load=<ms> render=<ms> scale=<ms> write=<ms> total=<ms>
+        error <image file> <message>
+
+    Usage: PEDToImageServer [-threads <count>] [-port <port>] */
+public class PEDToImageServer {
+    final ExecutorService pool;
+
+    /** Per-thread supersampling buffers, one per image type. */
+    static class Buffers {
+        BufferedImage rgb;
+        BufferedImage argb;
+
+        /** @return a cleared image of the given size and type,
+            reusing the previous one if possible. */
+        BufferedImage get(int width, int height, int imageType) {
+            BufferedImage im = (imageType == BufferedImage.TYPE_INT_ARGB)
+                ? argb : rgb;
+            if (im == null || im.getWidth() != width
+                || im.getHeight() != height) {
+                im = new BufferedImage(width, height, imageType);
+                if (imageType == BufferedImage.TYPE_INT_ARGB) {
+                    argb = im;
+                } else {
+                    rgb = im;
+                }
+            } else {
+                Arrays.fill(((DataBufferInt) im.getRaster().getDataBuffer())
+                            .getData(), 0);
+            }
+            return im;
+        }
+    }
+
+    static final ThreadLocal<Buffers> buffers
+        = ThreadLocal.withInitial(Buffers::new);
+
+    public PEDToImageServer(int threadCnt) {
+        pool = Executors.newFixedThreadPool(threadCnt, r -> {
+                Thread t = new Thread(r, "PEDToImageServer");
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    static void help() {
+        System.err.println
+            ("Usage: java -cp PEDToImage.jar gov.nist.pededitor.PEDToImageServer\n"
+             + "           [-threads <count>] [-port <port>]\n\n"
+             + "Then send one job per line:\n\n"
+             + "    <PED file> <image file> <width> <height> [<format>]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        int threadCnt = Runtime.getRuntime().availableProcessors();
+        int port = -1;
+        for (int i = 0; i < args.length; ++i) {
+            if (i + 1 == args.length) {
+                help();
+            }
+            try {
+                if ("-threads".equals(args[i])) {
+                    threadCnt = Integer.parseInt(args[++i]);
+                } else if ("-port".equals(args[i])) {
+                    port = Integer.parseInt(args[++i]);
+                } else {
+                    help();
+                }
+            } catch (NumberFormatException x) {
+                help();
+            }
+        }
+
+        PEDToImageServer server = new PEDToImageServer(threadCnt);
+        if (port < 0) {
+            server.serve(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+                         new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            return;
+        }
+
+        try (ServerSocket ss = new ServerSocket
+             (port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + ss.getLocalSocketAddress());
+            while (true) {
+                Socket s = ss.accept();
+                Thread t = new Thread(() -> {
+                        try (Socket s2 = s) {
+                            server.serve
+                                (new InputStreamReader
+                                 (s2.getInputStream(), StandardCharsets.UTF_8),
+                                 new OutputStreamWriter
+                                 (s2.getOutputStream(), StandardCharsets.UTF_8));
+                        } catch (IOException x) {
+                            System.err.println("Connection failed: " + x);
+                        }
+                    }, "PEDToImageServer connection");
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    /** Read jobs from in until end of input, and write one result
+        line per job to out. Return after all jobs have finished. */
+    public void serve(Reader in, Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        PrintWriter writer = new PrintWriter(out, true);
+        ArrayList<Future<?>> jobs = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String job = line;
+            jobs.add(pool.submit(() -> {
+                        String res = run(job);
+                        synchronized (writer) {
+                            writer.println(res);
+                        }
+                    }));
+        }
+        for (Future<?> f: jobs) {
+            try {
+                f.get();
+            } catch (Exception x) {
+                // run() never throws, so this should not happen.
+                synchronized (writer) {
+                    writer.println("error - " + x);
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    /** Perform the given job, and return the line that reports its
+        outcome. */
+    static String run(String job) {
+        String[] fields = job.contains("\t") ? job.split("\t")
+            : job.trim().split("\\s+");
+        String ofn = (fields.length >= 2) ? fields[1] : "-";
+        try {
+            if (fields.length < 4 || fields.length > 5) {
+                throw new IllegalArgumentException
+                    ("Expected <PED file> <image file> <width> <height> [<format>]");
+            }
+            String format = (fields.length == 5) ? fields[4]
+                : Stuff.getExtension(ofn);
+            if (format == null) {
+                throw new IllegalArgumentException("Missing image format");
+            }
+            int width, height;
+            try {
+                width = Integer.parseInt(fields[2]);
+                height = Integer.parseInt(fields[3]);
+            } catch (NumberFormatException x) {
+                throw new IllegalArgumentException
+                    ("Invalid size " + fields[2] + " x " + fields[3]);
+            }
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException
+                    ("Invalid size " + width + " x " + height);
+            }
+
+            long t0 = System.nanoTime();
+            Diagram d = Diagram.loadFrom(new File(fields[0]));
+            long t1 = System.nanoTime();
+
+            if ("svg".equalsIgnoreCase(format)) {
+                // Vector output is written while it is painted, so
+                // render and write times are not separable.
+                d.saveAsSVG(new File(ofn), width, height);
+                long t2 = System.nanoTime();
+                Dimension size = d.bestFitSize(width, height);
+                return String.format
+                    ("ok %s %dx%d load=%.1f render=%.1f scale=0.0 write=0.0 total=%.1f",
+                     ofn, size.width, size.height, (t1 - t0) / 1e6,
+                     (t2 - t1) / 1e6, (t2 - t0) / 1e6);
+            }
+
+            int flags = d.drawFlags();
+            Dimension size = d.bestFitSize(width, height);
+            int scale = Diagram.supersampleScale(size.width, size.height);
+            int imageType = ((flags & Diagram.FLAG_TRANSPARENT) != 0)
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+            BufferedImage im = buffers.get().get
+                (size.width * scale, size.height * scale, imageType);
+            d.paintImage(im, flags);
+            long t2 = System.nanoTime();
+
+            if (scale > 1) {
+                im = ScaleImage.downscale(im, scale);
+            }
+            long t3 = System.nanoTime();
+
+            if (!ImageIO.write(im, format, new File(ofn))) {
+                throw new IllegalArgumentException
+                    ("Unsupported image format '" + format + "'");
+            }
+            long t4 = System.nanoTime();
+            return String.format
+                ("ok %s %dx%d load=%.1f render=%.1f scale=%.1f write=%.1f total=%.1f",
+                 ofn, size.width, size.height, (t1 - t0) / 1e6,
+                 (t2 - t1) / 1e6, (t3 - t2) / 1e6, (t4 - t3) / 1e6,
+                 (t4 - t0) / 1e6);
+        } catch (Exception | OutOfMemoryError x) {
+            String msg = x.getMessage();
+            return "error " + ofn + " "
+                + ((msg == null) ? x.toString() : msg.replace('\n', ' '));
+        }
+    }
+}
@@ -17,13 +17,20 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.JOptionPane;
 
 import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.PageSize;
 import com.itextpdf.text.pdf.BadPdfFormatException;
 import com.itextpdf.text.pdf.PdfCopy;
@@ -34,6 +41,26 @@ public class PEDToPDF {
     public final static String PED_DIR = "/ebdata/ped";
     public final static String PED_DIR2 = "/ebdata/pedw";
 
+    /** If not null, batch conversions reuse unchanged diagrams' pages
+        from this cache instead of rendering them again. */
+    static PDFRenderCache renderCache = null;
+
+    /** Use the default PDFRenderCache for batch conversions. */
+    static void useDefaultRenderCache() {
+        try {
+            renderCache = PDFRenderCache.createDefault();
+        } catch (IOException x) {
+            System.err.println("PDF cache disabled: " + x);
+        }
+    }
+
+    /** Like DiagramPDF.toPDFByteArray(d), but use renderCache if it
+        is set. */
+    static byte[] toPDFByteArray(Diagram d) throws IOException {
+        return (renderCache == null) ? DiagramPDF.toPDFByteArray(d)
+            : renderCache.toPDFByteArray(d);
+    }
+
     /** Load the PED file with the given filename, crop it, guess
         diagram components, remove the x3 and y3 keys (which are used
         to guess diagram components). */
@@ -128,7 +155,7 @@ public class PEDToPDF {
             try {
                 Diagram d = loadAndFix(filename, true);
                 copy.addPage(copy.getImportedPage
-                             (new PdfReader(DiagramPDF.toPDFByteArray(d)),
+                             (new PdfReader(toPDFByteArray(d)),
                               1));
                 int pedpos = filename.indexOf("\\ped\\");
                 String pedout = filename.substring(0, pedpos) + "\\ped2\\"
@@ -143,6 +170,98 @@ public class PEDToPDF {
         doc.close();
     }
 
+    /** A diagram that a worker thread is converting to a one-page
+        PDF. */
+    static class PageJob {
+        String filename;
+        Future<byte[]> pdf;
+    }
+
+    /** Combine the given PED files into a single PDF file with one
+        page per diagram, like combinePEDs(), but convert the diagrams
+        in parallel.
+
+        Everything in a PdfWriter is sequential, so each worker thread
+        converts a diagram into an independent one-page PDF document
+        of its own using toPDFByteArray() (which consults renderCache
+        if it is set), while this thread imports the finished pages
+        into the output file in their original order. At most 2 * threadCnt diagrams are in
+        progress or waiting to be written at any one time, and each
+        page's reader is released once the page is written, so memory
+        use does not grow with the number of diagrams.
+
+        Files that cannot be converted are reported to standard error
+        and skipped.
+
+        @param fix If true, load files with loadAndFix(filename, true)
+        instead of Diagram.loadFrom().
+
+        @return the number of pages written. */
+    public static int combinePEDsInParallel(List<String> peds, String ofn,
+            int threadCnt, boolean fix) throws IOException {
+        Document doc = new Document(PageSize.LETTER);
+        PdfCopy copy;
+        try {
+            copy = new PdfCopy(doc, new FileOutputStream(ofn));
+        } catch (DocumentException x) {
+            throw new IOException(x);
+        }
+        doc.open();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threadCnt, r -> {
+                Thread t = new Thread(r, "PEDToPDF");
+                t.setDaemon(true);
+                return t;
+            });
+        ArrayDeque<PageJob> window = new ArrayDeque<>();
+        Iterator<String> it = peds.iterator();
+        int pageCnt = 0;
+        try {
+            while (it.hasNext() || !window.isEmpty()) {
+                while (it.hasNext() && window.size() < 2 * threadCnt) {
+                    PageJob job = new PageJob();
+                    String filename = it.next();
+                    job.filename = filename;
+                    job.pdf = pool.submit(() -> {
+                            Diagram d = fix ? loadAndFix(filename, true)
+                                : Diagram.loadFrom(new File(filename));
+                            return toPDFByteArray(d);
+                        });
+                    window.add(job);
+                }
+
+                PageJob job = window.remove();
+                try {
+                    byte[] bytes = job.pdf.get();
+                    if (bytes == null) {
+                        throw new IOException("PDF conversion failed");
+                    }
+                    PdfReader reader = new PdfReader(bytes);
+                    copy.addPage(copy.getImportedPage(reader, 1));
+                    copy.freeReader(reader);
+                    reader.close();
+                    ++pageCnt;
+                } catch (ExecutionException x) {
+                    System.err.println(job.filename + ": " + x.getCause());
+                } catch (IOException | BadPdfFormatException x) {
+                    System.err.println(job.filename + ": " + x);
+                }
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", x);
+        } finally {
+            pool.shutdownNow();
+            if (pageCnt > 0) {
+                doc.close();
+            } else {
+                // iText refuses to close a document with no pages.
+                copy.close();
+            }
+        }
+        return pageCnt;
+    }
+
     public static void loadAndSave(String filename, String outdir) {
         try {
             Diagram d = loadAndFix(filename, false);
@@ -160,6 +279,7 @@ public class PEDToPDF {
     public static void convertAll() {
         try {
             List<String> peds = getInputFilenames(PED_DIR);
+            useDefaultRenderCache();
             // int i = peds.indexOf("\\eb\\ped\\13125.ped");
             // peds = peds.subList(i+1, peds.size());
             combinePEDs(peds, 100);
@@ -241,7 +361,53 @@ public class PEDToPDF {
         convertAll2();
     }
 
+    static void combineMain(String[] args) {
+        int threadCnt = Runtime.getRuntime().availableProcessors();
+        boolean fix = false;
+        String ofn = null;
+        ArrayList<String> peds = new ArrayList<>();
+        try {
+            for (int i = 1; i < args.length; ++i) {
+                if ("-threads".equals(args[i]) && i + 1 < args.length) {
+                    threadCnt = Integer.parseInt(args[++i]);
+                } else if ("-fix".equals(args[i])) {
+                    fix = true;
+                } else if ("-cache".equals(args[i])) {
+                    useDefaultRenderCache();
+                } else if (ofn == null) {
+                    ofn = args[i];
+                } else if (new File(args[i]).isDirectory()) {
+                    peds.addAll(getInputFilenames(args[i]));
+                } else {
+                    peds.add(args[i]);
+                }
+            }
+            if (ofn == null || peds.isEmpty() || threadCnt <= 0) {
+                System.err.println
+                    ("Usage: PEDToPDF -combine [-threads <count>] [-fix] [-cache] "
+                     + "<PDF file> <PED files or directories...>");
+                System.exit(1);
+            }
+            long start = System.nanoTime();
+            int pageCnt = combinePEDsInParallel(peds, ofn, threadCnt, fix);
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format
+                               ("%d of %d diagrams -> %s in %.1f s (%.1f pages/s)",
+                                pageCnt, peds.size(), ofn, secs, pageCnt / secs));
+        } catch (IOException | NumberFormatException x) {
+            System.err.println(x);
+            System.exit(2);
+        }
+    }
+
+    /** With -combine as the first argument, combine many PED files
+        into one PDF file using combinePEDsInParallel(); otherwise, see
+        oldMain(). */
     public static void main(String[] args) {
+        if (args.length > 0 && "-combine".equals(args[0])) {
+            combineMain(args);
+            return;
+        }
         oldMain(args);
     }
 }
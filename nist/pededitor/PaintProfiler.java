@@ -0,0 +1,191 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Measure how long each decoration takes to paint in the edit
+    window, and display the results in an overlay in the corner of
+    the window: the total frame time, the time per decoration type,
+    the hit rate of the cache of scaled background images, and the
+    slowest individual decorations. Clicking on one of the slowest
+    decorations in the overlay selects it. */
+class PaintProfiler {
+    /** Number of slowest decorations to list. */
+    static final int TOP_N = 5;
+    /** Weight of the latest frame in the running averages. */
+    static final double SMOOTHING = 0.2;
+
+    static class Entry {
+        Decoration decoration;
+        long nanos;
+
+        Entry(Decoration decoration, long nanos) {
+            this.decoration = decoration;
+            this.nanos = nanos;
+        }
+    }
+
+    long frameStart;
+    long frameNanos = 0;
+    /** Running average of frameNanos, in milliseconds. */
+    double averageFrameMillis = Double.NaN;
+    /** Time spent on each decoration type during the current frame. */
+    Map<String, Long> typeNanos = new TreeMap<>();
+    /** Running average of the time spent on each decoration type, in
+        milliseconds. */
+    Map<String, Double> averageTypeMillis = new TreeMap<>();
+    /** The slowest decorations of the current frame, slowest first. */
+    ArrayList<Entry> slowest = new ArrayList<>();
+    /** The slowest decorations of the last complete frame. */
+    ArrayList<Entry> lastSlowest = new ArrayList<>();
+    /** Where lastSlowest was listed in the overlay, for decorationAt(). */
+    ArrayList<Rectangle> slowestBounds = new ArrayList<>();
+    /** Image cache statistics when profiling started. */
+    final long startCacheHits = CroppedTransformedImage.cacheHits.get();
+    final long startCacheMisses = CroppedTransformedImage.cacheMisses.get();
+
+    void beginFrame() {
+        typeNanos.clear();
+        slowest.clear();
+        frameStart = System.nanoTime();
+    }
+
+    /** Record that drawing d took the given number of nanoseconds. */
+    void record(Decoration d, long nanos) {
+        typeNanos.merge(typeName(d), nanos, Long::sum);
+        int i = slowest.size();
+        while (i > 0 && slowest.get(i - 1).nanos < nanos) {
+            --i;
+        }
+        if (i < TOP_N) {
+            slowest.add(i, new Entry(d, nanos));
+            if (slowest.size() > TOP_N) {
+                slowest.remove(TOP_N);
+            }
+        }
+    }
+
+    void endFrame() {
+        frameNanos = System.nanoTime() - frameStart;
+        averageFrameMillis = average(averageFrameMillis, frameNanos / 1e6);
+        for (Map.Entry<String, Double> e: averageTypeMillis.entrySet()) {
+            if (!typeNanos.containsKey(e.getKey())) {
+                e.setValue(average(e.getValue(), 0));
+            }
+        }
+        for (Map.Entry<String, Long> e: typeNanos.entrySet()) {
+            averageTypeMillis.merge(e.getKey(), e.getValue() / 1e6,
+                                    (a, b) -> average(a, b));
+        }
+        lastSlowest = new ArrayList<>(slowest);
+    }
+
+    static double average(double old, double latest) {
+        return Double.isNaN(old) ? latest
+            : old + (latest - old) * SMOOTHING;
+    }
+
+    /** @return the name under which to group d's time. Filled and
+        unfilled curves are listed separately, because filling is
+        often much slower than stroking. */
+    static String typeName(Decoration d) {
+        String res = d.typeName();
+        if (d instanceof Interp2DDecoration
+            && ((Interp2DDecoration) d).getFill() != null) {
+            res += " (filled)";
+        }
+        return res;
+    }
+
+    static String describe(Decoration d) {
+        if (d instanceof Label) {
+            String text = ((Label) d).getText();
+            if (text.length() > 20) {
+                text = text.substring(0, 20) + "...";
+            }
+            return "Label '" + text + "'";
+        }
+        return typeName(d);
+    }
+
+    /** Draw the overlay in the upper left corner of the given
+        visible region. */
+    void paint(Graphics2D g, Rectangle visible) {
+        Font oldFont = g.getFont();
+        Color oldColor = g.getColor();
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        FontMetrics fm = g.getFontMetrics();
+
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add(String.format("Frame %7.2f ms  (avg %7.2f)",
+                                frameNanos / 1e6, averageFrameMillis));
+        for (Map.Entry<String, Double> e: averageTypeMillis.entrySet()) {
+            Long nanos = typeNanos.get(e.getKey());
+            lines.add(String.format("  %-16s %7.2f ms  (avg %7.2f)",
+                                    e.getKey(), (nanos == null) ? 0 : nanos / 1e6,
+                                    e.getValue()));
+        }
+        long hits = CroppedTransformedImage.cacheHits.get() - startCacheHits;
+        long misses = CroppedTransformedImage.cacheMisses.get() - startCacheMisses;
+        lines.add((hits + misses == 0) ? "Image cache: no lookups"
+                  : String.format("Image cache: %d/%d hits (%.0f%%)",
+                                  hits, hits + misses,
+                                  100.0 * hits / (hits + misses)));
+        int firstSlowLine = -1;
+        if (!lastSlowest.isEmpty()) {
+            lines.add("Slowest (click to select):");
+            firstSlowLine = lines.size();
+            for (Entry e: lastSlowest) {
+                lines.add(String.format("  %7.2f ms  %s", e.nanos / 1e6,
+                                        describe(e.decoration)));
+            }
+        }
+
+        int lineHeight = fm.getHeight();
+        int width = 0;
+        for (String line: lines) {
+            width = Math.max(width, fm.stringWidth(line));
+        }
+        int margin = 4;
+        int x = visible.x + margin;
+        int y = visible.y + margin;
+        g.setColor(new Color(255, 255, 224, 224));
+        g.fillRect(x, y, width + 2 * margin, lines.size() * lineHeight + 2 * margin);
+        g.setColor(Color.DARK_GRAY);
+        g.drawRect(x, y, width + 2 * margin, lines.size() * lineHeight + 2 * margin);
+
+        slowestBounds.clear();
+        for (int i = 0; i < lines.size(); ++i) {
+            int top = y + margin + i * lineHeight;
+            boolean slow = firstSlowLine >= 0 && i >= firstSlowLine;
+            g.setColor(slow ? Color.BLUE : Color.BLACK);
+            g.drawString(lines.get(i), x + margin, top + fm.getAscent());
+            if (slow) {
+                slowestBounds.add(new Rectangle(x, top, width + 2 * margin, lineHeight));
+            }
+        }
+        g.setFont(oldFont);
+        g.setColor(oldColor);
+    }
+
+    /** @return the decoration listed at the given point in the
+        overlay, or null if there is none. */
+    Decoration decorationAt(Point p) {
+        for (int i = 0; i < slowestBounds.size() && i < lastSlowest.size(); ++i) {
+            if (slowestBounds.get(i).contains(p)) {
+                return lastSlowest.get(i).decoration;
+            }
+        }
+        return null;
+    }
+}
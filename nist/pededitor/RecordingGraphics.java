@@ -0,0 +1,721 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.RenderingHints.Key;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RectangularShape;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+
+/** Graphics2D that records everything drawn to it in a display list
+    that can later be replayed into any number of other Graphics2D
+    objects, such as the screen, a printer, a BufferedImage, or a PDF
+    document. Recording a diagram paint once and replaying it lets
+    several targets share the work of laying out labels and rulers
+    and computing curves.
+
+    Like MeteredGraphics, this delegates all state (transform, clip,
+    paint, stroke, font, and so on) to a graphics context for a 1x1
+    image. Each display list item holds the shape, string, glyph
+    vector or image that was drawn, plus a snapshot of that state,
+    which consecutive items share until the state changes. Strings
+    are recorded as strings, not outlines, so that vector targets such
+    as PDF still receive text.
+
+    Images and other objects passed to the drawing methods are
+    recorded by reference, so they must not be modified afterwards.
+    Content whose best rendering depends on the output resolution,
+    such as a scanned image that is resampled to fit, can instead be
+    recorded with recordDeferred(), which paints it at replay time.
+    Replaying is thread-safe as long as recording has finished and
+    the deferred items, if any, are thread-safe. */
+public class RecordingGraphics extends Graphics2D {
+    /** One drawing operation. */
+    @FunctionalInterface interface Op {
+        void paint(Graphics2D g);
+    }
+
+    /** An item that is painted when the display list is replayed. */
+    @FunctionalInterface public interface Deferred {
+        /** @param g The replay target, with the recorded state
+            applied.
+
+            @param magnification The factor by which this replay
+            enlarges the recording. */
+        void paint(Graphics2D g, double magnification);
+    }
+
+    static final class DeferredOp implements Op {
+        final Deferred deferred;
+
+        DeferredOp(Deferred deferred) {
+            this.deferred = deferred;
+        }
+
+        @Override public void paint(Graphics2D g) {
+            deferred.paint(g, 1);
+        }
+    }
+
+    /** The graphics state that applies to a display list item. */
+    static final class State {
+        AffineTransform transform;
+        /** The clip in device coordinates, or null for none. */
+        Shape clip;
+        Paint paint;
+        Color background;
+        Stroke stroke;
+        Font font;
+        Composite composite;
+        /** Non-null if the item was drawn in XOR mode. */
+        Color xorColor;
+        RenderingHints hints;
+    }
+
+    /** The display list, which is shared with the graphics contexts
+        returned by create(). */
+    static final class DisplayList {
+        final ArrayList<State> states = new ArrayList<>();
+        final ArrayList<Op> ops = new ArrayList<>();
+    }
+
+    final DisplayList list;
+    Graphics2D g;
+    /** State of the most recently recorded item, or null if the state
+        has changed since then. */
+    State state = null;
+    Color xorColor = null;
+
+    public RecordingGraphics() {
+        list = new DisplayList();
+        g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+    }
+
+    RecordingGraphics(RecordingGraphics orig) {
+        list = orig.list;
+        g = (Graphics2D) orig.g.create();
+        xorColor = orig.xorColor;
+    }
+
+    /** Append op to the display list. */
+    void record(Op op) {
+        if (state == null) {
+            State s = new State();
+            s.transform = g.getTransform();
+            s.clip = deviceClip(g.getClip(), s.transform);
+            s.paint = g.getPaint();
+            s.background = g.getBackground();
+            s.stroke = g.getStroke();
+            s.font = g.getFont();
+            s.composite = g.getComposite();
+            s.xorColor = xorColor;
+            s.hints = (RenderingHints) g.getRenderingHints().clone();
+            state = s;
+        }
+        synchronized (list) {
+            list.states.add(state);
+            list.ops.add(op);
+        }
+    }
+
+    /** @return clip transformed to device coordinates. Rectangles
+        that are only scaled and translated stay rectangles, which
+        Java2D intersects and clips to much faster than general
+        shapes. */
+    static Shape deviceClip(Shape clip, AffineTransform xform) {
+        if (clip == null) {
+            return null;
+        }
+        if (clip instanceof Rectangle2D
+            && (xform.getType() & ~(AffineTransform.TYPE_TRANSLATION
+                                    | AffineTransform.TYPE_MASK_SCALE)) == 0) {
+            Rectangle2D r = (Rectangle2D) clip;
+            double[] corners = { r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY() };
+            xform.transform(corners, 0, corners, 0, 2);
+            Rectangle2D.Double res = new Rectangle2D.Double();
+            res.setFrameFromDiagonal(corners[0], corners[1], corners[2], corners[3]);
+            return res;
+        }
+        return xform.createTransformedShape(clip);
+    }
+
+    /** Append an item that is painted by calling d each time the
+        display list is replayed. d is called with a copy of the
+        replay target that it may modify freely. */
+    public void recordDeferred(Deferred d) {
+        record(new DeferredOp(d));
+    }
+
+    /** @return the number of items in the display list. */
+    public int size() {
+        synchronized (list) {
+            return list.ops.size();
+        }
+    }
+
+    /** Draw the display list to target. Target's own transform and
+        clip at the time of the call are treated as the device space
+        of the recording, and target's state is left unchanged. */
+    public void replay(Graphics2D target) {
+        replay(target, 1, true);
+    }
+
+    /** Draw the display list to target, enlarged by the given
+        magnification. If paintDeferred is false, omit the items that
+        were recorded with recordDeferred(). Target's state is left
+        unchanged. Text keeps the layout, and TexturePaint fills the
+        tile resolution, of the recording, so only a magnification of
+        1 matches painting at the new scale directly. */
+    void replay(Graphics2D target, double magnification,
+                boolean paintDeferred) {
+        Graphics2D t = (Graphics2D) target.create();
+        try {
+            t.scale(magnification, magnification);
+            replay(t, t.getTransform(), t.getClip(), magnification,
+                   paintDeferred);
+        } finally {
+            t.dispose();
+        }
+    }
+
+    /** Draw the display list to t, which may be modified. */
+    void replay(Graphics2D t, AffineTransform base, Shape baseClip,
+                double magnification, boolean paintDeferred) {
+        int cnt;
+        synchronized (list) {
+            cnt = list.ops.size();
+        }
+        State last = null;
+        for (int i = 0; i < cnt; ++i) {
+            State s;
+            Op op;
+            synchronized (list) {
+                s = list.states.get(i);
+                op = list.ops.get(i);
+            }
+            if (op instanceof DeferredOp) {
+                if (!paintDeferred) {
+                    continue;
+                }
+                if (s != last) {
+                    apply(t, base, baseClip, s, last);
+                    last = s;
+                }
+                Graphics2D t2 = (Graphics2D) t.create();
+                try {
+                    ((DeferredOp) op).deferred.paint(t2, magnification);
+                } finally {
+                    t2.dispose();
+                }
+                continue;
+            }
+            if (s != last) {
+                apply(t, base, baseClip, s, last);
+                last = s;
+            }
+            op.paint(t);
+        }
+    }
+
+    /** Set t's state to s.
+
+        @param last The state that t was last set to, or null. Parts
+        of the state that are unchanged since then are not set again,
+        because every change of clip or hints makes Java2D revalidate
+        its rendering pipeline. */
+    static void apply(Graphics2D t, AffineTransform base, Shape baseClip,
+                      State s, State last) {
+        boolean sameClip = last != null && Objects.equals(s.clip, last.clip);
+        if (!sameClip) {
+            t.setTransform(base);
+            t.setClip(baseClip);
+            if (s.clip != null) {
+                t.clip(s.clip);
+            }
+        }
+        if (!sameClip || !s.transform.equals(last.transform)) {
+            AffineTransform xform = new AffineTransform(base);
+            xform.concatenate(s.transform);
+            t.setTransform(xform);
+        }
+        if (last == null || !s.hints.equals(last.hints)) {
+            t.setRenderingHints(s.hints);
+        }
+        // setPaintMode() resets the composite, so call it first.
+        if (s.xorColor != null) {
+            t.setXORMode(s.xorColor);
+        } else {
+            t.setPaintMode();
+            t.setComposite(s.composite);
+        }
+        t.setPaint(s.paint);
+        t.setBackground(s.background);
+        t.setStroke(s.stroke);
+        t.setFont(s.font);
+    }
+
+    /** @return the bounds, in device coordinates, of everything
+        recorded except images and deferred items, as MeteredGraphics
+        computes them, or null if nothing was recorded. */
+    public Rectangle2D.Double getBounds() {
+        // Replay into mg itself rather than a copy, because copies of
+        // MeteredGraphics keep separate bounds.
+        MeteredGraphics mg = new MeteredGraphics();
+        replay(mg, mg.getTransform(), mg.getClip(), 1, false);
+        return mg.getBounds();
+    }
+
+    /** Mark the state as changed, so the next item recorded takes a
+        new snapshot of it. */
+    void changed() {
+        state = null;
+    }
+
+    @Override public void addRenderingHints(Map<?,?> hints) {
+        g.addRenderingHints(hints);
+        changed();
+    }
+
+    @Override public void clip(Shape s) {
+        g.clip(s);
+        changed();
+    }
+
+    /** @return a copy of s, or s itself if it is immutable, so that
+        callers may modify s after drawing it. */
+    static Shape snapshot(Shape s) {
+        if (s instanceof RectangularShape) {
+            return (Shape) ((RectangularShape) s).clone();
+        } else if (s instanceof Line2D) {
+            return (Shape) ((Line2D) s).clone();
+        } else if (s instanceof Path2D) {
+            return (Shape) ((Path2D) s).clone();
+        } else if (s instanceof Area) {
+            return (Shape) ((Area) s).clone();
+        } else {
+            return new Path2D.Double(s);
+        }
+    }
+
+    @Override public void draw(Shape s) {
+        Shape copy = snapshot(s);
+        record(t -> t.draw(copy));
+    }
+
+    @Override public void draw3DRect(int x, int y, int width, int height,
+            boolean raised) {
+        record(t -> t.draw3DRect(x, y, width, height, raised));
+    }
+
+    @Override public void drawGlyphVector(GlyphVector gv, float x, float y) {
+        record(t -> {
+                // GlyphVector implementations cache layout data
+                // without synchronization.
+                synchronized (gv) {
+                    t.drawGlyphVector(gv, x, y);
+                }
+            });
+    }
+
+    @Override public void drawImage(BufferedImage img, BufferedImageOp op,
+                                    int x, int y) {
+        record(t -> t.drawImage(img, op, x, y));
+    }
+
+    @Override public boolean drawImage(Image img, AffineTransform xform,
+                                       ImageObserver observer) {
+        AffineTransform x = (xform == null) ? null : new AffineTransform(xform);
+        record(t -> t.drawImage(img, x, null));
+        return true;
+    }
+
+    @Override public void drawRenderableImage
+        (RenderableImage img, AffineTransform xform) {
+        AffineTransform x = new AffineTransform(xform);
+        record(t -> t.drawRenderableImage(img, x));
+    }
+
+    @Override public void drawRenderedImage
+        (RenderedImage img, AffineTransform xform) {
+        AffineTransform x = new AffineTransform(xform);
+        record(t -> t.drawRenderedImage(img, x));
+    }
+
+    @Override public void drawString
+        (AttributedCharacterIterator iterator, float x, float y) {
+        // The iterator may be reused by the caller, so lay it out
+        // now; TextLayout.draw() records it as glyph vectors.
+        if (iterator.getEndIndex() > iterator.getBeginIndex()) {
+            new TextLayout(iterator, getFontRenderContext()).draw(this, x, y);
+        }
+    }
+
+    @Override public void drawString
+        (AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override public void drawString(String str, float x, float y) {
+        record(t -> t.drawString(str, x, y));
+    }
+
+    @Override public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override public void fill(Shape s) {
+        Shape copy = snapshot(s);
+        record(t -> t.fill(copy));
+    }
+
+    @Override public void fill3DRect(int x, int y, int width, int height,
+            boolean raised) {
+        record(t -> t.fill3DRect(x, y, width, height, raised));
+    }
+
+    @Override public Color getBackground() {
+        return g.getBackground();
+    }
+
+    @Override public Composite getComposite() {
+        return g.getComposite();
+    }
+
+    @Override public GraphicsConfiguration getDeviceConfiguration() {
+        return g.getDeviceConfiguration();
+    }
+
+    @Override public FontRenderContext getFontRenderContext() {
+        return g.getFontRenderContext();
+    }
+
+    @Override public Paint getPaint() {
+        return g.getPaint();
+    }
+
+    @Override public Object getRenderingHint(Key key) {
+        return g.getRenderingHint(key);
+    }
+
+    @Override public RenderingHints getRenderingHints() {
+        return g.getRenderingHints();
+    }
+
+    @Override public Stroke getStroke() {
+        return g.getStroke();
+    }
+
+    @Override public AffineTransform getTransform() {
+        return g.getTransform();
+    }
+
+    @Override public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        return g.hit(rect, s, onStroke);
+    }
+
+    @Override public void rotate(double theta) {
+        g.rotate(theta);
+        changed();
+    }
+
+    @Override public void rotate(double theta, double x, double y) {
+        g.rotate(theta, x, y);
+        changed();
+    }
+
+    @Override public void scale(double sx, double sy) {
+        g.scale(sx, sy);
+        changed();
+    }
+
+    @Override public void setBackground(Color color) {
+        g.setBackground(color);
+        changed();
+    }
+
+    @Override public void setComposite(Composite comp) {
+        g.setComposite(comp);
+        changed();
+    }
+
+    @Override public void setPaint(Paint paint) {
+        g.setPaint(paint);
+        changed();
+    }
+
+    @Override public void setRenderingHint(Key key, Object value) {
+        g.setRenderingHint(key, value);
+        changed();
+    }
+
+    @Override public void setRenderingHints(Map<?, ?> hints) {
+        g.setRenderingHints(hints);
+        changed();
+    }
+
+    @Override public void setStroke(Stroke s) {
+        g.setStroke(s);
+        changed();
+    }
+
+    @Override public void setTransform(AffineTransform xform) {
+        g.setTransform(xform);
+        changed();
+    }
+
+    @Override public void shear(double shx, double shy) {
+        g.shear(shx, shy);
+        changed();
+    }
+
+    @Override public void transform(AffineTransform xform) {
+        g.transform(xform);
+        changed();
+    }
+
+    @Override public void translate(double tx, double ty) {
+        g.translate(tx, ty);
+        changed();
+    }
+
+    @Override public void translate(int x, int y) {
+        g.translate(x, y);
+        changed();
+    }
+
+    @Override public void clearRect(int x, int y, int width, int height) {
+        record(t -> t.clearRect(x, y, width, height));
+    }
+
+    @Override public void clipRect(int x, int y, int width, int height) {
+        g.clipRect(x, y, width, height);
+        changed();
+    }
+
+    @Override public void copyArea(int x, int y, int width, int height,
+                                   int dx, int dy) {
+        record(t -> t.copyArea(x, y, width, height, dx, dy));
+    }
+
+    @Override public Graphics create() {
+        return new RecordingGraphics(this);
+    }
+
+    @Override public Graphics create(int x, int y, int width, int height) {
+        RecordingGraphics res = new RecordingGraphics(this);
+        res.clipRect(x, y, width, height);
+        res.translate(x, y);
+        return res;
+    }
+
+    /** Release the state of this graphics context. The display list
+        remains available for replay(). */
+    @Override public void dispose() {
+        g.dispose();
+    }
+
+    @Override public void drawArc(int x, int y, int width, int height,
+                                  int startAngle, int arcAngle) {
+        draw(new Arc2D.Double(x, y, width, height, startAngle, arcAngle,
+                              Arc2D.OPEN));
+    }
+
+    @Override public boolean drawImage(Image img, int x, int y,
+                                       ImageObserver observer) {
+        record(t -> t.drawImage(img, x, y, null));
+        return true;
+    }
+
+    @Override public boolean drawImage(Image img, int x, int y, Color bgcolor,
+                                       ImageObserver observer) {
+        record(t -> t.drawImage(img, x, y, bgcolor, null));
+        return true;
+    }
+
+    @Override public boolean drawImage(Image img, int x, int y, int width,
+                                       int height, ImageObserver observer) {
+        record(t -> t.drawImage(img, x, y, width, height, null));
+        return true;
+    }
+
+    @Override public boolean drawImage(Image img, int x, int y, int width,
+                                       int height, Color bgcolor,
+                                       ImageObserver observer) {
+        record(t -> t.drawImage(img, x, y, width, height, bgcolor, null));
+        return true;
+    }
+
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2,
+            int dy2, int sx1, int sy1, int sx2, int sy2,
+            ImageObserver observer) {
+        record(t -> t.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2,
+                                null));
+        return true;
+    }
+
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2,
+            int dy2, int sx1, int sy1, int sx2, int sy2, Color bgcolor,
+            ImageObserver observer) {
+        record(t -> t.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2,
+                                bgcolor, null));
+        return true;
+    }
+
+    @Override public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    @Override public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override public void drawPolyline(int[] xs, int[] ys, int n) {
+        if (n == 0) {
+            return;
+        }
+
+        Path2D path = new Path2D.Double();
+        path.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < n; ++i) {
+            path.lineTo(xs[i], ys[i]);
+        }
+        draw(path);
+    }
+
+    @Override public void drawPolygon(int[] xs, int[] ys, int n) {
+        draw(new Polygon(xs, ys, n));
+    }
+
+    @Override public void fillPolygon(int[] xs, int[] ys, int n) {
+        fill(new Polygon(xs, ys, n));
+    }
+
+    @Override public void drawRoundRect(int x, int y, int width, int height,
+                                        int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Double(x, y, width, height, arcWidth,
+                                         arcHeight));
+    }
+
+    @Override public void fillArc(int x, int y, int width, int height,
+                                  int startAngle, int arcAngle) {
+        fill(new Arc2D.Double(x, y, width, height, startAngle, arcAngle,
+                              Arc2D.PIE));
+    }
+
+    @Override public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override public void fillRect(int x, int y, int width, int height) {
+        record(t -> t.fillRect(x, y, width, height));
+    }
+
+    @Override public void fillRoundRect(int x, int y, int width, int height,
+                                        int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Double(x, y, width, height, arcWidth,
+                                         arcHeight));
+    }
+
+    @Override public Shape getClip() {
+        return g.getClip();
+    }
+
+    @Override public Rectangle getClipBounds() {
+        return g.getClipBounds();
+    }
+
+    @Override public Color getColor() {
+        return g.getColor();
+    }
+
+    @Override public Font getFont() {
+        return g.getFont();
+    }
+
+    @Override public FontMetrics getFontMetrics(Font f) {
+        return g.getFontMetrics(f);
+    }
+
+    @Override public void setClip(Shape s) {
+        g.setClip(s);
+        changed();
+    }
+
+    @Override public void setClip(int x, int y, int width, int height) {
+        g.setClip(x, y, width, height);
+        changed();
+    }
+
+    @Override public void setColor(Color c) {
+        g.setColor(c);
+        changed();
+    }
+
+    @Override public void setFont(Font font) {
+        g.setFont(font);
+        changed();
+    }
+
+    @Override public void setPaintMode() {
+        g.setPaintMode();
+        xorColor = null;
+        changed();
+    }
+
+    @Override public void setXORMode(Color c) {
+        g.setXORMode(c);
+        xorColor = c;
+        changed();
+    }
+
+    @Override public void drawChars(char[] data, int offset, int length,
+                                    int x, int y) {
+        drawString(new String(data, offset, length), x, y);
+    }
+
+    @Override public void drawBytes(byte[] data, int offset, int length,
+                                    int x, int y) {
+        StringBuilder b = new StringBuilder();
+        for (int i = offset; i < offset+length; ++i) {
+            b.append((char) data[i]);
+        }
+        drawString(b.toString(), x, y);
+    }
+
+    @Override public FontMetrics getFontMetrics() {
+        return g.getFontMetrics();
+    }
+}
@@ -57,6 +57,21 @@ public class RectangleTransform extends AffinePolygonTransform {
         setTransform(mx, 0.0, 0.0, my, bx, by);
     }
 
+    /** Rectangle transforms have no shear terms, so x and y can be
+        handled independently. */
+    @Override public void transform(double[] xs, double[] ys, int n) {
+        double mx = getScaleX();
+        double bx = getTranslateX();
+        double my = getScaleY();
+        double by = getTranslateY();
+        for (int i = 0; i < n; ++i) {
+            xs[i] = xs[i] * mx + bx;
+        }
+        for (int i = 0; i < n; ++i) {
+            ys[i] = ys[i] * my + by;
+        }
+    }
+
     @Override public RectangleTransform createInverse() {
         return new RectangleTransform(output, input);
     }
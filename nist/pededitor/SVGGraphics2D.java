@@ -0,0 +1,983 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.RenderingHints.Key;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.TexturePaint;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.AttributedCharacterIterator;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/** Graphics2D implementation that writes everything drawn to it as
+    SVG to a Writer, one element per drawing operation, so a diagram
+    of any size is exported in a single pass with memory use that
+    does not depend on the size of the diagram.
+
+    Shapes become paths with their current transform, paint, stroke,
+    and clip. TexturePaints (which is how hatched fills are
+    implemented) become pattern definitions that are shared by every
+    fill that uses the same tile. Text is written as text elements
+    positioned glyph by glyph, and the fonts listed by setFontFiles()
+    (Diagram's DejaVu LGC PED fonts) are embedded in the SVG file, so
+    the result looks the same without those fonts being installed. Images are
+    embedded as PNG data.
+
+    Graphics methods cannot throw IOExceptions, so the first one
+    encountered is saved and rethrown by finish(). */
+public class SVGGraphics2D extends Graphics2D {
+    /** State shared by an SVGGraphics2D and every Graphics created
+        from it. */
+    static class Output {
+        Writer out;
+        IOException error = null;
+        int nextId = 0;
+        /** Clip path data (in device coordinates) -> clipPath id */
+        HashMap<String, String> clipIds = new HashMap<>();
+        /** Path data of the clip of the group that is currently open,
+            or null if no group is open. */
+        String openClip = null;
+        HashMap<PatternKey, String> patternIds = new HashMap<>();
+        HashSet<String> embeddedFonts = new HashSet<>();
+        /** Font name -> map from glyph code to character. */
+        HashMap<String, char[]> glyphChars = new HashMap<>();
+        /** Font name -> resource file name, for fonts to embed. */
+        Map<String, String> fontFiles = new HashMap<>();
+    }
+
+    /** Identifies a TexturePaint's tile image and anchor rectangle. */
+    static class PatternKey {
+        Rectangle2D anchor;
+        int width;
+        int height;
+        int[] rgb;
+        int hash;
+
+        PatternKey(TexturePaint paint) {
+            BufferedImage im = paint.getImage();
+            anchor = paint.getAnchorRect();
+            width = im.getWidth();
+            height = im.getHeight();
+            rgb = im.getRGB(0, 0, width, height, null, 0, width);
+            hash = Arrays.hashCode(rgb) * 31 + anchor.hashCode();
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+
+        @Override public boolean equals(Object other0) {
+            if (!(other0 instanceof PatternKey)) {
+                return false;
+            }
+            PatternKey other = (PatternKey) other0;
+            return hash == other.hash && width == other.width
+                && height == other.height && anchor.equals(other.anchor)
+                && Arrays.equals(rgb, other.rgb);
+        }
+    }
+
+    /** Adapter that writes bytes to the Writer as Latin-1 characters,
+        for base64 output. close() does nothing. */
+    static class ByteWriter extends OutputStream {
+        Writer out;
+
+        ByteWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override public void write(int b) throws IOException {
+            out.write(b & 0xff);
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; ++i) {
+                out.write(b[i] & 0xff);
+            }
+        }
+
+        @Override public void close() {
+        }
+    }
+
+    Output output;
+    /** Holds the graphics state (transform, clip, font, paint, and so
+        on) and supplies font metrics. */
+    Graphics2D g;
+    BufferedImage im;
+
+    /** Start writing an SVG document of the given size to out. Call
+        finish() when done drawing. */
+    public SVGGraphics2D(Writer out, int width, int height) {
+        output = new Output();
+        output.out = out;
+        im = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        g = im.createGraphics();
+        write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+              + "<svg xmlns=\"http://www.w3.org/2000/svg\""
+              + " xmlns:xlink=\"http://www.w3.org/1999/xlink\" version=\"1.1\""
+              + " width=\"" + width + "\" height=\"" + height
+              + "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+    }
+
+    public SVGGraphics2D(SVGGraphics2D orig) {
+        output = orig.output;
+        im = orig.im;
+        g = (Graphics2D) orig.g.create();
+    }
+
+    /** Embed fonts whose names are keys of fontFiles, using the
+        TrueType data in the resource files that are the
+        corresponding values. */
+    public void setFontFiles(Map<String, String> fontFiles) {
+        output.fontFiles = fontFiles;
+    }
+
+    /** Close the SVG document and flush the Writer (but do not close
+        it).
+
+        @throws IOException if this or any earlier write failed. */
+    public void finish() throws IOException {
+        closeClipGroup();
+        write("</svg>\n");
+        if (output.error == null) {
+            try {
+                output.out.flush();
+            } catch (IOException x) {
+                output.error = x;
+            }
+        }
+        if (output.error != null) {
+            throw output.error;
+        }
+    }
+
+    void write(CharSequence s) {
+        if (output.error != null) {
+            return;
+        }
+        try {
+            output.out.append(s);
+        } catch (IOException x) {
+            output.error = x;
+        }
+    }
+
+    String newId(String prefix) {
+        return prefix + (output.nextId++);
+    }
+
+    /** Append v in a compact form that SVG accepts. */
+    static void num(StringBuilder sb, double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+            sb.append((long) v);
+            return;
+        }
+        String s = Float.toString((float) v);
+        if (s.endsWith(".0")) {
+            s = s.substring(0, s.length() - 2);
+        }
+        sb.append(s);
+    }
+
+    /** Append s, escaping XML special characters and non-ASCII
+        characters and omitting characters XML does not allow. */
+    static void escape(StringBuilder sb, CharSequence s) {
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '&': sb.append("&amp;"); break;
+            case '<': sb.append("&lt;"); break;
+            case '>': sb.append("&gt;"); break;
+            case '"': sb.append("&quot;"); break;
+            default:
+                if (c >= 0x20 && c < 0x7f) {
+                    sb.append(c);
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length()) {
+                    sb.append("&#x").append(Integer.toHexString
+                                            (Character.toCodePoint(c, s.charAt(++i))))
+                        .append(';');
+                } else if (c == '\t' || c == '\n' || c == '\r'
+                           || (c >= 0xa0 && c < 0xd800) || (c >= 0xe000 && c < 0xfffe)) {
+                    sb.append("&#x").append(Integer.toHexString(c)).append(';');
+                }
+            }
+        }
+    }
+
+    static void pathData(StringBuilder sb, PathIterator it) {
+        double[] coords = new double[6];
+        for (; !it.isDone(); it.next()) {
+            int type = it.currentSegment(coords);
+            int cnt;
+            switch (type) {
+            case PathIterator.SEG_MOVETO: sb.append('M'); cnt = 2; break;
+            case PathIterator.SEG_LINETO: sb.append('L'); cnt = 2; break;
+            case PathIterator.SEG_QUADTO: sb.append('Q'); cnt = 4; break;
+            case PathIterator.SEG_CUBICTO: sb.append('C'); cnt = 6; break;
+            default: sb.append('Z'); cnt = 0; break;
+            }
+            for (int i = 0; i < cnt; ++i) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                num(sb, coords[i]);
+            }
+        }
+    }
+
+    /** Make sure that the clip group that is open (if any) matches
+        the current clip. */
+    void updateClip() {
+        Shape clip = g.getClip();
+        String data = null;
+        if (clip != null) {
+            StringBuilder sb = new StringBuilder();
+            pathData(sb, clip.getPathIterator(g.getTransform()));
+            data = sb.toString();
+        }
+        if (data == null ? output.openClip == null : data.equals(output.openClip)) {
+            return;
+        }
+        closeClipGroup();
+        if (data == null) {
+            return;
+        }
+        String id = output.clipIds.get(data);
+        StringBuilder sb = new StringBuilder();
+        if (id == null) {
+            id = newId("c");
+            output.clipIds.put(data, id);
+            sb.append("<clipPath id=\"").append(id)
+                .append("\"><path d=\"").append(data).append("\"/></clipPath>\n");
+        }
+        sb.append("<g clip-path=\"url(#").append(id).append(")\">\n");
+        write(sb);
+        output.openClip = data;
+    }
+
+    void closeClipGroup() {
+        if (output.openClip != null) {
+            write("</g>\n");
+            output.openClip = null;
+        }
+    }
+
+    void transformAttribute(StringBuilder sb, AffineTransform xform) {
+        if (xform.isIdentity()) {
+            return;
+        }
+        double[] m = new double[6];
+        xform.getMatrix(m);
+        sb.append(" transform=\"matrix(");
+        for (int i = 0; i < 6; ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            num(sb, m[i]);
+        }
+        sb.append(")\"");
+    }
+
+    /** @return the alpha multiplier of the current Composite. */
+    double compositeAlpha() {
+        Composite c = g.getComposite();
+        return (c instanceof AlphaComposite) ? ((AlphaComposite) c).getAlpha() : 1.0;
+    }
+
+    /** Append the attributes for painting with the current paint as
+        the given property ("fill" or "stroke"). */
+    void paintAttributes(StringBuilder sb, String property) {
+        Paint paint = g.getPaint();
+        double opacity = compositeAlpha();
+        if (paint instanceof TexturePaint) {
+            String id = patternId((TexturePaint) paint);
+            sb.append(' ').append(property).append("=\"url(#").append(id).append(")\"");
+        } else {
+            Color c = (paint instanceof Color) ? (Color) paint : g.getColor();
+            sb.append(' ').append(property).append("=\"#")
+                .append(String.format("%06x", c.getRGB() & 0xffffff)).append('"');
+            opacity *= c.getAlpha() / 255.0;
+        }
+        if (opacity < 1) {
+            sb.append(' ').append(property).append("-opacity=\"");
+            num(sb, opacity);
+            sb.append('"');
+        }
+    }
+
+    String patternId(TexturePaint paint) {
+        PatternKey key = new PatternKey(paint);
+        String id = output.patternIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        id = newId("p");
+        output.patternIds.put(key, id);
+        StringBuilder sb = new StringBuilder();
+        Rectangle2D r = key.anchor;
+        sb.append("<pattern id=\"").append(id)
+            .append("\" patternUnits=\"userSpaceOnUse\" x=\"");
+        num(sb, r.getX());
+        sb.append("\" y=\"");
+        num(sb, r.getY());
+        sb.append("\" width=\"");
+        num(sb, r.getWidth());
+        sb.append("\" height=\"");
+        num(sb, r.getHeight());
+        sb.append("\">");
+        write(sb);
+        writeImage(paint.getImage(), r.getWidth(), r.getHeight(), null);
+        write("</pattern>\n");
+        return id;
+    }
+
+    /** Write an image element that draws im scaled to width x height. */
+    void writeImage(BufferedImage image, double width, double height,
+            String attributes) {
+        StringBuilder sb = new StringBuilder("<image width=\"");
+        num(sb, width);
+        sb.append("\" height=\"");
+        num(sb, height);
+        sb.append("\" preserveAspectRatio=\"none\"");
+        if (attributes != null) {
+            sb.append(attributes);
+        }
+        sb.append(" xlink:href=\"data:image/png;base64,");
+        write(sb);
+        if (output.error == null) {
+            try (OutputStream os = Base64.getEncoder().wrap
+                 (new ByteWriter(output.out))) {
+                ImageIO.write(image, "png", os);
+            } catch (IOException x) {
+                output.error = x;
+            }
+        }
+        write("\"/>\n");
+    }
+
+    /** Write a path element for s with the current transform, clip,
+        and the given paint attributes. */
+    void writePath(Shape s, String attributes) {
+        updateClip();
+        StringBuilder sb = new StringBuilder("<path d=\"");
+        PathIterator it = s.getPathIterator(null);
+        boolean evenOdd = it.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+        pathData(sb, it);
+        sb.append('"');
+        if (evenOdd) {
+            sb.append(" fill-rule=\"evenodd\"");
+        }
+        transformAttribute(sb, g.getTransform());
+        sb.append(attributes).append("/>\n");
+        write(sb);
+    }
+
+    @Override public void fill(Shape s) {
+        StringBuilder sb = new StringBuilder();
+        paintAttributes(sb, "fill");
+        writePath(s, sb.toString());
+    }
+
+    @Override public void draw(Shape s) {
+        Stroke stroke = g.getStroke();
+        if (!(stroke instanceof BasicStroke)) {
+            fill(stroke.createStrokedShape(s));
+            return;
+        }
+        BasicStroke bs = (BasicStroke) stroke;
+        StringBuilder sb = new StringBuilder(" fill=\"none\"");
+        paintAttributes(sb, "stroke");
+        sb.append(" stroke-width=\"");
+        num(sb, bs.getLineWidth());
+        sb.append('"');
+        switch (bs.getEndCap()) {
+        case BasicStroke.CAP_ROUND: sb.append(" stroke-linecap=\"round\""); break;
+        case BasicStroke.CAP_SQUARE: sb.append(" stroke-linecap=\"square\""); break;
+        default: break;
+        }
+        switch (bs.getLineJoin()) {
+        case BasicStroke.JOIN_ROUND: sb.append(" stroke-linejoin=\"round\""); break;
+        case BasicStroke.JOIN_BEVEL: sb.append(" stroke-linejoin=\"bevel\""); break;
+        default:
+            sb.append(" stroke-miterlimit=\"");
+            num(sb, Math.max(1, bs.getMiterLimit()));
+            sb.append('"');
+            break;
+        }
+        float[] dashes = bs.getDashArray();
+        if (dashes != null && dashes.length > 0) {
+            sb.append(" stroke-dasharray=\"");
+            for (int i = 0; i < dashes.length; ++i) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                num(sb, dashes[i]);
+            }
+            sb.append('"');
+            if (bs.getDashPhase() != 0) {
+                sb.append(" stroke-dashoffset=\"");
+                num(sb, bs.getDashPhase());
+                sb.append('"');
+            }
+        }
+        writePath(s, sb.toString());
+    }
+
+    /** @return an array mapping glyph codes of font to the characters
+        they represent (or 0 if unknown). */
+    char[] glyphChars(Font font) {
+        String key = font.getFontName();
+        char[] res = output.glyphChars.get(key);
+        if (res == null) {
+            Font f = font.deriveFont(Font.PLAIN, 12f);
+            StringBuilder chars = new StringBuilder();
+            for (char c = 0x20; c < 0xfffe; ++c) {
+                if (!Character.isSurrogate(c) && f.canDisplay(c)) {
+                    chars.append(c);
+                }
+            }
+            GlyphVector gv = f.createGlyphVector
+                (new FontRenderContext(null, false, false), chars.toString());
+            int[] codes = gv.getGlyphCodes(0, gv.getNumGlyphs(), null);
+            res = new char[f.getNumGlyphs()];
+            for (int i = 0; i < codes.length && i < chars.length(); ++i) {
+                int code = codes[i];
+                if (code > 0 && code < res.length && res[code] == 0) {
+                    res[code] = chars.charAt(i);
+                }
+            }
+            output.glyphChars.put(key, res);
+        }
+        return res;
+    }
+
+    /** Append font-family and related attributes for font, embedding
+        the font in the output first if it is one of Diagram's
+        fonts. */
+    void fontAttributes(StringBuilder sb, Font font) {
+        String name = font.getFontName();
+        String filename = output.fontFiles.get(name);
+        String family;
+        if (filename != null) {
+            embedFont(name, filename);
+            family = "'" + name + "'";
+        } else {
+            String f = font.getFamily();
+            family = "'" + f + "', "
+                + (Font.SERIF.equals(f) ? "serif"
+                   : (Font.MONOSPACED.equals(f) || Font.DIALOG_INPUT.equals(f))
+                   ? "monospace" : "sans-serif");
+        }
+        sb.append(" font-family=\"");
+        escape(sb, family);
+        sb.append("\" font-size=\"");
+        num(sb, font.getSize2D());
+        sb.append('"');
+        if (font.isBold()) {
+            sb.append(" font-weight=\"bold\"");
+        }
+        if (font.isItalic()) {
+            sb.append(" font-style=\"italic\"");
+        }
+    }
+
+    void embedFont(String name, String filename) {
+        if (!output.embeddedFonts.add(name)) {
+            return;
+        }
+        write("<style type=\"text/css\">@font-face { font-family: '" + name
+              + "'; src: url(data:font/ttf;base64,");
+        if (output.error == null) {
+            try (InputStream is = getClass().getResourceAsStream(filename);
+                 OutputStream os = Base64.getEncoder().wrap
+                 (new ByteWriter(output.out))) {
+                if (is == null) {
+                    throw new IOException("Could not locate font '" + filename + "'");
+                }
+                byte[] buf = new byte[8192];
+                int len;
+                while ((len = is.read(buf)) > 0) {
+                    os.write(buf, 0, len);
+                }
+            } catch (IOException x) {
+                output.error = x;
+            }
+        }
+        write(") format('truetype'); }</style>\n");
+    }
+
+    @Override public void drawGlyphVector(GlyphVector gv, float x, float y) {
+        Font font = gv.getFont();
+        int n = gv.getNumGlyphs();
+        if (n == 0) {
+            return;
+        }
+        if (font.isTransformed()) {
+            fill(gv.getOutline(x, y));
+            return;
+        }
+        char[] map = glyphChars(font);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < n; ++i) {
+            int code = gv.getGlyphCode(i);
+            char c = (code >= 0 && code < map.length) ? map[code] : 0;
+            if (c == 0 || gv.getGlyphTransform(i) != null) {
+                // Cannot represent this glyph as a character.
+                fill(gv.getOutline(x, y));
+                return;
+            }
+            text.append(c);
+        }
+        float[] positions = gv.getGlyphPositions(0, n, null);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; ++i) {
+            xs[i] = x + positions[2 * i];
+            ys[i] = y + positions[2 * i + 1];
+        }
+        writeText(text, xs, ys, font);
+    }
+
+    void writeText(CharSequence text, double[] xs, double[] ys, Font font) {
+        updateClip();
+        StringBuilder sb = new StringBuilder("<text x=\"");
+        boolean sameY = true;
+        for (int i = 0; i < xs.length; ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            num(sb, xs[i]);
+            sameY = sameY && ys[i] == ys[0];
+        }
+        sb.append("\" y=\"");
+        for (int i = 0; i < (sameY ? 1 : ys.length); ++i) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            num(sb, ys[i]);
+        }
+        sb.append('"');
+        fontAttributes(sb, font);
+        paintAttributes(sb, "fill");
+        transformAttribute(sb, g.getTransform());
+        sb.append(" xml:space=\"preserve\">");
+        escape(sb, text);
+        sb.append("</text>\n");
+        write(sb);
+    }
+
+    @Override public void drawString(String str, float x, float y) {
+        if (str.isEmpty()) {
+            return;
+        }
+        drawGlyphVector
+            (getFont().createGlyphVector(getFontRenderContext(), str), x, y);
+    }
+
+    @Override public void drawString(String str, int x, int y) {
+        drawString(str, (float) x, (float) y);
+    }
+
+    @Override public void drawString
+        (AttributedCharacterIterator iterator, float x, float y) {
+        StringBuilder sb = new StringBuilder();
+        for (char c = iterator.first(); c != AttributedCharacterIterator.DONE;
+             c = iterator.next()) {
+            sb.append(c);
+        }
+        drawString(sb.toString(), x, y);
+    }
+
+    @Override public void drawString
+        (AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override public void drawChars(char[] data, int offset, int length,
+                                    int x, int y) {
+        drawString(new String(data, offset, length), x, y);
+    }
+
+    @Override public void drawBytes(byte[] data, int offset, int length,
+                                    int x, int y) {
+        drawString(new String(data, offset, length,
+                              java.nio.charset.StandardCharsets.ISO_8859_1), x, y);
+    }
+
+    static BufferedImage toBufferedImage(Image img) {
+        if (img instanceof BufferedImage) {
+            return (BufferedImage) img;
+        }
+        int w = img.getWidth(null);
+        int h = img.getHeight(null);
+        if (w <= 0 || h <= 0) {
+            return null;
+        }
+        BufferedImage res = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = res.createGraphics();
+        g2.drawImage(img, 0, 0, null);
+        g2.dispose();
+        return res;
+    }
+
+    @Override public boolean drawImage(Image img, AffineTransform xform,
+                                       ImageObserver obs) {
+        BufferedImage image = toBufferedImage(img);
+        if (image == null) {
+            return false;
+        }
+        updateClip();
+        AffineTransform t = g.getTransform();
+        if (xform != null) {
+            t.concatenate(xform);
+        }
+        StringBuilder sb = new StringBuilder();
+        transformAttribute(sb, t);
+        double opacity = compositeAlpha();
+        if (opacity < 1) {
+            sb.append(" opacity=\"");
+            num(sb, opacity);
+            sb.append('"');
+        }
+        writeImage(image, image.getWidth(), image.getHeight(), sb.toString());
+        return true;
+    }
+
+    @Override public boolean drawImage(Image img, int x, int y,
+                                       ImageObserver obs) {
+        return drawImage(img, AffineTransform.getTranslateInstance(x, y), obs);
+    }
+
+    @Override public boolean drawImage(Image img, int x, int y, Color bgcolor,
+                                       ImageObserver obs) {
+        return drawImage(img, x, y, obs);
+    }
+
+    @Override public boolean drawImage(Image img, int x, int y, int width,
+                                       int height, ImageObserver obs) {
+        int w = img.getWidth(null);
+        int h = img.getHeight(null);
+        if (w <= 0 || h <= 0) {
+            return false;
+        }
+        AffineTransform xform = AffineTransform.getTranslateInstance(x, y);
+        xform.scale((double) width / w, (double) height / h);
+        return drawImage(img, xform, obs);
+    }
+
+    @Override public boolean drawImage(Image img, int x, int y, int width,
+                                       int height, Color bgcolor,
+                                       ImageObserver obs) {
+        return drawImage(img, x, y, width, height, obs);
+    }
+
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2,
+                                       int dy2, int sx1, int sy1, int sx2,
+                                       int sy2, ImageObserver obs) {
+        BufferedImage image = toBufferedImage(img);
+        int sw = sx2 - sx1;
+        int sh = sy2 - sy1;
+        if (image == null || sw <= 0 || sh <= 0) {
+            return false;
+        }
+        return drawImage(image.getSubimage(sx1, sy1, sw, sh), dx1, dy1,
+                         dx2 - dx1, dy2 - dy1, obs);
+    }
+
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2,
+                                       int dy2, int sx1, int sy1, int sx2,
+                                       int sy2, Color bgcolor,
+                                       ImageObserver obs) {
+        return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, obs);
+    }
+
+    @Override public void drawImage(BufferedImage img, BufferedImageOp op,
+                                    int x, int y) {
+        drawImage((op == null) ? img : op.filter(img, null), x, y, null);
+    }
+
+    @Override public void drawRenderedImage(RenderedImage img,
+                                            AffineTransform xform) {
+        if (img instanceof BufferedImage) {
+            drawImage((BufferedImage) img, xform, null);
+        }
+    }
+
+    @Override public void drawRenderableImage(RenderableImage img,
+                                              AffineTransform xform) {
+        drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    @Override public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    @Override public void drawPolyline(int[] xs, int[] ys, int n) {
+        if (n <= 0) {
+            return;
+        }
+        Path2D.Double path = new Path2D.Double();
+        path.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < n; ++i) {
+            path.lineTo(xs[i], ys[i]);
+        }
+        draw(path);
+    }
+
+    @Override public void drawPolygon(int[] xs, int[] ys, int n) {
+        draw(new Polygon(xs, ys, n));
+    }
+
+    @Override public void fillPolygon(int[] xs, int[] ys, int n) {
+        fill(new Polygon(xs, ys, n));
+    }
+
+    @Override public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override public void drawArc(int x, int y, int width, int height,
+                                  int startAngle, int arcAngle) {
+        draw(new Arc2D.Double(x, y, width, height, startAngle, arcAngle,
+                              Arc2D.OPEN));
+    }
+
+    @Override public void fillArc(int x, int y, int width, int height,
+                                  int startAngle, int arcAngle) {
+        fill(new Arc2D.Double(x, y, width, height, startAngle, arcAngle,
+                              Arc2D.PIE));
+    }
+
+    @Override public void drawRoundRect(int x, int y, int width, int height,
+                                        int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Double(x, y, width, height, arcWidth,
+                                         arcHeight));
+    }
+
+    @Override public void fillRoundRect(int x, int y, int width, int height,
+                                        int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Double(x, y, width, height, arcWidth,
+                                         arcHeight));
+    }
+
+    @Override public void fillRect(int x, int y, int width, int height) {
+        fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override public void clearRect(int x, int y, int width, int height) {
+        Paint paint = g.getPaint();
+        g.setPaint(g.getBackground());
+        fillRect(x, y, width, height);
+        g.setPaint(paint);
+    }
+
+    @Override public void copyArea(int x, int y, int width, int height,
+                                   int dx, int dy) {
+        // Not possible in a stream of vector output.
+    }
+
+    @Override public Graphics create() {
+        return new SVGGraphics2D(this);
+    }
+
+    @Override public void dispose() {
+        g.dispose();
+    }
+
+    @Override public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+        return g.hit(rect, s, onStroke);
+    }
+
+    @Override public void addRenderingHints(Map<?,?> hints) {
+        g.addRenderingHints(hints);
+    }
+
+    @Override public void clip(Shape s) {
+        g.clip(s);
+    }
+
+    @Override public void clipRect(int x, int y, int width, int height) {
+        g.clipRect(x, y, width, height);
+    }
+
+    @Override public Shape getClip() {
+        return g.getClip();
+    }
+
+    @Override public Rectangle getClipBounds() {
+        return g.getClipBounds();
+    }
+
+    @Override public void setClip(Shape s) {
+        g.setClip(s);
+    }
+
+    @Override public void setClip(int x, int y, int width, int height) {
+        g.setClip(x, y, width, height);
+    }
+
+    @Override public Color getBackground() {
+        return g.getBackground();
+    }
+
+    @Override public void setBackground(Color color) {
+        g.setBackground(color);
+    }
+
+    @Override public Composite getComposite() {
+        return g.getComposite();
+    }
+
+    @Override public void setComposite(Composite comp) {
+        g.setComposite(comp);
+    }
+
+    @Override public GraphicsConfiguration getDeviceConfiguration() {
+        return g.getDeviceConfiguration();
+    }
+
+    @Override public FontRenderContext getFontRenderContext() {
+        return g.getFontRenderContext();
+    }
+
+    @Override public Paint getPaint() {
+        return g.getPaint();
+    }
+
+    @Override public void setPaint(Paint paint) {
+        g.setPaint(paint);
+    }
+
+    @Override public Color getColor() {
+        return g.getColor();
+    }
+
+    @Override public void setColor(Color color) {
+        g.setColor(color);
+    }
+
+    @Override public void setPaintMode() {
+        g.setPaintMode();
+    }
+
+    @Override public void setXORMode(Color color) {
+        g.setXORMode(color);
+    }
+
+    @Override public Object getRenderingHint(Key key) {
+        return g.getRenderingHint(key);
+    }
+
+    @Override public void setRenderingHint(Key key, Object value) {
+        g.setRenderingHint(key, value);
+    }
+
+    @Override public RenderingHints getRenderingHints() {
+        return g.getRenderingHints();
+    }
+
+    @Override public void setRenderingHints(Map<?, ?> hints) {
+        g.setRenderingHints(hints);
+    }
+
+    @Override public Stroke getStroke() {
+        return g.getStroke();
+    }
+
+    @Override public void setStroke(Stroke stroke) {
+        g.setStroke(stroke);
+    }
+
+    @Override public Font getFont() {
+        return g.getFont();
+    }
+
+    @Override public void setFont(Font font) {
+        g.setFont(font);
+    }
+
+    @Override public FontMetrics getFontMetrics(Font font) {
+        return g.getFontMetrics(font);
+    }
+
+    @Override public AffineTransform getTransform() {
+        return g.getTransform();
+    }
+
+    @Override public void setTransform(AffineTransform xform) {
+        g.setTransform(xform);
+    }
+
+    @Override public void transform(AffineTransform xform) {
+        g.transform(xform);
+    }
+
+    @Override public void rotate(double theta) {
+        g.rotate(theta);
+    }
+
+    @Override public void rotate(double theta, double x, double y) {
+        g.rotate(theta, x, y);
+    }
+
+    @Override public void scale(double sx, double sy) {
+        g.scale(sx, sy);
+    }
+
+    @Override public void shear(double shx, double shy) {
+        g.shear(shx, shy);
+    }
+
+    @Override public void translate(double tx, double ty) {
+        g.translate(tx, ty);
+    }
+
+    @Override public void translate(int tx, int ty) {
+        g.translate(tx, ty);
+    }
+}
@@ -4,12 +4,165 @@
 package gov.nist.pededitor;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.stream.IntStream;
 
 public class ScaleImage {
+    /** Number of output rows handled by each parallel task. */
+    static final int BAND_HEIGHT = 8;
+    /** Downscale in parallel only if the input has at least this many
+        pixels. */
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+
     /** Simple method to downscale an image by a constant factor. The
         values of all input pixels are averaged, weighting each
-        according to their alpha value. */
+        according to their alpha value.
+
+        The work is done in bands of output rows, in parallel on the
+        common ForkJoinPool for large images. Within each band the
+        input is read one row at a time; each row's pixels are
+        premultiplied by alpha and summed horizontally into per-column
+        accumulators, and each finished band of accumulators yields
+        one output row. The result is identical to
+        referenceDownscale(). */
     static BufferedImage downscale(BufferedImage input, int descale) {
+        int widthIn = input.getWidth();
+        int heightIn = input.getHeight();
+        int widthOut = widthIn / descale;
+        int heightOut = heightIn / descale;
+        BufferedImage res = new BufferedImage(widthOut, heightOut,
+                                              BufferedImage.TYPE_INT_ARGB);
+        int[] out = ((DataBufferInt) res.getRaster().getDataBuffer()).getData();
+
+        int type = input.getType();
+        WritableRaster raster = input.getRaster();
+        if ((type == BufferedImage.TYPE_INT_ARGB
+             || type == BufferedImage.TYPE_INT_RGB)
+            && raster.getDataBuffer() instanceof DataBufferInt
+            && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            // Read the pixels directly. TYPE_INT_RGB pixels have no
+            // alpha bits, but getRGB() reports them as opaque.
+            int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel())
+                .getScanlineStride();
+            DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+            int offset = db.getOffset()
+                - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX();
+            downscale(db.getData(), offset, stride,
+                      (type == BufferedImage.TYPE_INT_RGB) ? 0xff000000 : 0,
+                      null, widthOut, heightOut, descale, out);
+        } else {
+            downscale(null, 0, widthIn, 0, input, widthOut, heightOut,
+                      descale, out);
+        }
+        return res;
+    }
+
+    /** Downscale an image stored as an array of ARGB values in
+        row-major order with no row padding, such as the output of
+        ImageTransform.transform(), without wrapping it in a
+        BufferedImage first.
+
+        @return an array of (width / descale) * (height / descale)
+        ARGB values. */
+    static int[] downscale(int[] argb, int width, int height, int descale) {
+        int widthOut = width / descale;
+        int heightOut = height / descale;
+        int[] out = new int[widthOut * heightOut];
+        downscale(argb, 0, width, 0, null, widthOut, heightOut, descale, out);
+        return out;
+    }
+
+    /** Downscale into out, which holds widthOut x heightOut pixels
+        with no row padding. Input pixel (x,y) is either
+        data[offset + y * stride + x] | alphaMask, or, if data is
+        null, image.getRGB(x, y). */
+    static void downscale(int[] data, int offset, int stride, int alphaMask,
+            BufferedImage image, int widthOut, int heightOut, int descale,
+            int[] out) {
+        int bands = (heightOut + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        IntStream range = IntStream.range(0, bands);
+        if ((long) widthOut * heightOut * descale * descale
+            >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(band -> {
+                int yEnd = Math.min(heightOut, (band + 1) * BAND_HEIGHT);
+                downscaleBand(data, offset, stride, alphaMask, image,
+                              widthOut, band * BAND_HEIGHT, yEnd, descale,
+                              out);
+            });
+    }
+
+    /** Compute output rows [yStart, yEnd). */
+    static void downscaleBand(int[] data, int offset, int stride,
+            int alphaMask, BufferedImage image, int widthOut, int yStart,
+            int yEnd, int descale, int[] out) {
+        int[] as = new int[widthOut];
+        int[] rs = new int[widthOut];
+        int[] gs = new int[widthOut];
+        int[] bs = new int[widthOut];
+        int rowLength = widthOut * descale;
+        int[] row = (data == null) ? new int[rowLength] : null;
+        int samplesPerPixel = descale * descale;
+        int halfSamples = samplesPerPixel / 2;
+
+        for (int y = yStart; y < yEnd; ++y) {
+            for (int y0 = y * descale; y0 < (y + 1) * descale; ++y0) {
+                int[] src;
+                int pos;
+                if (data != null) {
+                    src = data;
+                    pos = offset + y0 * stride;
+                } else {
+                    image.getRGB(0, y0, rowLength, 1, row, 0, rowLength);
+                    src = row;
+                    pos = 0;
+                }
+                for (int x = 0; x < widthOut; ++x) {
+                    int r = 0, g = 0, b = 0, a = 0;
+                    for (int end = pos + descale; pos < end; ++pos) {
+                        int argb = src[pos] | alphaMask;
+                        // The (& 0xff) part below is necessary: it
+                        // converts the result to an unsigned value!
+                        int a1 = (argb >> 24) & 0xff;
+                        r += a1 * ((argb >> 16) & 0xff);
+                        g += a1 * ((argb >> 8) & 0xff);
+                        b += a1 * (argb & 0xff);
+                        a += a1;
+                    }
+                    as[x] += a;
+                    rs[x] += r;
+                    gs[x] += g;
+                    bs[x] += b;
+                }
+            }
+
+            int outPos = y * widthOut;
+            for (int x = 0; x < widthOut; ++x) {
+                int a = as[x];
+                if (a == 0) {
+                    // The RGB values of a 100% transparent pixel are
+                    // irrelevant.
+                    out[outPos + x] = 0;
+                } else {
+                    int half = a / 2; // for rounding purposes
+                    int r = (rs[x] + half) / a;
+                    int g = (gs[x] + half) / a;
+                    int b = (bs[x] + half) / a;
+                    a = (a + halfSamples) / samplesPerPixel;
+                    out[outPos + x] = (a << 24) +  (r << 16) + (g << 8) + b;
+                }
+                as[x] = rs[x] = gs[x] = bs[x] = 0;
+            }
+        }
+    }
+
+    /** The original pixel-at-a-time implementation of downscale(),
+        retained as a reference for testing and benchmarking. */
+    static BufferedImage referenceDownscale(BufferedImage input, int descale) {
         int widthIn = input.getWidth();
         int widthOut = widthIn / descale;
         int heightIn = input.getHeight();
@@ -0,0 +1,165 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Compare ScaleImage.downscale() against
+    ScaleImage.referenceDownscale() for both correctness and speed.
+
+    Usage: ScaleImageBenchmark [width height]
+
+    Antialiased test images of the given size (default 3000 x 2400)
+    are downscaled by the odd factors Diagram.createImage() uses, for
+    each of the image types that appear in practice. The ARGB array
+    overload is also checked on ImageTransform.transform() output. */
+public class ScaleImageBenchmark {
+    public static void main(String[] args) {
+        int width = 3000;
+        int height = 2400;
+        if (args.length == 2) {
+            width = Integer.parseInt(args[0]);
+            height = Integer.parseInt(args[1]);
+        }
+
+        int[] types = { BufferedImage.TYPE_INT_RGB,
+                        BufferedImage.TYPE_INT_ARGB,
+                        BufferedImage.TYPE_3BYTE_BGR };
+        String[] typeNames = { "INT_RGB", "INT_ARGB", "3BYTE_BGR" };
+        int mismatches = 0;
+        for (int i = 0; i < types.length; ++i) {
+            BufferedImage im = testImage(width, height, types[i]);
+            for (int descale: new int[] { 1, 3, 5, 7 }) {
+                if (!same(ScaleImage.referenceDownscale(im, descale),
+                          ScaleImage.downscale(im, descale))) {
+                    ++mismatches;
+                    System.err.println("Mismatch: " + typeNames[i]
+                                       + " / " + descale);
+                }
+            }
+        }
+        for (int descale: new int[] { 3, 5 }) {
+            if (!transformDownscaleMatches(width, height, descale)) {
+                ++mismatches;
+                System.err.println("Mismatch: ImageTransform output / "
+                                   + descale);
+            }
+        }
+        System.out.println("Images compared; " + mismatches + " mismatches");
+
+        for (int i = 0; i < types.length; ++i) {
+            BufferedImage im = testImage(width, height, types[i]);
+            for (int round = 0; round < 2; ++round) {
+                for (int descale: new int[] { 3, 7 }) {
+                    String name = typeNames[i] + " / " + descale;
+                    time(name + " reference", im, descale, true);
+                    time(name + " separable", im, descale, false);
+                }
+            }
+        }
+    }
+
+    /** @return an image with antialiased edges, text, and (for
+        TYPE_INT_ARGB) partly transparent regions. */
+    static BufferedImage testImage(int width, int height, int type) {
+        BufferedImage res = new BufferedImage(width, height, type);
+        Graphics2D g = res.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+        if (type != BufferedImage.TYPE_INT_ARGB) {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+        }
+        Random random = new Random(1);
+        g.setFont(new Font(Font.SERIF, Font.PLAIN, Math.max(8, height / 40)));
+        for (int i = 0; i < 200; ++i) {
+            g.setColor(new Color(random.nextInt(256), random.nextInt(256),
+                                 random.nextInt(256), random.nextInt(256)));
+            g.setStroke(new BasicStroke(1 + random.nextFloat() * 10));
+            double x = random.nextDouble() * width;
+            double y = random.nextDouble() * height;
+            double r = random.nextDouble() * height / 4;
+            g.draw(new Ellipse2D.Double(x - r, y - r, 2 * r, r));
+            g.drawString("Fe\u2083O\u2084 " + i, (float) x, (float) y);
+        }
+        g.dispose();
+        return res;
+    }
+
+    /** Transform a test image with ImageTransform.transform() at
+        descale times the given size, and downscale the resulting
+        ARGB array directly.
+
+        @return true if that matches referenceDownscale() of the same
+        pixels stored in a BufferedImage. */
+    static boolean transformDownscaleMatches(int width, int height,
+            int descale) {
+        BufferedImage input = testImage(width / descale, height / descale,
+                                        BufferedImage.TYPE_INT_ARGB);
+        int w = width / descale * descale;
+        int h = height / descale * descale;
+        PolygonTransform xform = new QuadToQuad
+            (new Point2D.Double[] {
+                new Point2D.Double(0, 0),
+                new Point2D.Double(0, input.getHeight()),
+                new Point2D.Double(input.getWidth(), input.getHeight()),
+                new Point2D.Double(input.getWidth(), 0) },
+             new Point2D.Double[] {
+                new Point2D.Double(w * 0.1, 0),
+                new Point2D.Double(0, h),
+                new Point2D.Double(w, h * 0.9),
+                new Point2D.Double(w * 0.8, h * 0.05) });
+        int[] argb = ImageTransform.transform
+            (xform, input, new Color(0, 0, 0, 0), new Dimension(w, h),
+             ImageTransform.DithererType.FAST);
+        BufferedImage im = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        im.setRGB(0, 0, w, h, argb, 0, w);
+        int[] expected = ScaleImage.referenceDownscale(im, descale)
+            .getRGB(0, 0, w / descale, h / descale, null, 0, w / descale);
+        return Arrays.equals(expected,
+                             ScaleImage.downscale(argb, w, h, descale));
+    }
+
+    static boolean same(BufferedImage a, BufferedImage b) {
+        int w = a.getWidth();
+        int h = a.getHeight();
+        if (w != b.getWidth() || h != b.getHeight()) {
+            return false;
+        }
+        int[] ra = a.getRGB(0, 0, w, h, null, 0, w);
+        int[] rb = b.getRGB(0, 0, w, h, null, 0, w);
+        return Arrays.equals(ra, rb);
+    }
+
+    static void time(String name, BufferedImage im, int descale,
+            boolean reference) {
+        int cnt = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            if (reference) {
+                ScaleImage.referenceDownscale(im, descale);
+            } else {
+                ScaleImage.downscale(im, descale);
+            }
+            ++cnt;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < 1000000000L);
+        System.out.println(String.format
+                           ("%s: %.2f ms, %.1f Mpixels/s", name,
+                            elapsed / 1e6 / cnt,
+                            (double) cnt * im.getWidth() * im.getHeight()
+                            / (elapsed / 1e9) / 1e6));
+    }
+}
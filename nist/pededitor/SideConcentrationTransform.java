@@ -65,6 +65,92 @@ public class SideConcentrationTransform implements SlopeTransform2D {
         }
     }
 
+    /** Express the value for each side as a linear function of x and
+        y: value[i] = k[i] + kx[i] * x + ky[i] * y. This is the
+        branch-free equivalent of toValues(). */
+    void sideCoefficients(double[] k, double[] kx, double[] ky) {
+        int len = sides.length;
+        for (int i = 0; i < len; ++i) {
+            switch (sides[i]) {
+            case RIGHT:
+                kx[i] = 1;
+                break;
+            case TOP:
+                ky[i] = 1;
+                break;
+            case BOTTOM:
+                k[i] = 1;
+                ky[i] = -1;
+                break;
+            case LEFT:
+                if (len != 2 && len != 3) {
+                    throw new IllegalArgumentException("Wrong dimension");
+                }
+                k[i] = 1;
+                kx[i] = -1;
+                ky[i] = (len == 3) ? -1 : 0;
+                break;
+            }
+        }
+    }
+
+    /** Transform the n points (xs[i], ys[i]) in place. When xform is
+        a MultiplierConcentrationTransform, which it is for the
+        mole/weight conversions, the loop body is straight-line
+        arithmetic with no per-point allocation. */
+    @Override public void transform(double[] xs, double[] ys, int n) {
+        int len = sides.length;
+        double[] k = new double[len];
+        double[] kx = new double[len];
+        double[] ky = new double[len];
+        sideCoefficients(k, kx, ky);
+        boolean keepY = xform.componentCnt() == 2;
+
+        if (xform instanceof MultiplierConcentrationTransform
+            && ((MultiplierConcentrationTransform) xform).cs.length == len
+            && (len == 2 || len == 3)) {
+            double[] cs = ((MultiplierConcentrationTransform) xform).cs;
+            double c0 = cs[0];
+            double c1 = cs[1];
+            double c2 = (len == 3) ? cs[2] : 0;
+            double k0 = k[0], kx0 = kx[0], ky0 = ky[0];
+            double k1 = k[1], kx1 = kx[1], ky1 = ky[1];
+            double k2 = 0, kx2 = 0, ky2 = 0;
+            if (len == 3) {
+                k2 = k[2];
+                kx2 = kx[2];
+                ky2 = ky[2];
+            }
+            for (int i = 0; i < n; ++i) {
+                double x = xs[i];
+                double y = ys[i];
+                double v0 = k0 + kx0 * x + ky0 * y;
+                double v1 = k1 + kx1 * x + ky1 * y;
+                double v2 = k2 + kx2 * x + ky2 * y;
+                double dot = c0 * v0 + c1 * v1 + c2 * v2;
+                xs[i] = v0 * (c0 / dot);
+                if (!keepY) {
+                    ys[i] = v1 * (c1 / dot);
+                }
+            }
+            return;
+        }
+
+        double[] values = new double[len];
+        for (int i = 0; i < n; ++i) {
+            double x = xs[i];
+            double y = ys[i];
+            for (int j = 0; j < len; ++j) {
+                values[j] = k[j] + kx[j] * x + ky[j] * y;
+            }
+            xform.transform(values);
+            xs[i] = values[0];
+            if (!keepY) {
+                ys[i] = values[1];
+            }
+        }
+    }
+
     @Override public Point2D.Double transformSlope(double x, double y, double dx, double dy) {
         return xform.transformSlope(x, y, dx, dy);
     }
@@ -8,6 +8,7 @@ import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.GraphicsDevice;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
@@ -15,14 +16,18 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -31,6 +36,8 @@ import gov.nist.pededitor.DecorationHandle.Type;
 
 /** Main driver class for Phase Equilibria Diagram digitization and creation. */
 public class SourceImage implements Decoration {
+    static final Metrics.Timer RESAMPLE_TIMER = Metrics.timer("image.resample");
+
     protected PolygonTransform transform = null;
     protected double alpha = 0.0;
     protected String filename;
@@ -65,6 +72,8 @@ public class SourceImage implements Decoration {
     protected transient double oldAlpha = 0.0;
     protected transient BufferedImage image = null;
     protected transient boolean triedToLoad = false;
+    /** Background decoder of the image, or null if none is running. */
+    protected transient ImageDecoder decoder = null;
 
     public SourceImage() {
     }
@@ -129,6 +138,16 @@ public class SourceImage implements Decoration {
     public BufferedImage getImage() {
         if (triedToLoad || image != null)
             return image;
+        if (decoder != null) {
+            // Wait for the background decode instead of starting
+            // another one.
+            try {
+                decoded(decoder.await());
+            } catch (IOException x) {
+                decodeFailed(x);
+            }
+            return image;
+        }
         triedToLoad = true;
         try {
             if (bytes == null) {
@@ -138,16 +157,137 @@ public class SourceImage implements Decoration {
                 bytes = Files.readAllBytes(Paths.get(filename));
             }
 
-            image = ImageIO.read(new ByteArrayInputStream(bytes));
+            image = DiagramCache.decode(bytes);
         } catch (IOException x) {
-            SourceImage.readFailures++;
-            x.printStackTrace();
-            // No better option than to live with it.
-            bytes = null;
+            decodeFailed(x);
         }
         return image;
     }
 
+    /** Like getImage(), but if the image has not been decoded yet,
+        start decoding it on a background thread and return null
+        instead of waiting. Until the full image is ready, draw()
+        paints a low-resolution preview on screen if one is
+        available.
+
+        @param onDecoded If a background decode is started, this is
+        run on the event dispatch thread when the preview is ready and
+        when decoding finishes or fails. */
+    @JsonIgnore
+    public BufferedImage getImageInBackground(Runnable onDecoded) {
+        if (triedToLoad || image != null || decoder != null)
+            return image;
+        if (bytes == null && filename == null) {
+            triedToLoad = true;
+            return null;
+        }
+        ImageDecoder.Listener listener = d -> {
+            if (d != decoder) {
+                return;
+            }
+            if (d.isDone()) {
+                try {
+                    decoded(d.await());
+                } catch (IOException x) {
+                    decodeFailed(x);
+                }
+            }
+            onDecoded.run();
+        };
+        decoder = (bytes != null) ? ImageDecoder.start(bytes, listener)
+            : ImageDecoder.start(new File(filename), listener);
+        return null;
+    }
+
+    /** @return true if the image is being decoded in the
+        background. */
+    @JsonIgnore
+    public boolean isDecoding() {
+        return decoder != null;
+    }
+
+    /** Stop any background decoding. The next call to getImage() or
+        getImageInBackground() will start over. */
+    public void cancelDecoding() {
+        if (decoder != null) {
+            decoder.cancel();
+            decoder = null;
+            emptyCache();
+        }
+    }
+
+    void decoded(BufferedImage image) {
+        if (bytes == null) {
+            bytes = decoder.getBytes();
+        }
+        this.image = image;
+        triedToLoad = true;
+        decoder = null;
+        // Drop any scaled copies of the preview.
+        emptyCache();
+    }
+
+    /** Use other's file contents and decoded image instead of
+        reading and decoding this one's own copy. other must show the
+        same image, and its image must already have been decoded (see
+        Diagram.preloadImages()). Decoded images are never modified,
+        so one may be drawn by several threads at once. */
+    void shareImage(SourceImage other) {
+        cancelDecoding();
+        bytes = other.bytes;
+        image = other.image;
+        triedToLoad = true;
+        emptyCache();
+    }
+
+    void decodeFailed(IOException x) {
+        SourceImage.readFailures++;
+        x.printStackTrace();
+        // No better option than to live with it.
+        bytes = null;
+        triedToLoad = true;
+        decoder = null;
+        emptyCache();
+    }
+
+    /** @return true if the image file can be read and its format is
+        recognized. This is much faster than decoding the whole
+        image. */
+    @JsonIgnore
+    public boolean isReadable() {
+        if (image != null)
+            return true;
+        if (triedToLoad)
+            return false;
+        try {
+            if (bytes == null) {
+                if (filename == null) {
+                    return false;
+                }
+                bytes = Files.readAllBytes(Paths.get(filename));
+            }
+            try (ImageInputStream iis = ImageIO.createImageInputStream
+                 (new ByteArrayInputStream(bytes))) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+                if (readers.hasNext()) {
+                    ImageReader r = readers.next();
+                    try {
+                        r.setInput(iis, true, true);
+                        return r.getWidth(0) > 0 && r.getHeight(0) > 0;
+                    } finally {
+                        r.dispose();
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException x) {
+            // Fall through
+        }
+        SourceImage.readFailures++;
+        bytes = null;
+        triedToLoad = true;
+        return false;
+    }
+
     /**
      * There's no reason why the image page bounds shouldn't be saveable, but
      * currently you can't do that.
@@ -173,6 +313,7 @@ public class SourceImage implements Decoration {
     }
 
     public void setFilename(String filename) {
+        cancelDecoding();
         this.filename = filename;
         bytes = null;
         image = null;
@@ -253,7 +394,22 @@ public class SourceImage implements Decoration {
         PolygonTransform xform0 = transform.clone();
         xform0.preConcatenate(new Affine(xform));
         xform0.preConcatenate(new Affine(AffineTransform.getScaleInstance(scale, scale)));
-        CroppedTransformedImage im = getCroppedTransformedImage(getImage(), transformedImages, xform0, bounds,
+        BufferedImage input;
+        if (decoder != null && image == null
+            && g.getDeviceConfiguration().getDevice().getType()
+            == GraphicsDevice.TYPE_RASTER_SCREEN) {
+            // Show the preview while the full image is decoding. Only
+            // do this on screen; printing and export wait for the
+            // real thing.
+            input = decoder.getPreview();
+            if (input == null)
+                return;
+            int s = decoder.getSubsampling();
+            xform0.concatenate(new Affine(AffineTransform.getScaleInstance(s, s)));
+        } else {
+            input = getImage();
+        }
+        CroppedTransformedImage im = getCroppedTransformedImage(input, transformedImages, xform0, bounds,
                 toScaledRectangle(pageBounds, scale));
         if (im == null)
             return;
@@ -303,9 +459,9 @@ public class SourceImage implements Decoration {
             return null;
         }
 
-        int totalMemoryUsage = 0;
+        long totalMemoryUsage = 0;
         int maxScoreIndex = -1;
-        int maxScore = 0;
+        long maxScore = 0;
 
         int cnt = transformedImages2.size();
 
@@ -323,6 +479,7 @@ public class SourceImage implements Decoration {
                 // position in the ArrayList).
                 transformedImages2.remove(i);
                 transformedImages2.add(new SoftReference<>(im));
+                CroppedTransformedImage.cacheHits.incrementAndGet();
                 return im;
             }
 
@@ -330,11 +487,10 @@ public class SourceImage implements Decoration {
             // usage and distance back in the queue (implying the
             // image has not been used recently).
 
-            // Memory usage is 4 bytes per pixel (ARGB).
-            int mu = im.getMemoryUsage() * 4;
+            long mu = im.getMemoryUsage();
             totalMemoryUsage += mu;
 
-            int thisScore = mu * (cnt - i);
+            long thisScore = mu * (cnt - i);
             if (thisScore > maxScore) {
                 maxScore = thisScore;
                 maxScoreIndex = i;
@@ -343,6 +499,7 @@ public class SourceImage implements Decoration {
 
         // Save memory if we're at the limit.
 
+        CroppedTransformedImage.cacheMisses.incrementAndGet();
         int totalMemoryLimit = 100_000_000;
         int totalImageCntLimit = 50;
         if (totalMemoryUsage > totalMemoryLimit) {
@@ -464,6 +621,7 @@ public class SourceImage implements Decoration {
      */
     @JsonProperty("bytes")
     protected void setBytesUnsafe(byte[] bytes) {
+        cancelDecoding();
         this.bytes = bytes;
         image = null;
         transformedImages = new ArrayList<>();
@@ -504,9 +662,18 @@ public class SourceImage implements Decoration {
         // cropRect.y) is mapped to location (0,0).
         toCrop.preConcatenate(new Affine(AffineTransform.getTranslateInstance(-cropRect.x, -cropRect.y)));
 
-        System.out.println("Resizing original image (" + dither + ")...");
-        BufferedImage img = ImageTransform.run(toCrop, input, null, cropRect.getSize(), dither,
-                BufferedImage.TYPE_INT_ARGB);
+        long start = Metrics.start();
+        BufferedImage img;
+        try {
+            // Grayscale and black-and-white scans are stored compactly.
+            // Blending with alpha needs a true alpha channel, though.
+            ImageTransform.Storage storage = (alpha == 1)
+                ? ImageTransform.storageFor(input, dither) : ImageTransform.Storage.ARGB;
+            img = ImageTransform.run(toCrop, input, cropRect.getSize(), dither,
+                    storage);
+        } finally {
+            RESAMPLE_TIMER.stop(start);
+        }
         if (alpha == 1) {
             return img;
         }
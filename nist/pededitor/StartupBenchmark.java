@@ -0,0 +1,141 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Compare the cold start time of the PEDToImage converter with and
+    without an AppCDS archive.
+
+    Usage: StartupBenchmark [-runs <count>] [-archive <file>] [<PED file>]
+
+    If the archive (default pededitor.jsa) does not exist, it is first
+    generated by running CDSTraining over the directory containing the
+    PED file (default test/cam.ped). Then PEDToImage is launched
+    repeatedly in fresh JVMs with the same class path and JVM options
+    (such as the --add-opens flags that Jackson needs on JDK 17) as
+    this one, each time converting the PED file to a PNG and to a PDF
+    file, alternately without and with -XX:SharedArchiveFile, and the
+    median and minimum wall-clock times of each combination are
+    reported.
+
+    Sample results (JDK 17.0.9, one CPU, 11 runs, test/cam.ped):
+
+        PEDToImage PNG, no archive: median 2450 ms, min 2294 ms
+        PEDToImage PNG, AppCDS: median 2213 ms, min 2039 ms
+        PEDToImage PDF, no archive: median 2961 ms, min 2651 ms
+        PEDToImage PDF, AppCDS: median 2771 ms, min 2332 ms */
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = 10;
+        String archive = "pededitor.jsa";
+        String ped = "test" + File.separator + "cam.ped";
+        for (int i = 0; i < args.length; ++i) {
+            if ("-runs".equals(args[i]) && i + 1 < args.length) {
+                runs = Integer.parseInt(args[++i]);
+            } else if ("-archive".equals(args[i]) && i + 1 < args.length) {
+                archive = args[++i];
+            } else {
+                ped = args[i];
+            }
+        }
+
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        String cp = System.getProperty("java.class.path");
+        List<String> jvmOptions = jvmOptions();
+
+        if (!new File(archive).exists()) {
+            File dir = new File(ped).getAbsoluteFile().getParentFile();
+            System.out.println("Generating " + archive + " from " + dir + "...");
+            ArrayList<String> c = new ArrayList<>();
+            c.add(java);
+            c.add("-XX:ArchiveClassesAtExit=" + archive);
+            c.addAll(jvmOptions);
+            c.addAll(Arrays.asList
+                     ("-cp", cp, CDSTraining.class.getName(), dir.toString()));
+            long t = run(c);
+            System.out.println(String.format("Generated in %.1f s", t / 1e9));
+        }
+
+        File png = File.createTempFile("startup", ".png");
+        File pdf = File.createTempFile("startup", ".pdf");
+        try {
+            String[][] jobs = {
+                { ped, png.toString(), "800", "600" },
+                { ped, pdf.toString() } };
+            String[] jobNames = { "PNG", "PDF" };
+            for (int j = 0; j < jobs.length; ++j) {
+                long[][] times = new long[2][runs];
+                // Warm the file system cache before timing anything.
+                run(command(java, jvmOptions, cp, null, jobs[j]));
+                for (int r = 0; r < runs; ++r) {
+                    times[0][r] = run(command(java, jvmOptions, cp, null, jobs[j]));
+                    times[1][r] = run(command(java, jvmOptions, cp, archive, jobs[j]));
+                }
+                for (int c = 0; c < 2; ++c) {
+                    Arrays.sort(times[c]);
+                    System.out.println(String.format
+                                       ("PEDToImage %s, %s: median %.0f ms, min %.0f ms",
+                                        jobNames[j],
+                                        (c == 0) ? "no archive" : "AppCDS",
+                                        times[c][runs / 2] / 1e6,
+                                        times[c][0] / 1e6));
+                }
+            }
+        } finally {
+            png.delete();
+            pdf.delete();
+        }
+    }
+
+    /** @return the options this JVM was started with, minus any that
+        select a class data sharing archive. */
+    static List<String> jvmOptions() {
+        ArrayList<String> res = new ArrayList<>();
+        for (String s: ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!s.startsWith("-XX:SharedArchiveFile=")
+                && !s.startsWith("-XX:ArchiveClassesAtExit=")
+                && !s.startsWith("-Xshare")) {
+                res.add(s);
+            }
+        }
+        return res;
+    }
+
+    static List<String> command(String java, List<String> jvmOptions,
+            String cp, String archive, String[] args) {
+        ArrayList<String> res = new ArrayList<>();
+        res.add(java);
+        if (archive != null) {
+            res.add("-XX:SharedArchiveFile=" + archive);
+        }
+        res.addAll(jvmOptions);
+        res.add("-Djava.awt.headless=true");
+        res.add("-cp");
+        res.add(cp);
+        res.add(PEDToImage.class.getName());
+        res.addAll(Arrays.asList(args));
+        return res;
+    }
+
+    /** Run the given command and return its wall-clock time in
+        nanoseconds. */
+    static long run(List<String> command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(command).inheritIO().start();
+        int status = p.waitFor();
+        long res = System.nanoTime() - start;
+        if (status != 0) {
+            throw new IOException("Command " + command + " failed with status "
+                                  + status);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,34 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.lang.management.ManagementFactory;
+
+/** Report how long each phase of program startup takes. Timing is
+    enabled by running with -Dpededitor.startupTiming=true, in which
+    case each call to mark() prints a line such as
+
+        startup: diagram parsed            +  41 ms   612 ms since JVM start
+
+    to standard error. When timing is disabled, mark() does nothing. */
+public class StartupTimer {
+    static final boolean enabled = Boolean.getBoolean("pededitor.startupTiming");
+    static long lastMillis = 0;
+
+    /** Record that the given startup phase has just finished. */
+    public static synchronized void mark(String phase) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long start = ManagementFactory.getRuntimeMXBean().getStartTime();
+        if (lastMillis == 0) {
+            lastMillis = start;
+        }
+        System.err.println(String.format
+                           ("startup: %-26s +%4d ms %5d ms since JVM start",
+                            phase, now - lastMillis, now - start));
+        lastMillis = now;
+    }
+}
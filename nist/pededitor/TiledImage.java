@@ -0,0 +1,252 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/** A RenderedImage whose pixels are painted on demand, one horizontal
+    strip (tile) at a time, so that an image far too large to hold in
+    memory can still be passed to ImageIO.write().
+
+    Each tile is painted at scale times its final size into a buffer
+    whose Graphics2D is translated and clipped to that tile, and then
+    shrunk using ScaleImage.downscale(), so the result matches that of
+    painting the whole image at once and downscaling it, except for
+    slight antialiasing differences along some edges. (Java's default
+    Marlin renderer clips shapes that extend past the edge of the
+    buffer, which perturbs the coverage of pixels near those shapes'
+    edges; -Dsun.java2d.renderer.clip=false makes the tiled and
+    untiled results identical.) Tiles are
+    rendered in parallel a few at a time ahead of the row the encoder
+    is reading, and tiles above that row are discarded, so for
+    encoders that read the image top to bottom (such as the standard
+    PNG writer, which requests one row at a time) memory use is
+    bounded by the tile size and the degree of parallelism rather than
+    by the size of the image.
+
+    Tiles are rendered on threads that belong to this image, one per
+    processor, and each thread borrows a painter from a pool that
+    never holds more painters than there are threads. close() stops
+    the threads and releases the painters and tiles. */
+public class TiledImage implements RenderedImage, AutoCloseable {
+    /** Maximum number of supersampled pixels to paint per tile. */
+    static final int MAX_TILE_PIXELS = 1 << 22;
+
+    final int width;
+    final int height;
+    final int scale;
+    final int tileHeight;
+    final int tileCnt;
+    final boolean transparent;
+    final ColorModel colorModel;
+    final SampleModel sampleModel;
+    /** Number of tiles to render ahead of the current one, which is
+        also the number of rendering threads. */
+    final int lookahead;
+    final Supplier<Consumer<Graphics2D>> painterFactory;
+    /** Painters that are not in use by any thread. */
+    final ArrayDeque<Consumer<Graphics2D>> idlePainters = new ArrayDeque<>();
+    final ExecutorService executor;
+    final ConcurrentHashMap<Integer, CompletableFuture<Raster>> tiles
+        = new ConcurrentHashMap<>();
+
+    /** @param painters Supplies objects that paint the whole image at
+        (width * scale) x (height * scale) size. No painter is used by
+        two threads at once, so painters that are not thread-safe may
+        be used as long as each supplied painter is independent of the
+        others. At most one painter per rendering thread is created.
+
+        @param transparent If true, the image has an alpha channel,
+        and the painter is responsible for painting everything
+        visible. If false, the image is opaque. Either way, the
+        painter starts with a buffer that is entirely zero, just like
+        a new BufferedImage. */
+    public TiledImage(int width, int height, int scale, boolean transparent,
+            Supplier<Consumer<Graphics2D>> painters) {
+        if (width <= 0 || height <= 0 || scale <= 0) {
+            throw new IllegalArgumentException
+                ("Cannot make image with width " + width
+                 + " and height " + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.transparent = transparent;
+        this.painterFactory = painters;
+        long rowPixels = (long) width * scale * scale;
+        tileHeight = (int) Math.max(1, Math.min(height, MAX_TILE_PIXELS / rowPixels));
+        tileCnt = (height + tileHeight - 1) / tileHeight;
+        colorModel = transparent ? ColorModel.getRGBdefault()
+            : new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
+        sampleModel = colorModel.createCompatibleSampleModel(width, tileHeight);
+        lookahead = Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(lookahead, r -> {
+                Thread t = new Thread(r, "TiledImage");
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    /** Stop the rendering threads and release the painters and any
+        rendered tiles. */
+    @Override public void close() {
+        synchronized (idlePainters) {
+            executor.shutdownNow();
+            idlePainters.clear();
+        }
+        tiles.clear();
+    }
+
+    Consumer<Graphics2D> borrowPainter() {
+        synchronized (idlePainters) {
+            Consumer<Graphics2D> res = idlePainters.poll();
+            if (res != null) {
+                return res;
+            }
+        }
+        return painterFactory.get();
+    }
+
+    void returnPainter(Consumer<Graphics2D> painter) {
+        synchronized (idlePainters) {
+            if (!executor.isShutdown()) {
+                idlePainters.push(painter);
+            }
+        }
+    }
+
+    BufferedImage renderTile(int ty) {
+        int y0 = ty * tileHeight;
+        int h = Math.min(height, y0 + tileHeight) - y0;
+        BufferedImage im = new BufferedImage
+            (width * scale, h * scale,
+             transparent ? BufferedImage.TYPE_INT_ARGB
+             : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = im.createGraphics();
+        Consumer<Graphics2D> painter = borrowPainter();
+        try {
+            g.translate(0, -y0 * scale);
+            g.clipRect(0, y0 * scale, width * scale, h * scale);
+            painter.accept(g);
+        } finally {
+            g.dispose();
+            returnPainter(painter);
+        }
+        return (scale > 1) ? ScaleImage.downscale(im, scale) : im;
+    }
+
+    CompletableFuture<Raster> future(int ty) {
+        return tiles.computeIfAbsent(ty, t -> CompletableFuture.supplyAsync(() -> {
+                    BufferedImage im = renderTile(t);
+                    int[] data = ((DataBufferInt) im.getRaster().getDataBuffer())
+                        .getData();
+                    SampleModel sm = new SinglePixelPackedSampleModel
+                        (sampleModel.getDataType(), width, im.getHeight(),
+                         ((SinglePixelPackedSampleModel) sampleModel).getBitMasks());
+                    return Raster.createRaster
+                        (sm, new DataBufferInt(data, data.length),
+                         new Point(0, t * tileHeight));
+                }, executor));
+    }
+
+    @Override public Raster getTile(int tileX, int tileY) {
+        if (tileX != 0 || tileY < 0 || tileY >= tileCnt) {
+            throw new IllegalArgumentException
+                ("No tile (" + tileX + ", " + tileY + ")");
+        }
+        // Forget tiles the encoder has presumably finished with, and
+        // start rendering the ones it will want soon.
+        tiles.keySet().removeIf(t -> t < tileY - 1);
+        for (int t = tileY; t < Math.min(tileCnt, tileY + lookahead); ++t) {
+            future(t);
+        }
+        try {
+            return future(tileY).get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(x);
+        } catch (ExecutionException x) {
+            Throwable cause = x.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override public Raster getData(Rectangle rect) {
+        Rectangle r = rect.intersection(new Rectangle(0, 0, width, height));
+        int t0 = r.y / tileHeight;
+        if (r.height > 0 && r.y + r.height <= (t0 + 1) * tileHeight) {
+            // Common case: the request lies within a single tile.
+            Raster tile = getTile(0, t0);
+            return tile.createChild(r.x, r.y, r.width, r.height,
+                                    r.x, r.y, null);
+        }
+        WritableRaster res = Raster.createWritableRaster
+            (sampleModel.createCompatibleSampleModel
+             (Math.max(1, r.width), Math.max(1, r.height)),
+             new Point(r.x, r.y));
+        copyData(res);
+        return res;
+    }
+
+    @Override public Raster getData() {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    @Override public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            raster = colorModel.createCompatibleWritableRaster(width, height);
+        }
+        int yMin = Math.max(0, raster.getMinY());
+        int yMax = Math.min(height, raster.getMinY() + raster.getHeight());
+        for (int ty = yMin / tileHeight; ty * tileHeight < yMax; ++ty) {
+            raster.setRect(getTile(0, ty));
+        }
+        return raster;
+    }
+
+    @Override public Vector<RenderedImage> getSources() { return null; }
+    @Override public Object getProperty(String name) {
+        return java.awt.Image.UndefinedProperty;
+    }
+    @Override public String[] getPropertyNames() { return null; }
+    @Override public ColorModel getColorModel() { return colorModel; }
+    @Override public SampleModel getSampleModel() { return sampleModel; }
+    @Override public int getWidth() { return width; }
+    @Override public int getHeight() { return height; }
+    @Override public int getMinX() { return 0; }
+    @Override public int getMinY() { return 0; }
+    @Override public int getNumXTiles() { return 1; }
+    @Override public int getNumYTiles() { return tileCnt; }
+    @Override public int getMinTileX() { return 0; }
+    @Override public int getMinTileY() { return 0; }
+    @Override public int getTileWidth() { return width; }
+    @Override public int getTileHeight() { return tileHeight; }
+    @Override public int getTileGridXOffset() { return 0; }
+    @Override public int getTileGridYOffset() { return 0; }
+}
@@ -56,6 +56,23 @@ interface Transform2D {
         }
     }
 
+    /** Transform the n points (xs[i], ys[i]) in place. Keeping the
+        coordinates in separate arrays lets implementations whose
+        transform has a closed form use a tight loop that neither
+        allocates nor branches.
+
+        If an UnsolvableException is thrown, the points before the one
+        that could not be transformed will already have been
+        overwritten. */
+    default void transform(double[] xs, double[] ys, int n)
+        throws UnsolvableException {
+        for (int i = 0; i < n; ++i) {
+            Point2D.Double p = transform(xs[i], ys[i]);
+            xs[i] = p.x;
+            ys[i] = p.y;
+        }
+    }
+
     /** @return true if this transform never throws an
         UnsolvableException. */
     default boolean transformNeverThrows() {
@@ -14,6 +14,8 @@ import javax.swing.AbstractAction;
 public class Viewer extends Editor {
 
     public static String PROGRAM_TITLE = "PED Viewer";
+    /** File extensions that the Viewer opens as diagrams. */
+    static final String[] PED_FILE_EXTENSIONS = {"ped", "pedv"};
 
     public Viewer() {
         init();
@@ -23,11 +25,16 @@ public class Viewer extends Editor {
         return new Viewer();
     }
 
+    @Override boolean isViewerOnly() {
+        return true;
+    }
+
     private void init() {
         alwaysConvertLabels = true;
-        setRightClickMenu(new ViewerRightClickMenu(this));
-        
-        // Cut out all the functions that the viewer doesn't need.
+
+        // The frame was built without the editing menus (see
+        // isViewerOnly()); hide what remains that the viewer doesn't
+        // need.
         EditFrame ef = editFrame;
         ef.setAlwaysOnTop(true);
         ef.setNewDiagramVisible(false);
@@ -36,7 +43,6 @@ public class Viewer extends Editor {
         ef.editingEnabled.setVisible(false);
         ef.hideImages.setVisible(false);
         ef.mnTags.setVisible(false);
-        ef.mnKeys.setVisible(false);
         ef.mnExportText.setVisible(false);
         ef.mnCopyFormulas.setVisible(false);
         ef.mnJumpToSelection.setVisible(false);
@@ -139,7 +145,7 @@ public class Viewer extends Editor {
     }
 
     @Override public String[] pedFileExtensions() {
-        return new String[] {"ped", "pedv"};
+        return PED_FILE_EXTENSIONS.clone();
     }
 
     @Override public String[] launchPEDFileExtensions() {
@@ -183,6 +189,9 @@ public class Viewer extends Editor {
                     @Override public String getProgramTitle() {
                         return Viewer.PROGRAM_TITLE;
                     }
+                    @Override public String[] pedFileExtensions() {
+                        return PED_FILE_EXTENSIONS.clone();
+                    }
                 }, args);
     }
 }
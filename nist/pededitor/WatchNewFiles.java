@@ -5,23 +5,58 @@ package gov.nist.pededitor;
 
 import java.io.IOException;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
  * Watch a directory for newly created files whose extensions match a
  * given list.
+ *
+ * Files are not reported as soon as they are created, because a
+ * browser or other program may still be writing them. Instead, each
+ * new file is watched until it is nonempty and its size and
+ * modification time have stayed the same for QUIET_MILLIS. Bursts of
+ * events for the same file are coalesced into a single report, and
+ * files that disappear before they settle (such as temporary
+ * download files that get renamed) are never reported.
+ *
+ * All watchers share a single daemon thread that polls for events
+ * every POLL_MILLIS, so watchers do not each need a thread of their
+ * own.
  */
 
 public class WatchNewFiles {
+    /** How often to poll for events and check pending files. */
+    static final long POLL_MILLIS = 200;
+    /** How long a file must remain unchanged before it is reported. */
+    static final long QUIET_MILLIS = 500;
+
+    static ScheduledExecutorService scheduler = null;
+
+    /** A file that has been created but not yet reported. */
+    static class Pending {
+        long size = -1;
+        long modified = -1;
+        /** System.nanoTime() when a change was last observed. */
+        long changed = System.nanoTime();
+    }
 
-    volatile private Thread thread;
+    private ScheduledFuture<?> task;
     HashSet<String> exts;
     Path dir;
     Consumer<Path> fileCreated;
@@ -29,9 +64,11 @@ public class WatchNewFiles {
 
     /**
      * Whenever a file whose extension is in exts[] (do not include
-     * the period) is created in directory dir, call
-     * fileCreated.accept(path) where path is the resolved path to the
-     * new file.
+     * the period) is created in directory dir and has finished being
+     * written, call fileCreated.accept(path) where path is the
+     * resolved path to the new file. fileCreated is invoked from the
+     * watcher thread, so it should return promptly, handing off any
+     * slow work to another thread.
      *
      * You have to call start() before anything happens.
      */
@@ -44,73 +81,128 @@ public class WatchNewFiles {
         this.fileCreated = fileCreated;
     }
 
-    /** Start the directory-watching thread. Return true if the thread
-        wasn't already running. The call returns promptly, but the
-        thread it starts runs until you call watchNewFiles.stop() or
-        you end the program (as with exit() or abort()).
+    static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "WatchNewFiles");
+                    t.setDaemon(true);
+                    return t;
+                });
+        }
+        return scheduler;
+    }
+
+    /** Start watching the directory. Return true if it wasn't already
+        being watched. The call returns promptly, but watching
+        continues until you call watchNewFiles.stop() or you end the
+        program (as with exit() or abort()).
 
         Throws an IOException if for whatever reason monitoring cannot
         be enabled.
     */
     synchronized public boolean start() throws IOException {
-        if (thread != null && thread.isAlive()) {
+        if (isEnabled()) {
             return false;
         }
         watcher = FileSystems.getDefault().newWatchService();
-        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
-        thread = new Thread(() -> { watch(); });
-        thread.start();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                     StandardWatchEventKinds.ENTRY_MODIFY);
+        WatchService w = watcher;
+        // Files that have been created but have not yet settled, in
+        // order of creation.
+        LinkedHashMap<Path, Pending> pending = new LinkedHashMap<>();
+        task = getScheduler().scheduleWithFixedDelay
+            (() -> poll(w, pending), 0, POLL_MILLIS, TimeUnit.MILLISECONDS);
         return true;
     }
 
     /* @return true if the watcher is currently active. */
-    public boolean isEnabled() {
-        return thread != null && thread.isAlive();
+    synchronized public boolean isEnabled() {
+        return task != null && !task.isDone();
     }
 
-    /** Stop the directory-watching thread. Return true if a directory
+    /** Stop watching the directory. Return true if a directory
         was actually being watched.
 
-        You may call stop() and then later call start() to restart the thread.
+        You may call stop() and then later call start() to restart watching.
     */
     synchronized public boolean stop() {
-        if (thread != null) {
-            if (thread.isAlive()) {
-                thread.interrupt();
-                thread = null;
-                return true;
-            } else {
-                thread = null;
-            }
+        if (task == null) {
+            return false;
         }
-        return false;
+        boolean res = !task.isDone();
+        task.cancel(false);
+        task = null;
+        WatchService w = watcher;
+        watcher = null;
+        // Close the watcher on the scheduler thread so that it cannot
+        // be closed in the middle of a poll.
+        getScheduler().execute(() -> {
+                try {
+                    w.close();
+                } catch (IOException x) {
+                    // Nothing to do.
+                }
+            });
+        return res;
     }
-        
-    private void watch() {
-        try {
-            while (thread != null) {
-                WatchKey key;
-                key = watcher.take();
-
-                for (WatchEvent<?> event: key.pollEvents()) {
-                    WatchEvent.Kind<?> kind = event.kind();
-
-                    if (kind != StandardWatchEventKinds.ENTRY_CREATE) {
-                        continue;
-                    }
-
-                    @SuppressWarnings("unchecked")
-                        WatchEvent<Path> ev = (WatchEvent<Path>) event;
-                    Path path = dir.resolve(ev.context());
-                    if (exts.contains(Stuff.getExtension(path.toString()))) {
-                        fileCreated.accept(dir.resolve(ev.context()));
-                    }
-                    key.reset();
+
+    /** Drain pending events from w, and report any files in pending
+        that have settled. */
+    private void poll(WatchService w, LinkedHashMap<Path, Pending> pending) {
+        WatchKey key;
+        while ((key = w.poll()) != null) {
+            for (WatchEvent<?> event: key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    continue;
+                }
+
+                @SuppressWarnings("unchecked")
+                    WatchEvent<Path> ev = (WatchEvent<Path>) event;
+                Path path = dir.resolve(ev.context());
+                if (!exts.contains(Stuff.getExtension(path.toString()))) {
+                    continue;
+                }
+                Pending p = pending.get(path);
+                if (p != null) {
+                    p.changed = System.nanoTime();
+                } else if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    pending.put(path, new Pending());
+                }
+            }
+            key.reset();
+        }
+
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<Path, Pending>> it
+                 = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Pending> e = it.next();
+            Path path = e.getKey();
+            Pending p = e.getValue();
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException x) {
+                it.remove(); // The file is gone.
+                continue;
+            }
+            long size = attrs.size();
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (size != p.size || modified != p.modified) {
+                p.size = size;
+                p.modified = modified;
+                p.changed = now;
+            } else if (size > 0
+                       && now - p.changed >= QUIET_MILLIS * 1000000L) {
+                it.remove();
+                try {
+                    fileCreated.accept(path);
+                } catch (RuntimeException x) {
+                    x.printStackTrace();
                 }
             }
-        } catch (InterruptedException x) {
         }
-        thread = null;
     }
 
     /** @return the Path to the watched directory. */
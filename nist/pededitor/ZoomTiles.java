@@ -0,0 +1,135 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Backing store for ImageZoomPane. The source image, which may be a
+    scan of 100 megapixels or more in a format that Java2D cannot
+    accelerate, is divided into square tiles that are converted on
+    demand to images compatible with the screen, optionally
+    pre-magnified by an integer factor. Painting blits only the tiles
+    that intersect the clip, so moving the mouse costs a few
+    compatible-image copies instead of a draw from the full source.
+
+    Tiles are converted lazily and the least recently used ones are
+    discarded, so memory use stays bounded no matter how large the
+    source is. The source image must not be modified after it is
+    passed in. */
+class ZoomTiles {
+    /** Width and height of a tile, in magnified pixels. Divisible by
+        every supported magnification. */
+    static final int TILE_SIZE = 256;
+    /** Maximum number of tiles to keep. A full-screen zoom window
+        needs about 40 of them. */
+    static final int MAX_TILES = 96;
+
+    final BufferedImage source;
+    final GraphicsConfiguration gc;
+    final int magnification;
+    final Map<Long, BufferedImage> tiles
+        = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override protected boolean removeEldestEntry
+                (Map.Entry<Long, BufferedImage> eldest) {
+                return size() > MAX_TILES;
+            }
+        };
+
+    /** @param gc The configuration of the screen that the tiles
+        will be drawn to, or null if it is not known yet.
+
+        @param magnification Number of screen pixels per source pixel
+        in each direction: 1, 2, or 4. */
+    ZoomTiles(BufferedImage source, GraphicsConfiguration gc,
+              int magnification) {
+        if (TILE_SIZE % magnification != 0) {
+            throw new IllegalArgumentException
+                ("Unsupported magnification " + magnification);
+        }
+        this.source = source;
+        this.gc = gc;
+        this.magnification = magnification;
+    }
+
+    /** @return true if this store can draw the given image at the
+        given magnification to the given screen. */
+    boolean matches(BufferedImage source, GraphicsConfiguration gc,
+                    int magnification) {
+        return this.source == source && this.gc == gc
+            && this.magnification == magnification;
+    }
+
+    /** @return the width of the magnified image. */
+    int getWidth() {
+        return source.getWidth() * magnification;
+    }
+
+    /** @return the height of the magnified image. */
+    int getHeight() {
+        return source.getHeight() * magnification;
+    }
+
+    /** Draw the magnified image with its upper left corner at (x,y),
+        skipping tiles that lie outside clip. */
+    void draw(Graphics g, int x, int y, Rectangle clip) {
+        int col0 = Math.max(0, Math.floorDiv(clip.x - x, TILE_SIZE));
+        int row0 = Math.max(0, Math.floorDiv(clip.y - y, TILE_SIZE));
+        int col1 = Math.min(Math.floorDiv(getWidth() - 1, TILE_SIZE),
+                            Math.floorDiv(clip.x + clip.width - 1 - x, TILE_SIZE));
+        int row1 = Math.min(Math.floorDiv(getHeight() - 1, TILE_SIZE),
+                            Math.floorDiv(clip.y + clip.height - 1 - y, TILE_SIZE));
+        for (int row = row0; row <= row1; ++row) {
+            for (int col = col0; col <= col1; ++col) {
+                g.drawImage(tile(col, row), x + col * TILE_SIZE,
+                            y + row * TILE_SIZE, null);
+            }
+        }
+    }
+
+    BufferedImage tile(int col, int row) {
+        Long key = ((long) row << 32) | col;
+        BufferedImage res = tiles.get(key);
+        if (res == null) {
+            res = createTile(col, row);
+            tiles.put(key, res);
+        }
+        return res;
+    }
+
+    BufferedImage createTile(int col, int row) {
+        int srcSize = TILE_SIZE / magnification;
+        int sx = col * srcSize;
+        int sy = row * srcSize;
+        int sw = Math.min(srcSize, source.getWidth() - sx);
+        int sh = Math.min(srcSize, source.getHeight() - sy);
+        int w = sw * magnification;
+        int h = sh * magnification;
+        int transparency = source.getTransparency();
+        BufferedImage res = (gc != null)
+            ? gc.createCompatibleImage(w, h, transparency)
+            : new BufferedImage(w, h, (transparency == BufferedImage.OPAQUE)
+                                ? BufferedImage.TYPE_INT_RGB
+                                : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = res.createGraphics();
+        try {
+            // Keep the source pixels sharp: the point of the zoom
+            // window is to show exactly where they are.
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                               RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(source, 0, 0, w, h, sx, sy, sx + sw, sy + sh, null);
+        } finally {
+            g.dispose();
+        }
+        return res;
+    }
+}
@@ -0,0 +1,50 @@
+#!/bin/sh
+# Launch a PED Editor entry point using an AppCDS (application class
+# data sharing) archive, so that classes from Jackson, iText, Swing and
+# the editor itself are mapped from the archive instead of being
+# loaded and verified from scratch on every launch.
+#
+# Usage:
+#     cds.sh build [<directory of PED files>]
+#         Generate the archive by running CDSTraining (requires JDK 13+).
+#     cds.sh <main class> <args...>
+#         Run the class, e.g. "cds.sh PEDToImage in.ped out.png 800 600".
+#
+# Environment:
+#     PEDEDITOR_CP   Class path (default: PEDEditor.jar)
+#     PEDEDITOR_JSA  Archive file (default: pededitor.jsa)
+#     JAVA           Java launcher (default: java)
+#     JAVA_OPTS      Extra JVM options, e.g. the --add-opens flags that
+#                    Jackson needs on JDK 17
+#
+# If the archive is missing, the class runs without it. Rebuild the
+# archive whenever the JDK or the class path changes; the JVM ignores
+# (with a warning) an archive that does not match.
+
+CP=${PEDEDITOR_CP:-PEDEditor.jar}
+JSA=${PEDEDITOR_JSA:-pededitor.jsa}
+JAVA=${JAVA:-java}
+
+if [ $# -eq 0 ]; then
+    sed -n '7,11p' "$0" >&2
+    exit 1
+fi
+
+if [ "$1" = build ]; then
+    rm -f "$JSA"
+    exec "$JAVA" -XX:ArchiveClassesAtExit="$JSA" $JAVA_OPTS -cp "$CP" \
+        gov.nist.pededitor.CDSTraining "${2:-test}"
+fi
+
+CLASS=$1
+shift
+case $CLASS in
+    *.*) ;;
+    *) CLASS=gov.nist.pededitor.$CLASS ;;
+esac
+
+if [ -f "$JSA" ]; then
+    exec "$JAVA" -XX:SharedArchiveFile="$JSA" $JAVA_OPTS -cp "$CP" "$CLASS" "$@"
+else
+    exec "$JAVA" $JAVA_OPTS -cp "$CP" "$CLASS" "$@"
+fi